@@ -0,0 +1,104 @@
+package dev.bodewig.jcoprocessor.benchmarks;
+
+import dev.bodewig.jcoprocessor.JCoprocess;
+import dev.bodewig.jcoprocessor.procbridge.Batch;
+import dev.bodewig.jcoprocessor.procbridge.Client;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost per call of many tiny requests sent one after another,
+ * pipelined without waiting and as one Batch
+ *
+ * @author Lars Bodewig
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BatchBenchmark {
+
+    private static final int CALLS = 1000;
+
+    private JCoprocess process;
+
+    /**
+     * Starts the JCoprocess and waits until it answers
+     *
+     * @throws IOException if starting fails
+     */
+    @Setup
+    public void setup() throws IOException {
+        process = new JCoprocess(EchoServer.class);
+        process.start(Client.FOREVER);
+        process.request("echo", 0);
+    }
+
+    /**
+     * Sends each call after the previous one was answered
+     *
+     * @return the last response
+     */
+    @Benchmark
+    @OperationsPerInvocation(CALLS)
+    public Object sequential() {
+        Object result = null;
+        for (int i = 0; i < CALLS; i++) {
+            result = process.request("echo", i);
+        }
+        return result;
+    }
+
+    /**
+     * Sends all calls before waiting for the responses
+     */
+    @Benchmark
+    @OperationsPerInvocation(CALLS)
+    public void pipelined() {
+        CompletableFuture<?>[] futures = new CompletableFuture[CALLS];
+        for (int i = 0; i < CALLS; i++) {
+            futures[i] = process.requestAsync("echo", i);
+        }
+        CompletableFuture.allOf(futures).join();
+    }
+
+    /**
+     * Sends all calls in one frame
+     *
+     * @return the results
+     */
+    @Benchmark
+    @OperationsPerInvocation(CALLS)
+    public List<Batch.Result> batch() {
+        Batch batch = process.batch();
+        for (int i = 0; i < CALLS; i++) {
+            batch.add("echo", i);
+        }
+        return batch.send();
+    }
+
+    /**
+     * Stops the JCoprocess
+     */
+    @TearDown
+    public void tearDown() {
+        process.stop();
+    }
+}
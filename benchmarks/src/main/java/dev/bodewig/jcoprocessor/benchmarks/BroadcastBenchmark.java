@@ -0,0 +1,75 @@
+package dev.bodewig.jcoprocessor.benchmarks;
+
+import dev.bodewig.jcoprocessor.JCoprocess;
+import dev.bodewig.jcoprocessor.JCoprocessManager;
+import dev.bodewig.jcoprocessor.procbridge.Client;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the time until a broadcast is answered by all of N JCoprocesses
+ *
+ * @author Lars Bodewig
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BroadcastBenchmark {
+
+    /**
+     * The number of JCoprocesses
+     */
+    @Param({"1", "4", "16"})
+    public int processes;
+
+    /**
+     * Spawns the JCoprocesses and waits until they answer
+     *
+     * @throws IOException          if spawning fails
+     * @throws ExecutionException   if a JCoprocess does not answer
+     * @throws InterruptedException if interrupted while waiting
+     */
+    @Setup
+    public void setup() throws IOException, ExecutionException, InterruptedException {
+        for (int i = 0; i < processes; i++) {
+            JCoprocessManager.spawn(EchoServer.class, Client.FOREVER);
+        }
+        JCoprocessManager.broadcast("echo", 0).get();
+    }
+
+    /**
+     * Broadcasts a small request
+     *
+     * @throws ExecutionException   if a JCoprocess fails
+     * @throws InterruptedException if interrupted while waiting
+     */
+    @Benchmark
+    public void broadcast() throws ExecutionException, InterruptedException {
+        JCoprocessManager.broadcast("echo", "Hello").get();
+    }
+
+    /**
+     * Stops all JCoprocesses
+     */
+    @TearDown
+    public void tearDown() {
+        JCoprocessManager.terminate();
+    }
+}
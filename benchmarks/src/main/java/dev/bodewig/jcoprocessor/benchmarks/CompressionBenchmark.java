@@ -0,0 +1,116 @@
+package dev.bodewig.jcoprocessor.benchmarks;
+
+import dev.bodewig.jcoprocessor.JCoprocess;
+import dev.bodewig.jcoprocessor.procbridge.Client;
+import dev.bodewig.jcoprocessor.procbridge.Codec;
+import dev.bodewig.jcoprocessor.procbridge.Protocol;
+import dev.bodewig.jcoprocessor.procbridge.Transport;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Finds the body size from which compressing repetitive JSON pays off, with
+ * and without the round trip to a JCoprocess
+ * <p>
+ * Compression is either disabled or applied to every body, comparing both for
+ * the same number of rows gives the crossover point for a Transport. The rows
+ * are sent as JSON text to keep the cost of encoding JSONObjects out of the
+ * comparison.
+ *
+ * @author Lars Bodewig
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CompressionBenchmark {
+
+    /**
+     * The number of rows of about 45 bytes each
+     */
+    @Param({"4", "64", "1024", "16384"})
+    public int rows;
+
+    /**
+     * The minimum size of bodies to compress, -1 to disable compression
+     */
+    @Param({"-1", "0"})
+    public int threshold;
+
+    /**
+     * The Transport connecting to the JCoprocess
+     */
+    @Param({"TCP", "STDIO"})
+    public Transport transport;
+
+    private JCoprocess process;
+    private String payload;
+
+    /**
+     * Starts the JCoprocess and creates the payload
+     *
+     * @throws IOException if starting fails
+     */
+    @Setup
+    public void setup() throws IOException {
+        process = new JCoprocess(EchoServer.class, transport);
+        process.setCompressionThreshold(threshold);
+        process.start(Client.FOREVER);
+        process.request("echo", 0);
+        JSONArray array = new JSONArray();
+        for (int i = 0; i < rows; i++) {
+            array.put(new JSONObject().put("id", i).put("name", "user" + i).put("active", i % 2 == 0));
+        }
+        payload = array.toString();
+    }
+
+    /**
+     * Writes and reads a request in memory
+     *
+     * @return the decoded request
+     * @throws IOException if writing fails
+     */
+    @Benchmark
+    public Object writeRead() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Protocol.writeRequest(out, Codec.JSON, 1, "echo", payload, threshold);
+        return Protocol.readRequest(new ByteArrayInputStream(out.toByteArray())).orElseThrow();
+    }
+
+    /**
+     * Sends the payload to the JCoprocess and receives it back
+     *
+     * @return the response
+     */
+    @Benchmark
+    public Object roundTrip() {
+        return process.request("echo", payload);
+    }
+
+    /**
+     * Stops the JCoprocess
+     */
+    @TearDown
+    public void tearDown() {
+        process.stop();
+    }
+}
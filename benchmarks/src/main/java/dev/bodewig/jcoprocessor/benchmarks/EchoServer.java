@@ -0,0 +1,79 @@
+package dev.bodewig.jcoprocessor.benchmarks;
+
+import dev.bodewig.jcoprocessor.procbridge.Server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.stream.IntStream;
+
+/**
+ * Server answering every request with its payload, used as JCoprocess by the
+ * benchmarks
+ * <p>
+ * The method "sleep" blocks for the given number of milliseconds before
+ * answering to simulate a handler waiting for I/O. Streams of "range" are the
+ * Integers from 0 to the payload. Uploads are answered with the number of bytes
+ * received.
+ *
+ * @author Lars Bodewig
+ */
+public class EchoServer extends Server {
+
+    /**
+     * Creates a new EchoServer that is not yet running
+     *
+     * @param port the port to listen to
+     */
+    public EchoServer(int port) {
+        super(port);
+    }
+
+    @Override
+    public Object handleRequest(String method, Object payload) {
+        if ("sleep".equals(method)) {
+            try {
+                Thread.sleep(((Number) payload).longValue());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return payload;
+    }
+
+    @Override
+    public ByteBuffer handleBytes(String method, ByteBuffer payload) {
+        return payload;
+    }
+
+    @Override
+    public Iterator<?> handleStream(String method, Object payload) {
+        return IntStream.range(0, ((Number) payload).intValue()).iterator();
+    }
+
+    @Override
+    public Object handleUpload(String method, Object payload, InputStream data) {
+        try {
+            return data.transferTo(OutputStream.nullOutputStream());
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Starts the EchoServer
+     *
+     * @param args the port to listen to
+     */
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            throw new IllegalArgumentException("Missing argument: port");
+        }
+        int port = Integer.parseInt(args[0]);
+        EchoServer server = new EchoServer(port);
+        server.start();
+    }
+}
@@ -0,0 +1,87 @@
+package dev.bodewig.jcoprocessor.benchmarks;
+
+import dev.bodewig.jcoprocessor.JCoprocess;
+import dev.bodewig.jcoprocessor.procbridge.Client;
+import dev.bodewig.jcoprocessor.procbridge.Server;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the throughput of many concurrent requests to handlers that block,
+ * comparing the default cached thread pool with virtual threads and the
+ * non-blocking mode
+ * <p>
+ * Virtual threads require the benchmark to run on Java 21 or later, otherwise
+ * the Server falls back to platform threads.
+ *
+ * @author Lars Bodewig
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ExecutorBenchmark {
+
+    private static final int CONCURRENT_REQUESTS = 256;
+
+    /**
+     * The system property configuring the Server, "none" for the default
+     */
+    @Param({"none", Server.VIRTUAL_THREADS_PROPERTY, Server.NON_BLOCKING_PROPERTY})
+    public String property;
+
+    private JCoprocess process;
+
+    /**
+     * Starts the JCoprocess and waits until it answers
+     *
+     * @throws IOException if starting fails
+     */
+    @Setup
+    public void setup() throws IOException {
+        process = new JCoprocess(EchoServer.class);
+        if (!"none".equals(property)) {
+            process.addJvmOption("-D" + property + "=true");
+        }
+        process.start(Client.FOREVER);
+        process.request("echo", 0);
+    }
+
+    /**
+     * Sends concurrent requests to a handler blocking for 1 ms each
+     */
+    @Benchmark
+    @OperationsPerInvocation(CONCURRENT_REQUESTS)
+    public void blockingRequests() {
+        CompletableFuture<?>[] futures = new CompletableFuture[CONCURRENT_REQUESTS];
+        for (int i = 0; i < futures.length; i++) {
+            futures[i] = process.requestAsync("sleep", 1);
+        }
+        CompletableFuture.allOf(futures).join();
+    }
+
+    /**
+     * Stops the JCoprocess
+     */
+    @TearDown
+    public void tearDown() {
+        process.stop();
+    }
+}
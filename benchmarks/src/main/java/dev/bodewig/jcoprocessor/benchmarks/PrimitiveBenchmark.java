@@ -0,0 +1,154 @@
+package dev.bodewig.jcoprocessor.benchmarks;
+
+import dev.bodewig.jcoprocessor.JCoprocess;
+import dev.bodewig.jcoprocessor.procbridge.Client;
+import dev.bodewig.jcoprocessor.procbridge.Codec;
+import dev.bodewig.jcoprocessor.procbridge.Server;
+import dev.bodewig.jcoprocessor.procbridge.Transport;
+import dev.bodewig.jcoprocessor.util.Numeric;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.DoubleStream;
+
+/**
+ * Measures a double and a double array sent with the BINARY Codec and a cast of
+ * the response against the same values sent as raw primitive bodies. Run with
+ * {@code -prof gc} to compare the allocations per call.
+ *
+ * @author Lars Bodewig
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PrimitiveBenchmark {
+
+    /**
+     * Server handling the same methods encoded and raw
+     */
+    public static class ScoreServer extends Server {
+
+        /**
+         * Creates a new ScoreServer that is not yet running
+         *
+         * @param port the port to listen to
+         */
+        public ScoreServer(int port) {
+            super(port);
+            registerDouble("score", ScoreServer::score);
+            registerDoubles("scoreAll", values -> DoubleStream.of(values).map(ScoreServer::score).toArray());
+        }
+
+        private static double score(double value) {
+            return value * 0.5 + 1;
+        }
+
+        @Override
+        public Object handleRequest(String method, Object payload) {
+            return switch (method) {
+                case "score" -> score(Numeric.doubleValue(payload));
+                case "scoreAll" -> DoubleStream.of((double[]) payload).map(ScoreServer::score).toArray();
+                default -> throw new IllegalArgumentException("Unexpected method: " + method);
+            };
+        }
+
+        /**
+         * Starts the ScoreServer
+         *
+         * @param args the port to listen to
+         */
+        public static void main(String[] args) {
+            if (args.length == 0) {
+                throw new IllegalArgumentException("Missing argument: port");
+            }
+            int port = Integer.parseInt(args[0]);
+            ScoreServer server = new ScoreServer(port);
+            server.start();
+        }
+    }
+
+    /**
+     * The number of doubles in the array requests
+     */
+    @Param({"1000"})
+    public int size;
+
+    private JCoprocess process;
+    private double[] values;
+
+    /**
+     * Starts the JCoprocess
+     *
+     * @throws IOException if starting fails
+     */
+    @Setup
+    public void setup() throws IOException {
+        process = new JCoprocess(ScoreServer.class, Transport.UNIX);
+        process.setCodec(Codec.BINARY);
+        process.start(Client.FOREVER);
+        values = DoubleStream.iterate(0, v -> v + 1).limit(size).toArray();
+    }
+
+    /**
+     * Sends a double encoded and casts the response
+     *
+     * @return the response
+     */
+    @Benchmark
+    public double boxed() {
+        return process.request("score", 2.0, Double.class);
+    }
+
+    /**
+     * Sends a double as raw body
+     *
+     * @return the response
+     */
+    @Benchmark
+    public double primitive() {
+        return process.requestDouble("score", 2.0);
+    }
+
+    /**
+     * Sends a double array encoded
+     *
+     * @return the response
+     */
+    @Benchmark
+    public double[] boxedArray() {
+        return process.request("scoreAll", values);
+    }
+
+    /**
+     * Sends a double array as raw body
+     *
+     * @return the response
+     */
+    @Benchmark
+    public double[] primitiveArray() {
+        return process.requestDoubles("scoreAll", values);
+    }
+
+    /**
+     * Stops the JCoprocess
+     */
+    @TearDown
+    public void tearDown() {
+        process.stop();
+    }
+}
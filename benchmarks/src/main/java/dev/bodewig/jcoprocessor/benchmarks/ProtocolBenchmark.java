@@ -0,0 +1,94 @@
+package dev.bodewig.jcoprocessor.benchmarks;
+
+import dev.bodewig.jcoprocessor.procbridge.Codec;
+import dev.bodewig.jcoprocessor.procbridge.Protocol;
+import dev.bodewig.jcoprocessor.procbridge.Response;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of encoding a request and decoding a response without any
+ * I/O, for both Codecs and growing payloads
+ * <p>
+ * The payload is a double[] of the given length. JSON decodes it as JSONArray,
+ * BINARY as double[].
+ *
+ * @author Lars Bodewig
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ProtocolBenchmark {
+
+    /**
+     * The Codec used to encode the frame body
+     */
+    @Param({"JSON", "BINARY"})
+    public Codec codec;
+
+    /**
+     * The number of doubles in the payload
+     */
+    @Param({"1", "128", "16384"})
+    public int size;
+
+    private double[] payload;
+    private ByteArrayOutputStream out;
+    private byte[] response;
+
+    /**
+     * Creates the payload and the encoded response to decode
+     *
+     * @throws IOException if encoding fails
+     */
+    @Setup
+    public void setup() throws IOException {
+        payload = ThreadLocalRandom.current().doubles(size).toArray();
+        out = new ByteArrayOutputStream();
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        Protocol.writeGoodResponse(encoded, codec, 1, payload);
+        response = encoded.toByteArray();
+    }
+
+    /**
+     * Encodes a request
+     *
+     * @return the encoded size to prevent dead code elimination
+     * @throws IOException if encoding fails
+     */
+    @Benchmark
+    public int writeRequest() throws IOException {
+        out.reset();
+        Protocol.writeRequest(out, codec, 1, "echo", payload);
+        return out.size();
+    }
+
+    /**
+     * Decodes a response
+     *
+     * @return the decoded response
+     * @throws IOException if decoding fails
+     */
+    @Benchmark
+    public Response readResponse() throws IOException {
+        return Protocol.readResponse(new ByteArrayInputStream(response)).orElseThrow();
+    }
+}
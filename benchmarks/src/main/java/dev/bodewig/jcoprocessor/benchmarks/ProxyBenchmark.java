@@ -0,0 +1,176 @@
+package dev.bodewig.jcoprocessor.benchmarks;
+
+import dev.bodewig.jcoprocessor.JCoprocess;
+import dev.bodewig.jcoprocessor.procbridge.Client;
+import dev.bodewig.jcoprocessor.procbridge.Codec;
+import dev.bodewig.jcoprocessor.procbridge.Server;
+import dev.bodewig.jcoprocessor.procbridge.Transport;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures calls through a proxy of an exported service interface against
+ * requests to the same methods by name with a cast of the response
+ *
+ * @author Lars Bodewig
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ProxyBenchmark {
+
+    /**
+     * The service exported by the {@link InvoiceServer}
+     */
+    public interface InvoiceService {
+
+        /**
+         * Calculates a total
+         *
+         * @param amount the amount
+         * @return the total
+         */
+        double total(double amount);
+
+        /**
+         * Calculates a total with a tax rate
+         *
+         * @param amount the amount
+         * @param rate   the tax rate
+         * @return the total
+         */
+        double totalWithRate(double amount, double rate);
+    }
+
+    /**
+     * Server exporting the {@link InvoiceService}
+     */
+    public static class InvoiceServer extends Server implements InvoiceService {
+
+        /**
+         * Creates a new InvoiceServer that is not yet running
+         *
+         * @param port the port to listen to
+         */
+        public InvoiceServer(int port) {
+            super(port);
+            export(InvoiceService.class, this);
+        }
+
+        @Override
+        public double total(double amount) {
+            return amount * 1.19;
+        }
+
+        @Override
+        public double totalWithRate(double amount, double rate) {
+            return amount * (1 + rate);
+        }
+
+        /**
+         * Starts the InvoiceServer
+         *
+         * @param args the port to listen to
+         */
+        public static void main(String[] args) {
+            if (args.length == 0) {
+                throw new IllegalArgumentException("Missing argument: port");
+            }
+            int port = Integer.parseInt(args[0]);
+            InvoiceServer server = new InvoiceServer(port);
+            server.start();
+        }
+    }
+
+    /**
+     * The Codec of the requests
+     */
+    @Param({"JSON", "BINARY"})
+    public Codec codec;
+
+    private JCoprocess process;
+    private InvoiceService proxy;
+
+    /**
+     * Starts the JCoprocess, waits until it announced its method ids and creates
+     * the proxy
+     *
+     * @throws IOException          if starting fails
+     * @throws InterruptedException if interrupted while waiting
+     */
+    @Setup
+    public void setup() throws IOException, InterruptedException {
+        process = new JCoprocess(InvoiceServer.class, Transport.UNIX);
+        process.setCodec(codec);
+        process.start(Client.FOREVER);
+        while (process.getMethodIds().isEmpty()) {
+            Thread.sleep(10);
+        }
+        proxy = process.proxy(InvoiceService.class);
+    }
+
+    /**
+     * Sends a request by name and casts the response
+     *
+     * @return the response
+     */
+    @Benchmark
+    public double request() {
+        return process.request("total", 100.0, Double.class);
+    }
+
+    /**
+     * Calls the proxy
+     *
+     * @return the response
+     */
+    @Benchmark
+    public double proxy() {
+        return proxy.total(100.0);
+    }
+
+    /**
+     * Sends a request with two arguments by name and casts the response
+     *
+     * @return the response
+     */
+    @Benchmark
+    public double requestTwoArguments() {
+        return process.request("totalWithRate", List.of(100.0, 0.19), Double.class);
+    }
+
+    /**
+     * Calls the proxy with two arguments
+     *
+     * @return the response
+     */
+    @Benchmark
+    public double proxyTwoArguments() {
+        return proxy.totalWithRate(100.0, 0.19);
+    }
+
+    /**
+     * Stops the JCoprocess
+     */
+    @TearDown
+    public void tearDown() {
+        process.stop();
+    }
+}
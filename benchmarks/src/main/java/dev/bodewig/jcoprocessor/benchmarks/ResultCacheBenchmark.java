@@ -0,0 +1,93 @@
+package dev.bodewig.jcoprocessor.benchmarks;
+
+import dev.bodewig.jcoprocessor.JCoprocess;
+import dev.bodewig.jcoprocessor.procbridge.Client;
+import dev.bodewig.jcoprocessor.procbridge.ResultCache;
+import dev.bodewig.jcoprocessor.procbridge.Transport;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures requests drawn from a fixed set of distinct payloads with and
+ * without a {@link ResultCache}
+ *
+ * @author Lars Bodewig
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class ResultCacheBenchmark {
+
+    /**
+     * If the responses are cached
+     */
+    @Param({"false", "true"})
+    public boolean cached;
+
+    /**
+     * The number of distinct payloads
+     */
+    @Param({"100"})
+    public int distinct;
+
+    private JCoprocess process;
+    private JSONObject[] payloads;
+
+    /**
+     * Starts the JCoprocess
+     *
+     * @throws IOException if starting fails
+     */
+    @Setup
+    public void setup() throws IOException {
+        process = new JCoprocess(EchoServer.class, Transport.UNIX);
+        process.start(Client.FOREVER);
+        if (cached) {
+            ResultCache cache = new ResultCache(distinct, Client.FOREVER);
+            cache.enable("echo");
+            process.setResultCache(cache);
+        }
+        payloads = new JSONObject[distinct];
+        for (int i = 0; i < distinct; i++) {
+            payloads[i] = new JSONObject().put("id", i).put("name", "item-" + i);
+        }
+    }
+
+    /**
+     * Sends a request with one of the payloads
+     *
+     * @return the response
+     */
+    @Benchmark
+    public Object request() {
+        return process.request("echo", payloads[ThreadLocalRandom.current().nextInt(distinct)]);
+    }
+
+    /**
+     * Stops the JCoprocess
+     */
+    @TearDown
+    public void tearDown() {
+        process.stop();
+    }
+}
@@ -0,0 +1,89 @@
+package dev.bodewig.jcoprocessor.benchmarks;
+
+import dev.bodewig.jcoprocessor.JCoprocess;
+import dev.bodewig.jcoprocessor.procbridge.Client;
+import dev.bodewig.jcoprocessor.procbridge.Transport;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the latency of a request to a running JCoprocess over each
+ * Transport
+ * <p>
+ * Sampling reports the percentiles (p50, p99, ...) of single round trips in
+ * addition to the mean.
+ *
+ * @author Lars Bodewig
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RoundTripBenchmark {
+
+    /**
+     * The Transport connecting to the JCoprocess
+     */
+    @Param({"TCP", "UNIX", "STDIO"})
+    public Transport transport;
+
+    private JCoprocess process;
+    private ByteBuffer bytes;
+
+    /**
+     * Starts the JCoprocess and waits until it answers
+     *
+     * @throws IOException if starting fails
+     */
+    @Setup
+    public void setup() throws IOException {
+        process = new JCoprocess(EchoServer.class, transport);
+        process.start(Client.FOREVER);
+        process.request("echo", 0);
+        bytes = ByteBuffer.allocate(64);
+    }
+
+    /**
+     * Sends a small JSON request
+     *
+     * @return the response
+     */
+    @Benchmark
+    public Object request() {
+        return process.request("echo", "Hello");
+    }
+
+    /**
+     * Sends a small raw ByteBuffer request
+     *
+     * @return the response
+     */
+    @Benchmark
+    public ByteBuffer requestBytes() {
+        return process.requestBytes("echo", bytes.clear());
+    }
+
+    /**
+     * Stops the JCoprocess
+     */
+    @TearDown
+    public void tearDown() {
+        process.stop();
+    }
+}
@@ -0,0 +1,142 @@
+package dev.bodewig.jcoprocessor.benchmarks;
+
+import dev.bodewig.jcoprocessor.JCoprocess;
+import dev.bodewig.jcoprocessor.procbridge.Client;
+import dev.bodewig.jcoprocessor.procbridge.Codec;
+import dev.bodewig.jcoprocessor.procbridge.Handler;
+import dev.bodewig.jcoprocessor.procbridge.Server;
+import dev.bodewig.jcoprocessor.procbridge.Transport;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures requests dispatched by a switch on the method name in
+ * handleRequest against the same handler routed with {@link Handler}, whose
+ * method id is sent instead of the name
+ *
+ * @author Lars Bodewig
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RouterBenchmark {
+
+    /**
+     * Server handling the same method by name and routed
+     */
+    public static class RouterServer extends Server {
+
+        /**
+         * Creates a new RouterServer that is not yet running
+         *
+         * @param port the port to listen to
+         */
+        public RouterServer(int port) {
+            super(port);
+        }
+
+        @Override
+        public Object handleRequest(String method, Object payload) {
+            return switch (method) {
+                case "calculateInvoiceTotal" -> total((Number) payload);
+                case "calculateInvoiceTax" -> total((Number) payload) * 0.19;
+                case "calculateInvoiceDiscount" -> total((Number) payload) * 0.05;
+                case "calculateInvoiceShipping" -> 4.99;
+                case "calculateInvoiceTotalNamed" -> total((Number) payload);
+                default -> throw new IllegalArgumentException("Unexpected method: " + method);
+            };
+        }
+
+        /**
+         * Calculates a total
+         *
+         * @param amount the amount
+         * @return the total
+         */
+        @Handler("calculateInvoiceTotalRouted")
+        public double total(Number amount) {
+            return amount.doubleValue() * 1.19;
+        }
+
+        /**
+         * Starts the RouterServer
+         *
+         * @param args the port to listen to
+         */
+        public static void main(String[] args) {
+            if (args.length == 0) {
+                throw new IllegalArgumentException("Missing argument: port");
+            }
+            int port = Integer.parseInt(args[0]);
+            RouterServer server = new RouterServer(port);
+            server.start();
+        }
+    }
+
+    /**
+     * If the method is routed and sent by id
+     */
+    @Param({"false", "true"})
+    public boolean routed;
+
+    /**
+     * The Codec of the requests
+     */
+    @Param({"JSON", "BINARY"})
+    public Codec codec;
+
+    private JCoprocess process;
+    private String method;
+
+    /**
+     * Starts the JCoprocess and waits until it announced its method ids
+     *
+     * @throws IOException          if starting fails
+     * @throws InterruptedException if interrupted while waiting
+     */
+    @Setup
+    public void setup() throws IOException, InterruptedException {
+        process = new JCoprocess(RouterServer.class, Transport.UNIX);
+        process.setCodec(codec);
+        process.start(Client.FOREVER);
+        method = routed ? "calculateInvoiceTotalRouted" : "calculateInvoiceTotalNamed";
+        process.request(method, 1);
+        while (process.getMethodIds().isEmpty()) {
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Sends a request to the method
+     *
+     * @return the response
+     */
+    @Benchmark
+    public Object request() {
+        return process.request(method, 100);
+    }
+
+    /**
+     * Stops the JCoprocess
+     */
+    @TearDown
+    public void tearDown() {
+        process.stop();
+    }
+}
@@ -0,0 +1,79 @@
+package dev.bodewig.jcoprocessor.benchmarks;
+
+import dev.bodewig.jcoprocessor.JCoprocess;
+import dev.bodewig.jcoprocessor.JCoprocessManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures spawning several JCoprocesses over TCP one after another against
+ * spawning them concurrently with {@link JCoprocessManager#spawnAll(Class, int)}
+ *
+ * @author Lars Bodewig
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class SpawnAllBenchmark {
+
+    /**
+     * The number of JCoprocesses
+     */
+    @Param({"4"})
+    public int n;
+
+    private List<JCoprocess> processes = new ArrayList<>();
+
+    /**
+     * Spawns the JCoprocesses one after another
+     *
+     * @return the JCoprocesses
+     * @throws IOException if starting fails
+     */
+    @Benchmark
+    public List<JCoprocess> sequential() throws IOException {
+        for (int i = 0; i < n; i++) {
+            processes.add(JCoprocessManager.spawn(EchoServer.class));
+        }
+        return processes;
+    }
+
+    /**
+     * Spawns the JCoprocesses concurrently
+     *
+     * @return the JCoprocesses
+     * @throws IOException if starting fails
+     */
+    @Benchmark
+    public List<JCoprocess> concurrent() throws IOException {
+        processes = JCoprocessManager.spawnAll(EchoServer.class, n);
+        return processes;
+    }
+
+    /**
+     * Kills the JCoprocesses spawned by the last invocation
+     */
+    @TearDown(Level.Invocation)
+    public void tearDown() {
+        processes.forEach(JCoprocessManager::kill);
+        processes = new ArrayList<>();
+    }
+}
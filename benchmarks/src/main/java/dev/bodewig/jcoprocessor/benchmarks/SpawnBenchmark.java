@@ -0,0 +1,112 @@
+package dev.bodewig.jcoprocessor.benchmarks;
+
+import dev.bodewig.jcoprocessor.JCoprocess;
+import dev.bodewig.jcoprocessor.procbridge.Client;
+import dev.bodewig.jcoprocessor.procbridge.Transport;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the time from spawning a JCoprocess until it answers its first
+ * request
+ * <p>
+ * The first request is included because the STDIO Transport returns from
+ * {@link JCoprocess#start(long)} before the Server runs.
+ * <p>
+ * With class data sharing the archive is dumped by a JCoprocess started once
+ * before the measurement, so only its use is measured.
+ *
+ * @author Lars Bodewig
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Thread)
+public class SpawnBenchmark {
+
+    /**
+     * The Transport connecting to the JCoprocess
+     */
+    @Param({"TCP", "UNIX", "STDIO"})
+    public Transport transport;
+
+    /**
+     * If the JCoprocess uses an AppCDS archive
+     */
+    @Param({"false", "true"})
+    public boolean classDataSharing;
+
+    private Path archive;
+    private JCoprocess process;
+
+    /**
+     * Dumps the AppCDS archive if class data sharing is enabled
+     *
+     * @throws IOException          if starting fails
+     * @throws InterruptedException if interrupted while waiting for the archive
+     */
+    @Setup(Level.Trial)
+    public void setup() throws IOException, InterruptedException {
+        if (!classDataSharing) {
+            return;
+        }
+        archive = Files.createTempDirectory("jcoprocessor-cds").resolve("EchoServer.jsa");
+        process = create();
+        process.start(Client.FOREVER);
+        process.request("echo", 0);
+        process.stop();
+        process = null;
+        while (!Files.isRegularFile(archive)) {
+            Thread.sleep(10);
+        }
+    }
+
+    private JCoprocess create() {
+        JCoprocess process = new JCoprocess(EchoServer.class, transport);
+        process.setClassDataSharing(classDataSharing);
+        process.setClassDataArchive(archive);
+        return process;
+    }
+
+    /**
+     * Spawns a JCoprocess and sends the first request
+     *
+     * @return the response
+     * @throws IOException if starting fails
+     */
+    @Benchmark
+    public Object spawn() throws IOException {
+        process = create();
+        process.start(Client.FOREVER);
+        return process.request("echo", 0);
+    }
+
+    /**
+     * Stops the JCoprocess spawned by the last invocation
+     */
+    @TearDown(Level.Invocation)
+    public void tearDown() {
+        if (process != null) {
+            process.stop();
+            process = null;
+        }
+    }
+}
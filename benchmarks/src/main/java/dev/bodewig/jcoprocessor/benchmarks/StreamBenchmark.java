@@ -0,0 +1,80 @@
+package dev.bodewig.jcoprocessor.benchmarks;
+
+import dev.bodewig.jcoprocessor.JCoprocess;
+import dev.bodewig.jcoprocessor.procbridge.Client;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Measures the cost per item of receiving a stream depending on the number of
+ * items requested at once
+ *
+ * @author Lars Bodewig
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StreamBenchmark {
+
+    private static final int ITEMS = 10_000;
+
+    /**
+     * The maximum number of items requested at once
+     */
+    @Param({"1", "64", "1024"})
+    public int window;
+
+    private JCoprocess process;
+
+    /**
+     * Starts the JCoprocess and waits until it answers
+     *
+     * @throws IOException if starting fails
+     */
+    @Setup
+    public void setup() throws IOException {
+        process = new JCoprocess(EchoServer.class);
+        process.setStreamWindow(window);
+        process.start(Client.FOREVER);
+        process.request("echo", 0);
+    }
+
+    /**
+     * Receives a stream of Integers
+     *
+     * @return the sum of the items
+     */
+    @Benchmark
+    @OperationsPerInvocation(ITEMS)
+    public long stream() {
+        try (Stream<Integer> items = process.requestStream("range", ITEMS)) {
+            return items.mapToLong(Integer::longValue).sum();
+        }
+    }
+
+    /**
+     * Stops the JCoprocess
+     */
+    @TearDown
+    public void tearDown() {
+        process.stop();
+    }
+}
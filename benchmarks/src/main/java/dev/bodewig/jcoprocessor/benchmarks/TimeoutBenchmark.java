@@ -0,0 +1,86 @@
+package dev.bodewig.jcoprocessor.benchmarks;
+
+import dev.bodewig.jcoprocessor.JCoprocess;
+import dev.bodewig.jcoprocessor.procbridge.Client;
+import dev.bodewig.jcoprocessor.procbridge.Transport;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of a request timeout by comparing requests to a JCoprocess
+ * connected with a finite timeout to ones connected without
+ * <p>
+ * Each timed request schedules a timer on the shared timeout scheduler and
+ * cancels it once the response arrives.
+ *
+ * @author Lars Bodewig
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TimeoutBenchmark {
+
+    /**
+     * The connection timeout in milliseconds, 0 for {@link Client#FOREVER}
+     */
+    @Param({"0", "10000"})
+    public long timeoutMillis;
+
+    private JCoprocess process;
+
+    /**
+     * Starts the JCoprocess and waits until it answers
+     *
+     * @throws IOException if starting fails
+     */
+    @Setup
+    public void setup() throws IOException {
+        process = new JCoprocess(EchoServer.class, Transport.UNIX);
+        process.start(timeoutMillis);
+        process.request("echo", 0);
+    }
+
+    /**
+     * Sends a small request and waits for the response
+     *
+     * @return the response
+     */
+    @Benchmark
+    public Object request() {
+        return process.request("echo", "Hello");
+    }
+
+    /**
+     * Sends a small request asynchronously and joins the response
+     *
+     * @return the response
+     */
+    @Benchmark
+    public Object requestAsync() {
+        return process.requestAsync("echo", "Hello").join();
+    }
+
+    /**
+     * Stops the JCoprocess
+     */
+    @TearDown
+    public void tearDown() {
+        process.stop();
+    }
+}
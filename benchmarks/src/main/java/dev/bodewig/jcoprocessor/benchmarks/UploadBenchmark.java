@@ -0,0 +1,86 @@
+package dev.bodewig.jcoprocessor.benchmarks;
+
+import dev.bodewig.jcoprocessor.JCoprocess;
+import dev.bodewig.jcoprocessor.procbridge.Client;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares uploading a large body in chunks with sending it as a single raw
+ * request
+ *
+ * @author Lars Bodewig
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class UploadBenchmark {
+
+    /**
+     * The size of the body in bytes
+     */
+    @Param({"1048576", "67108864"})
+    public int size;
+
+    private JCoprocess process;
+    private byte[] data;
+
+    /**
+     * Starts the JCoprocess and waits until it answers
+     *
+     * @throws IOException if starting fails
+     */
+    @Setup
+    public void setup() throws IOException {
+        process = new JCoprocess(EchoServer.class);
+        process.start(Client.FOREVER);
+        process.request("echo", 0);
+        data = new byte[size];
+    }
+
+    /**
+     * Uploads the body chunk by chunk
+     *
+     * @return the number of bytes received by the Server
+     */
+    @Benchmark
+    public Number upload() {
+        return process.upload("count", new ByteArrayInputStream(data));
+    }
+
+    /**
+     * Sends the body in a single frame and receives it back
+     *
+     * @return the response
+     */
+    @Benchmark
+    public ByteBuffer requestBytes() {
+        return process.requestBytes("echo", ByteBuffer.wrap(data));
+    }
+
+    /**
+     * Stops the JCoprocess
+     */
+    @TearDown
+    public void tearDown() {
+        process.stop();
+    }
+}
@@ -0,0 +1,111 @@
+package dev.bodewig.jcoprocessor.benchmarks;
+
+import dev.bodewig.jcoprocessor.JCoprocess;
+import dev.bodewig.jcoprocessor.JCoprocessManager;
+import dev.bodewig.jcoprocessor.JCoprocessWarmPool;
+import dev.bodewig.jcoprocessor.procbridge.Client;
+import dev.bodewig.jcoprocessor.procbridge.Transport;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the time from taking a JCoprocess from a filled JCoprocessWarmPool
+ * until it answered a burst of requests, depending on the number of requests
+ * sent by the warm-up hook before
+ * <p>
+ * Compare with {@link SpawnBenchmark} for the time without a pool.
+ *
+ * @author Lars Bodewig
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Thread)
+public class WarmPoolBenchmark {
+
+    private static final int BURST = 100;
+
+    /**
+     * The number of requests sent to each JCoprocess before it joins the pool
+     */
+    @Param({"0", "20000"})
+    public int warmUpRequests;
+
+    private JCoprocessWarmPool pool;
+    private JCoprocess process;
+
+    /**
+     * Starts the pool
+     */
+    @Setup
+    public void setup() {
+        pool = JCoprocessManager.prewarm(EchoServer.class, Transport.TCP, 1, Client.FOREVER, p -> {
+            for (int i = 0; i < warmUpRequests; i++) {
+                p.request("echo", i);
+            }
+        });
+    }
+
+    /**
+     * Waits until a JCoprocess is idle
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    @Setup(Level.Invocation)
+    public void awaitIdle() throws InterruptedException {
+        while (pool.idle() == 0) {
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Takes a JCoprocess and sends a burst of requests
+     *
+     * @return the last response
+     * @throws IOException if no JCoprocess was idle and starting one fails
+     */
+    @Benchmark
+    public Object take() throws IOException {
+        process = JCoprocessManager.spawn(EchoServer.class);
+        Object response = null;
+        for (int i = 0; i < BURST; i++) {
+            response = process.request("echo", i);
+        }
+        return response;
+    }
+
+    /**
+     * Stops the JCoprocess taken by the last invocation
+     */
+    @TearDown(Level.Invocation)
+    public void release() {
+        if (process != null) {
+            JCoprocessManager.kill(process);
+            process = null;
+        }
+    }
+
+    /**
+     * Stops the pool
+     */
+    @TearDown
+    public void tearDown() {
+        JCoprocessManager.cool(EchoServer.class);
+    }
+}
@@ -0,0 +1,117 @@
+package dev.bodewig.jcoprocessor;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * An AppCDS archive of the classes loaded by a Server process
+ * <p>
+ * While the archive does not exist, the process is started with
+ * {@code -XX:ArchiveClassesAtExit} to dump the classes it loaded to a temporary
+ * file when it exits. The first complete dump is then moved into place and
+ * later processes map it with {@code -XX:SharedArchiveFile} instead of loading
+ * and verifying those classes again. Processes started at the same time before
+ * the archive exists each dump their own file, only one of them is kept.
+ * <p>
+ * Only classes loaded from jars can be archived, a classpath containing
+ * directories of classes disables class data sharing.
+ *
+ * @author Lars Bodewig
+ */
+final class ClassDataArchive {
+
+    private static final Logger logger = Logger.getLogger(ClassDataArchive.class.getName());
+
+    private static final String DUMP_OPTION = "-XX:ArchiveClassesAtExit=";
+    private static final String SHARED_OPTION = "-XX:SharedArchiveFile=";
+
+    private ClassDataArchive() {
+    }
+
+    /**
+     * Derives an archive path in the temporary directory from the command, so a
+     * changed classpath, option or runtime uses a new archive
+     *
+     * @param className the Server class name
+     * @param command   the command starting the Server process
+     * @return the archive path
+     */
+    static Path defaultPath(String className, List<String> command) {
+        int hash = Objects.hash(command, System.getProperty("java.vm.version"));
+        return Paths.get(System.getProperty("java.io.tmpdir"), "jcoprocessor-cds",
+                className + "-" + Integer.toHexString(hash) + ".jsa");
+    }
+
+    /**
+     * Get the JVM option to use the archive if it exists or to dump it otherwise
+     *
+     * @param archive   the archive path
+     * @param classpath the classpath of the Server process
+     * @return the JVM option, null if the classpath cannot be archived
+     * @throws IOException if the directory of the archive cannot be created
+     */
+    static String jvmOption(Path archive, String classpath) throws IOException {
+        if (Files.isRegularFile(archive)) {
+            return SHARED_OPTION + archive;
+        }
+        for (String entry : classpath.split(File.pathSeparator)) {
+            Path path = Paths.get(entry);
+            if (Files.isDirectory(path) && !isEmpty(path)) {
+                // the JVM only archives classes loaded from jars
+                logger.warning("Class data sharing disabled, the classpath contains the directory " + entry);
+                return null;
+            }
+        }
+        Files.createDirectories(archive.toAbsolutePath().getParent());
+        return DUMP_OPTION + archive.resolveSibling(archive.getFileName() + "." + UUID.randomUUID() + ".tmp");
+    }
+
+    private static boolean isEmpty(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.findAny().isEmpty();
+        }
+    }
+
+    /**
+     * Moves the dump into place once the process exited, if it was started
+     * with a dump option
+     *
+     * @param process the Server process
+     * @param option  the option returned by {@link #jvmOption(Path, String)}
+     * @param archive the archive path
+     */
+    static void publishOnExit(Process process, String option, Path archive) {
+        if (!option.startsWith(DUMP_OPTION)) {
+            return;
+        }
+        Path dump = Paths.get(option.substring(DUMP_OPTION.length()));
+        process.onExit().thenRun(() -> {
+            try {
+                if (Files.size(dump) > 0) {
+                    Files.move(dump, archive, StandardCopyOption.ATOMIC_MOVE);
+                }
+            } catch (FileAlreadyExistsException e) {
+                // another process was faster
+            } catch (IOException e) {
+                // e.g. killed forcibly before dumping
+                logger.log(Level.FINE, "Could not publish class data archive " + archive, e);
+            } finally {
+                try {
+                    Files.deleteIfExists(dump);
+                } catch (IOException ignored) {
+                }
+            }
+        });
+    }
+}
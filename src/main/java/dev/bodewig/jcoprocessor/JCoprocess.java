@@ -1,29 +1,65 @@
 package dev.bodewig.jcoprocessor;
 
+import dev.bodewig.jcoprocessor.procbridge.Batch;
 import dev.bodewig.jcoprocessor.procbridge.Client;
+import dev.bodewig.jcoprocessor.procbridge.Codec;
+import dev.bodewig.jcoprocessor.procbridge.ResultCache;
 import dev.bodewig.jcoprocessor.procbridge.Server;
+import dev.bodewig.jcoprocessor.procbridge.Transport;
 
 import java.io.File;
 import java.io.IOException;
-import java.net.ServerSocket;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.CodeSource;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * A Client-Server pair to run tasks in a co-process
+ * <p>
+ * Requests may be sent concurrently from multiple threads, they are multiplexed
+ * over the same connection.
  *
  * @author Lars Bodewig
  */
 public class JCoprocess {
 
-    private static final Object PORT_LOCK = new Object();
-    private static final Object BUILDER_LOCK = new Object();
+    private static final AtomicInteger SOCKET_COUNTER = new AtomicInteger();
 
     /**
      * The command list for the ProcessBuilder
      */
     protected final List<String> command;
 
+    /**
+     * The Transport used to connect to the Server
+     */
+    protected final Transport transport;
+
+    /**
+     * The path of the Unix domain socket if the UNIX Transport is used
+     */
+    protected Path socketPath;
+
+    /**
+     * The executor running the response reader of the Client, null for a
+     * dedicated thread
+     */
+    protected Executor executor;
+
     /**
      * The Server process
      */
@@ -34,6 +70,48 @@ public class JCoprocess {
      */
     protected Client client;
 
+    /**
+     * The Codec used to encode requests
+     */
+    protected Codec codec = Codec.JSON;
+
+    /**
+     * The minimum size of raw payloads passed through shared memory, -1 if
+     * disabled
+     */
+    protected int sharedMemoryThreshold = -1;
+
+    /**
+     * The minimum size of encoded bodies to compress, -1 if disabled
+     */
+    protected int compressionThreshold = -1;
+
+    /**
+     * The maximum number of stream items requested at once
+     */
+    protected int streamWindow = Client.DEFAULT_STREAM_WINDOW;
+
+    /**
+     * The cache of responses, null if disabled
+     */
+    protected ResultCache resultCache;
+
+    /**
+     * The executor completing the futures of asynchronous requests, null for the
+     * shared pool
+     */
+    protected Executor completionExecutor;
+
+    /**
+     * If the Server process uses an AppCDS archive
+     */
+    protected boolean classDataSharing;
+
+    /**
+     * The path of the AppCDS archive, null for one derived from the command
+     */
+    protected Path classDataArchive;
+
     /**
      * Creates a new JCoprocess that is not yet running
      * <p>
@@ -43,6 +121,23 @@ public class JCoprocess {
      * @param server the Server class
      */
     public JCoprocess(Class<? extends Server> server) {
+        this(server, Transport.TCP);
+    }
+
+    /**
+     * Creates a new JCoprocess that is not yet running
+     * <p>
+     * The Server class needs to declare a main method that takes the port to run
+     * the Server on as an argument. With the UNIX Transport the socket path is
+     * passed as system property {@value Server#SOCKET_PROPERTY}, with the STDIO
+     * Transport the property {@value Server#STDIO_PROPERTY} is set. The port is
+     * ignored in both cases.
+     *
+     * @param server    the Server class
+     * @param transport the Transport used to connect to the Server
+     */
+    public JCoprocess(Class<? extends Server> server, Transport transport) {
+        this.transport = Objects.requireNonNull(transport);
         String javaHome = System.getProperty("java.home");
         String javaBin = javaHome + File.separator + "bin" + File.separator + "java";
         String classpath = System.getProperty("java.class.path");
@@ -56,28 +151,128 @@ public class JCoprocess {
     }
 
     /**
-     * Finds a free port and starts the Server before connecting the Client
+     * Starts the Server on a free port or socket path before connecting
+     * the Client
+     * <p>
+     * With the TCP and UNIX Transports the Client connects once the Server has
+     * printed {@value Server#READY_MESSAGE}, the rest of its standard output is
+     * forwarded to {@link System#out}. Over TCP the Server binds a free port and
+     * reports it in that line, so JCoprocesses can be started concurrently.
+     * Starting fails as soon as the Server process exits, even without a
+     * timeout.
      *
      * @param timeoutMillis the connection timeout, 0 for forever
      * @throws IOException if starting the Server fails
      */
     public void start(long timeoutMillis) throws IOException {
-        synchronized (PORT_LOCK) {
-            int port = findFreePort();
-            command.add(Integer.toString(port));
-            synchronized (BUILDER_LOCK) {
-                ProcessBuilder builder = new ProcessBuilder(command).inheritIO();
-                process = builder.start();
-            }
-            try {
-                client = new Client(/* localhost */ null, port, timeoutMillis, null);
-            } catch (RuntimeException e) {
-                stop();
-                throw e;
-            }
+        if (transport == Transport.UNIX) {
+            startUnix(timeoutMillis);
+            return;
+        } else if (transport == Transport.STDIO) {
+            startStdio(timeoutMillis);
+            return;
+        }
+        List<String> command = serverCommand();
+        command.add(1, "-D" + Server.READY_PROPERTY + "=true");
+        command.add("0"); // the Server binds a free port and reports it
+        process = launch(readyBuilder(command));
+        try {
+            int port = parsePort(ReadySignal.await(process, timeoutMillis));
+            client = configure(new Client(/* localhost */ null, port, timeoutMillis, executor));
+        } catch (IOException | RuntimeException e) {
+            stop();
+            throw e;
         }
     }
 
+    private static int parsePort(String ready) throws IOException {
+        try {
+            return Integer.parseInt(ready);
+        } catch (NumberFormatException e) {
+            throw new IOException("Server did not report its port: " + ready, e);
+        }
+    }
+
+    private void startUnix(long timeoutMillis) throws IOException {
+        // the path is unique for this process
+        socketPath = Paths.get(System.getProperty("java.io.tmpdir"),
+                "procbridge-" + ProcessHandle.current().pid() + "-" + SOCKET_COUNTER.incrementAndGet() + ".sock");
+        List<String> command = serverCommand();
+        command.add(1, "-D" + Server.SOCKET_PROPERTY + "=" + socketPath);
+        command.add(1, "-D" + Server.READY_PROPERTY + "=true");
+        command.add("-1"); // no port
+        process = launch(readyBuilder(command));
+        try {
+            ReadySignal.await(process, timeoutMillis);
+            client = configure(new Client(socketPath, timeoutMillis, executor));
+        } catch (IOException | RuntimeException e) {
+            stop();
+            throw e;
+        }
+    }
+
+    private void startStdio(long timeoutMillis) throws IOException {
+        List<String> command = serverCommand();
+        command.add(1, "-D" + Server.STDIO_PROPERTY + "=true");
+        command.add("-1"); // no port
+        process = launch(new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT));
+        client = configure(new Client(process.getInputStream(), process.getOutputStream(), timeoutMillis,
+                executor));
+    }
+
+    /**
+     * Applies the settings of this JCoprocess to a newly connected Client
+     */
+    private Client configure(Client client) {
+        client.setCodec(codec);
+        client.setSharedMemoryThreshold(sharedMemoryThreshold);
+        client.setCompressionThreshold(compressionThreshold);
+        client.setStreamWindow(streamWindow);
+        client.setResultCache(resultCache);
+        client.setCompletionExecutor(completionExecutor);
+        return client;
+    }
+
+    private Process launch(ProcessBuilder builder) throws IOException {
+        Path archive = classDataSharing ? getClassDataArchive() : null;
+        String option = archive != null ? ClassDataArchive.jvmOption(archive, getClasspath()) : null;
+        if (option != null) {
+            builder.command().add(1, option);
+        }
+        Process process = builder.start();
+        if (option != null) {
+            ClassDataArchive.publishOnExit(process, option, archive);
+        }
+        return process;
+    }
+
+    /**
+     * Pipes the standard output to wait for the ready message, it is forwarded
+     * by {@link ReadySignal}
+     */
+    private static ProcessBuilder readyBuilder(List<String> command) {
+        return new ProcessBuilder(command).redirectInput(ProcessBuilder.Redirect.INHERIT)
+                .redirectError(ProcessBuilder.Redirect.INHERIT);
+    }
+
+    private List<String> serverCommand() {
+        List<String> command = new ArrayList<>(this.command);
+        if (compressionThreshold >= 0) {
+            command.add(1, "-D" + Server.COMPRESSION_PROPERTY + "=" + compressionThreshold);
+        }
+        return command;
+    }
+
+    /**
+     * Return if the Server process is running
+     *
+     * @return if the Server process is alive
+     */
+    public boolean isAlive() {
+        Process process = this.process;
+        return process != null && process.isAlive();
+    }
+
     /**
      * Closes the socket and destroys the Server process
      */
@@ -92,12 +287,300 @@ public class JCoprocess {
             if (process != null) {
                 process.destroy();
             }
+            if (socketPath != null) {
+                try {
+                    Files.deleteIfExists(socketPath);
+                } catch (IOException ignored) {
+                }
+            }
         }
     }
 
-    private static int findFreePort() throws IOException {
-        try (ServerSocket socket = new ServerSocket(0)) {
-            return socket.getLocalPort();
+    /**
+     * Adds an option to the command starting the Server process, e.g. a system
+     * property like {@code -Dprocbridge.virtualthreads=true}. Options are passed
+     * in the order they were added, so a later one overrides an earlier one.
+     * Takes effect on the next start.
+     *
+     * @param option the JVM option
+     */
+    public synchronized void addJvmOption(String option) {
+        // before -cp, classpath and class name
+        command.add(command.size() - 3, Objects.requireNonNull(option));
+    }
+
+    /**
+     * Get the options added to the command starting the Server process
+     *
+     * @return the JVM options in the order they were added
+     */
+    public synchronized List<String> getJvmOptions() {
+        return List.copyOf(command.subList(1, command.size() - 3));
+    }
+
+    /**
+     * Get the classpath of the Server process
+     *
+     * @return the classpath, the one of this process by default
+     */
+    public synchronized String getClasspath() {
+        return command.get(command.size() - 2);
+    }
+
+    /**
+     * Set the classpath of the Server process, e.g. trimmed to the Server and
+     * its dependencies with {@link #classpathOf(Class[])} so the process opens
+     * and searches fewer jars. Takes effect on the next start.
+     *
+     * @param classpath the classpath
+     */
+    public synchronized void setClasspath(String classpath) {
+        command.set(command.size() - 2, Objects.requireNonNull(classpath));
+    }
+
+    /**
+     * Builds a classpath of the jars or directories the given classes were
+     * loaded from
+     *
+     * @param classes the classes, usually the Server and one class of each
+     *                dependency it needs
+     * @return the classpath
+     * @throws IllegalArgumentException if a class has no code source, e.g. a
+     *                                  JDK class
+     */
+    public static String classpathOf(Class<?>... classes) {
+        return Stream.of(classes).map(klass -> {
+            CodeSource source = klass.getProtectionDomain().getCodeSource();
+            if (source == null) {
+                throw new IllegalArgumentException("No code source: " + klass.getName());
+            }
+            try {
+                return Paths.get(source.getLocation().toURI()).toString();
+            } catch (URISyntaxException e) {
+                throw new IllegalArgumentException("Invalid code source: " + klass.getName(), e);
+            }
+        }).distinct().collect(Collectors.joining(File.pathSeparator));
+    }
+
+    /**
+     * Return if the Server process uses an AppCDS archive
+     *
+     * @return if class data sharing is enabled
+     */
+    public boolean isClassDataSharing() {
+        return classDataSharing;
+    }
+
+    /**
+     * Set if the Server process uses an AppCDS archive of the classes it loads.
+     * The first start dumps the archive when the process is stopped, later
+     * starts map it to skip loading and verifying those classes. The classpath
+     * may only contain jars. Takes effect on the next start.
+     *
+     * @param classDataSharing if class data sharing is enabled, false by default
+     */
+    public synchronized void setClassDataSharing(boolean classDataSharing) {
+        this.classDataSharing = classDataSharing;
+    }
+
+    /**
+     * Get the path of the AppCDS archive
+     *
+     * @return the archive path, by default derived from the command in the
+     *         temporary directory
+     */
+    public synchronized Path getClassDataArchive() {
+        if (classDataArchive != null) {
+            return classDataArchive;
+        }
+        return ClassDataArchive.defaultPath(command.get(command.size() - 1), command);
+    }
+
+    /**
+     * Set the path of the AppCDS archive, e.g. to keep it across reboots. The
+     * archive is only valid for the same runtime and classpath.
+     *
+     * @param classDataArchive the archive path, null to derive it from the
+     *                         command
+     */
+    public synchronized void setClassDataArchive(Path classDataArchive) {
+        this.classDataArchive = classDataArchive;
+    }
+
+    /**
+     * Set the executor running the response reader of the Client. Takes effect
+     * on the next start.
+     *
+     * @param executor the executor, null for a dedicated thread
+     */
+    public synchronized void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Get the Transport used to connect to the Server
+     *
+     * @return the Transport
+     */
+    public Transport getTransport() {
+        return transport;
+    }
+
+    /**
+     * Get the ids the Server announced for its routed methods, requests to these
+     * methods are sent with the id instead of the name
+     *
+     * @return the method ids by name, empty until the Server answered
+     */
+    public Map<String, Integer> getMethodIds() {
+        Client client = this.client;
+        return client != null ? client.getMethodIds() : Map.of();
+    }
+
+    /**
+     * Get the Codec used to encode requests
+     *
+     * @return the Codec
+     */
+    public Codec getCodec() {
+        return codec;
+    }
+
+    /**
+     * Set the Codec used to encode requests, the Server answers with the same
+     * Codec
+     *
+     * @param codec the Codec, JSON by default
+     */
+    public synchronized void setCodec(Codec codec) {
+        this.codec = Objects.requireNonNull(codec);
+        if (client != null) {
+            client.setCodec(codec);
+        }
+    }
+
+    /**
+     * Get the minimum size of raw payloads passed through shared memory
+     *
+     * @return the threshold in bytes, -1 if disabled
+     */
+    public int getSharedMemoryThreshold() {
+        return sharedMemoryThreshold;
+    }
+
+    /**
+     * Set the minimum size of raw payloads passed through shared memory instead
+     * of the socket, the Server answers the same way
+     *
+     * @param sharedMemoryThreshold the threshold in bytes, -1 to disable (the
+     *                              default)
+     */
+    public synchronized void setSharedMemoryThreshold(int sharedMemoryThreshold) {
+        if (sharedMemoryThreshold < -1) {
+            throw new IllegalArgumentException("Invalid threshold: " + sharedMemoryThreshold);
+        }
+        this.sharedMemoryThreshold = sharedMemoryThreshold;
+        if (client != null) {
+            client.setSharedMemoryThreshold(sharedMemoryThreshold);
+        }
+    }
+
+    /**
+     * Get the minimum size of encoded bodies to compress
+     *
+     * @return the threshold in bytes, -1 if disabled
+     */
+    public int getCompressionThreshold() {
+        return compressionThreshold;
+    }
+
+    /**
+     * Set the minimum size of encoded request and response bodies to compress.
+     * The Server is passed the threshold as system property
+     * {@value Server#COMPRESSION_PROPERTY}, so it only applies to its responses
+     * from the next start.
+     *
+     * @param compressionThreshold the threshold in bytes, -1 to disable (the
+     *                             default)
+     */
+    public synchronized void setCompressionThreshold(int compressionThreshold) {
+        if (compressionThreshold < -1) {
+            throw new IllegalArgumentException("Invalid threshold: " + compressionThreshold);
+        }
+        this.compressionThreshold = compressionThreshold;
+        if (client != null) {
+            client.setCompressionThreshold(compressionThreshold);
+        }
+    }
+
+    /**
+     * Get the maximum number of stream items requested at once
+     *
+     * @return the stream window
+     */
+    public int getStreamWindow() {
+        return streamWindow;
+    }
+
+    /**
+     * Set the maximum number of stream items requested but not yet consumed
+     *
+     * @param streamWindow the stream window, {@value Client#DEFAULT_STREAM_WINDOW}
+     *                     by default
+     */
+    public synchronized void setStreamWindow(int streamWindow) {
+        if (streamWindow < 1) {
+            throw new IllegalArgumentException("Invalid stream window: " + streamWindow);
+        }
+        this.streamWindow = streamWindow;
+        if (client != null) {
+            client.setStreamWindow(streamWindow);
+        }
+    }
+
+    /**
+     * Get the cache of responses
+     *
+     * @return the ResultCache, null if disabled
+     */
+    public ResultCache getResultCache() {
+        return resultCache;
+    }
+
+    /**
+     * Set the cache of responses to methods enabled in it. The cache is kept
+     * when the JCoprocess is restarted.
+     *
+     * @param resultCache the ResultCache, null to disable (the default)
+     * @see Client#setResultCache(ResultCache)
+     */
+    public synchronized void setResultCache(ResultCache resultCache) {
+        this.resultCache = resultCache;
+        if (client != null) {
+            client.setResultCache(resultCache);
+        }
+    }
+
+    /**
+     * Get the executor completing the futures of asynchronous requests
+     *
+     * @return the executor, null for the shared pool
+     */
+    public Executor getCompletionExecutor() {
+        return completionExecutor;
+    }
+
+    /**
+     * Set the executor completing the futures returned by asynchronous requests
+     *
+     * @param completionExecutor the executor, null for a shared pool of daemon
+     *                           threads (the default)
+     * @see Client#setCompletionExecutor(Executor)
+     */
+    public synchronized void setCompletionExecutor(Executor completionExecutor) {
+        this.completionExecutor = completionExecutor;
+        if (client != null) {
+            client.setCompletionExecutor(completionExecutor);
         }
     }
 
@@ -137,7 +620,7 @@ public class JCoprocess {
      * @param type    Double, Integer or Long
      * @return the response payload
      */
-    public synchronized <T extends Number> T request(String method, Object payload, Class<T> type) {
+    public <T extends Number> T request(String method, Object payload, Class<T> type) {
         if (!process.isAlive()) {
             throw new IllegalStateException("Process is not alive");
         }
@@ -154,10 +637,288 @@ public class JCoprocess {
      *                JSONArray, JSONObject, Long, String)
      * @return the response payload
      */
-    public synchronized <T> T request(String method, Object payload) {
+    public <T> T request(String method, Object payload) {
         if (!process.isAlive()) {
             throw new IllegalStateException("Process is not alive");
         }
         return client.request(method, payload);
     }
+
+    /**
+     * Sends a request to the target Server without blocking and casts the result
+     * to the correct Number type
+     *
+     * @param <T>    the expected return type for comfort (Double, Integer, Long)
+     * @param method the requested method
+     * @param type   Double, Integer or Long
+     * @return a future completing with the response payload
+     */
+    public <T extends Number> CompletableFuture<T> requestAsync(String method, Class<T> type) {
+        return requestAsync(method, null, type);
+    }
+
+    /**
+     * Sends a request to the target Server without blocking
+     *
+     * @param <T>    the expected return type for comfort (supports Boolean, Double,
+     *               Integer, JSONArray, JSONObject, Long, String)
+     * @param method the requested method
+     * @return a future completing with the response payload
+     */
+    public <T> CompletableFuture<T> requestAsync(String method) {
+        return requestAsync(method, (Object) null);
+    }
+
+    /**
+     * Sends a request to the target Server without blocking and casts the result
+     * to the correct Number type
+     *
+     * @param <T>     the expected return type for comfort (Double, Integer, Long)
+     * @param method  the requested method
+     * @param payload the request payload (supports Boolean, Double, Integer,
+     *                JSONArray, JSONObject, Long, String)
+     * @param type    Double, Integer or Long
+     * @return a future completing with the response payload
+     */
+    public <T extends Number> CompletableFuture<T> requestAsync(String method, Object payload, Class<T> type) {
+        if (!process.isAlive()) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Process is not alive"));
+        }
+        return client.requestAsync(method, payload, type);
+    }
+
+    /**
+     * Sends a request to the target Server without blocking
+     *
+     * @param <T>     the expected return type for comfort (supports Boolean,
+     *                Double, Integer, JSONArray, JSONObject, Long, String)
+     * @param method  the requested method
+     * @param payload the request payload (supports Boolean, Double, Integer,
+     *                JSONArray, JSONObject, Long, String)
+     * @return a future completing with the response payload
+     */
+    public <T> CompletableFuture<T> requestAsync(String method, Object payload) {
+        if (!process.isAlive()) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Process is not alive"));
+        }
+        return client.requestAsync(method, payload);
+    }
+
+    /**
+     * Sends a request to the target Server answered with a stream of items
+     *
+     * @param <T>    the expected item type for comfort (supports Boolean, Double,
+     *               Integer, JSONArray, JSONObject, Long, String)
+     * @param method the requested method
+     * @return the items, lazily received
+     */
+    public <T> Stream<T> requestStream(String method) {
+        return requestStream(method, null);
+    }
+
+    /**
+     * Sends a request to the target Server answered with a stream of items
+     * <p>
+     * Items are requested as the Stream is consumed, closing it early cancels the
+     * request.
+     *
+     * @param <T>     the expected item type for comfort (supports Boolean,
+     *                Double, Integer, JSONArray, JSONObject, Long, String)
+     * @param method  the requested method
+     * @param payload the request payload (supports Boolean, Double, Integer,
+     *                JSONArray, JSONObject, Long, String)
+     * @return the items, lazily received
+     */
+    public <T> Stream<T> requestStream(String method, Object payload) {
+        if (!process.isAlive()) {
+            throw new IllegalStateException("Process is not alive");
+        }
+        return client.requestStream(method, payload);
+    }
+
+    /**
+     * Sends a request to the target Server with a body read from an InputStream
+     *
+     * @param <T>    the expected return type for comfort (supports Boolean,
+     *               Double, Integer, JSONArray, JSONObject, Long, String)
+     * @param method the requested method
+     * @param data   the body of the request, read until its end but not closed
+     * @return the response payload
+     */
+    public <T> T upload(String method, InputStream data) {
+        return upload(method, null, data);
+    }
+
+    /**
+     * Sends a request to the target Server with a body read from an InputStream
+     * <p>
+     * The data is sent in chunks as the Server consumes it, blocking while the
+     * Server falls behind.
+     *
+     * @param <T>     the expected return type for comfort (supports Boolean,
+     *                Double, Integer, JSONArray, JSONObject, Long, String)
+     * @param method  the requested method
+     * @param payload the request payload (supports Boolean, Double, Integer,
+     *                JSONArray, JSONObject, Long, String)
+     * @param data    the body of the request, read until its end but not closed
+     * @return the response payload
+     */
+    public <T> T upload(String method, Object payload, InputStream data) {
+        if (!process.isAlive()) {
+            throw new IllegalStateException("Process is not alive");
+        }
+        return client.upload(method, payload, data);
+    }
+
+    /**
+     * Creates a new empty Batch to send multiple requests to the target Server in
+     * one frame
+     *
+     * @return the Batch
+     */
+    public Batch batch() {
+        if (!process.isAlive()) {
+            throw new IllegalStateException("Process is not alive");
+        }
+        return client.batch();
+    }
+
+    /**
+     * Creates a proxy of a service interface whose calls are sent as requests to
+     * the target Server, which exported the interface
+     *
+     * @param <T>     the service type
+     * @param service the service interface
+     * @return the proxy bound to the current connection
+     * @see Client#proxy(Class)
+     */
+    public <T> T proxy(Class<T> service) {
+        if (!process.isAlive()) {
+            throw new IllegalStateException("Process is not alive");
+        }
+        return client.proxy(service);
+    }
+
+    /**
+     * Sends a request to the target Server passing the payload through as raw
+     * bytes without encoding
+     *
+     * @param method  the requested method
+     * @param payload the request payload from its position to its limit
+     * @return the response payload flipped for reading
+     */
+    public ByteBuffer requestBytes(String method, ByteBuffer payload) {
+        if (!process.isAlive()) {
+            throw new IllegalStateException("Process is not alive");
+        }
+        return client.requestBytes(method, payload);
+    }
+
+    /**
+     * Sends a request to the target Server passing the payload through as raw
+     * bytes without encoding and reads the response into the given buffer
+     *
+     * @param method  the requested method
+     * @param payload the request payload from its position to its limit
+     * @param into    the buffer to read the response into, cleared before
+     *                reading
+     * @return into flipped for reading, a new buffer if the response does not
+     *         fit or a mapped buffer if it was passed through shared memory
+     */
+    public ByteBuffer requestBytes(String method, ByteBuffer payload, ByteBuffer into) {
+        if (!process.isAlive()) {
+            throw new IllegalStateException("Process is not alive");
+        }
+        return client.requestBytes(method, payload, into);
+    }
+
+    /**
+     * Sends a request to the target Server passing the payload through as raw
+     * bytes without encoding and without blocking
+     *
+     * @param method  the requested method
+     * @param payload the request payload from its position to its limit
+     * @return a future completing with the response payload flipped for reading
+     */
+    public CompletableFuture<ByteBuffer> requestBytesAsync(String method, ByteBuffer payload) {
+        if (!process.isAlive()) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Process is not alive"));
+        }
+        return client.requestBytesAsync(method, payload);
+    }
+
+    /**
+     * Sends a raw request of a single double to the target Server without boxing
+     *
+     * @param method the requested method
+     * @param value  the request value
+     * @return the response value
+     * @see Client#requestDouble(String, double)
+     */
+    public double requestDouble(String method, double value) {
+        if (!process.isAlive()) {
+            throw new IllegalStateException("Process is not alive");
+        }
+        return client.requestDouble(method, value);
+    }
+
+    /**
+     * Sends a raw request of a single long to the target Server without boxing
+     *
+     * @param method the requested method
+     * @param value  the request value
+     * @return the response value
+     * @see Client#requestLong(String, long)
+     */
+    public long requestLong(String method, long value) {
+        if (!process.isAlive()) {
+            throw new IllegalStateException("Process is not alive");
+        }
+        return client.requestLong(method, value);
+    }
+
+    /**
+     * Sends a raw request of a single int to the target Server without boxing
+     *
+     * @param method the requested method
+     * @param value  the request value
+     * @return the response value
+     * @see Client#requestInt(String, int)
+     */
+    public int requestInt(String method, int value) {
+        if (!process.isAlive()) {
+            throw new IllegalStateException("Process is not alive");
+        }
+        return client.requestInt(method, value);
+    }
+
+    /**
+     * Sends a raw request of a double array to the target Server without boxing
+     *
+     * @param method the requested method
+     * @param values the request values
+     * @return the response values
+     * @see Client#requestDoubles(String, double[])
+     */
+    public double[] requestDoubles(String method, double[] values) {
+        if (!process.isAlive()) {
+            throw new IllegalStateException("Process is not alive");
+        }
+        return client.requestDoubles(method, values);
+    }
+
+    /**
+     * Sends a raw request of a long array to the target Server without boxing
+     *
+     * @param method the requested method
+     * @param values the request values
+     * @return the response values
+     * @see Client#requestLongs(String, long[])
+     */
+    public long[] requestLongs(String method, long[] values) {
+        if (!process.isAlive()) {
+            throw new IllegalStateException("Process is not alive");
+        }
+        return client.requestLongs(method, values);
+    }
 }
@@ -2,18 +2,34 @@ package dev.bodewig.jcoprocessor;
 
 import dev.bodewig.jcoprocessor.procbridge.Client;
 import dev.bodewig.jcoprocessor.procbridge.Server;
+import dev.bodewig.jcoprocessor.procbridge.Transport;
 import org.json.JSONArray;
 import org.json.JSONObject;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 /**
  * Static utility class to manage JCoprocesses
+ * <p>
+ * Spawning a JCoprocess takes a warm one if a JCoprocessWarmPool was registered
+ * for the Server class, Transport and timeout with
+ * {@link #prewarm(Class, Transport, int, long, Consumer)}.
+ * <p>
+ * The registry is a concurrent set, so spawning, broadcasting and killing do
+ * not block each other and JCoprocesses can be spawned in parallel, e.g. with
+ * {@link #spawnAll(Class, int)}. Spawns wait while {@link #terminate()} runs,
+ * and a JCoprocess whose spawn started before it is stopped instead of
+ * registered, so none outlives it.
  *
  * @author Lars Bodewig
  */
@@ -22,7 +38,22 @@ public class JCoprocessManager {
     private JCoprocessManager() {
     }
 
-    private static final Set<JCoprocess> processes = new HashSet<>();
+    private static final Set<JCoprocess> processes = ConcurrentHashMap.newKeySet();
+
+    private static final Map<Class<? extends Server>, JCoprocessWarmPool> warmPools = new ConcurrentHashMap<>();
+
+    private static final Object registration = new Object();
+
+    /**
+     * The number of terminate calls in progress
+     */
+    private static int terminating;
+
+    /**
+     * The number of terminate calls started, spawns started before the last
+     * one are not registered
+     */
+    private static long terminations;
 
     /**
      * Creates a new JCoprocess
@@ -32,13 +63,125 @@ public class JCoprocessManager {
      * @return the JCoprocess instance
      * @throws IOException if starting the JCoprocess fails
      */
-    public static synchronized JCoprocess spawn(Class<? extends Server> klass, long timeoutMillis) throws IOException {
-        JCoprocess process = new JCoprocess(klass);
+    public static JCoprocess spawn(Class<? extends Server> klass, long timeoutMillis) throws IOException {
+        return spawn(klass, Transport.TCP, timeoutMillis);
+    }
+
+    /**
+     * Creates a new JCoprocess
+     *
+     * @param klass         the Server class
+     * @param transport     the Transport used to connect to the Server
+     * @param timeoutMillis the connection timeout, 0 for forever
+     * @return the JCoprocess instance
+     * @throws IOException if starting the JCoprocess fails
+     */
+    public static JCoprocess spawn(Class<? extends Server> klass, Transport transport,
+            long timeoutMillis) throws IOException {
+        long generation = generation();
+        JCoprocessWarmPool warmPool = warmPools.get(klass);
+        if (warmPool != null && warmPool.getTransport() == transport && warmPool.getTimeoutMillis() == timeoutMillis) {
+            return warmPool.take(generation);
+        }
+        JCoprocess process = new JCoprocess(klass, transport);
         process.start(timeoutMillis);
-        processes.add(process);
+        register(process, generation);
         return process;
     }
 
+    /**
+     * Get the generation a spawn starts in, to be passed to
+     * {@link #register(JCoprocess, long)}, after waiting for a running
+     * terminate to finish
+     *
+     * @return the generation
+     * @throws InterruptedIOException if interrupted while waiting
+     */
+    static long generation() throws InterruptedIOException {
+        synchronized (registration) {
+            while (terminating > 0) {
+                try {
+                    registration.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for terminate");
+                }
+            }
+            return terminations;
+        }
+    }
+
+    /**
+     * Registers a JCoprocess started elsewhere, e.g. taken from a
+     * JCoprocessWarmPool, or stops it like the registered ones if terminate
+     * was called since its spawn started
+     *
+     * @param process    the running JCoprocess
+     * @param generation the generation the spawn started in
+     */
+    static void register(JCoprocess process, long generation) {
+        synchronized (registration) {
+            // a terminate since the spawn started has bumped the generation
+            if (terminations == generation) {
+                processes.add(process);
+                return;
+            }
+        }
+        process.stop();
+    }
+
+    /**
+     * Keeps JCoprocesses of the Server class started and connected to serve
+     * spawns over TCP without a connection timeout
+     *
+     * @param klass the Server class
+     * @param size  the number of idle JCoprocesses to keep, at least 1
+     * @return the running JCoprocessWarmPool
+     * @see #prewarm(Class, Transport, int, long, Consumer)
+     */
+    public static JCoprocessWarmPool prewarm(Class<? extends Server> klass, int size) {
+        return prewarm(klass, Transport.TCP, size, Client.FOREVER, null);
+    }
+
+    /**
+     * Keeps JCoprocesses of the Server class started and connected to serve
+     * spawns with the same Transport and timeout
+     * <p>
+     * A JCoprocessWarmPool previously registered for the Server class is
+     * stopped.
+     *
+     * @param klass         the Server class
+     * @param transport     the Transport used to connect to the Servers
+     * @param size          the number of idle JCoprocesses to keep, at least 1
+     * @param timeoutMillis the connection timeout, 0 for forever
+     * @param warmUp        the hook run on each JCoprocess before it is idle,
+     *                      e.g. to get its handlers JIT-compiled, null for none
+     * @return the running JCoprocessWarmPool
+     */
+    public static JCoprocessWarmPool prewarm(Class<? extends Server> klass, Transport transport,
+            int size, long timeoutMillis, Consumer<? super JCoprocess> warmUp) {
+        JCoprocessWarmPool warmPool = new JCoprocessWarmPool(klass, transport, size, timeoutMillis, warmUp);
+        JCoprocessWarmPool previous = warmPools.put(klass, warmPool);
+        if (previous != null) {
+            previous.stop();
+        }
+        warmPool.start();
+        return warmPool;
+    }
+
+    /**
+     * Stops the JCoprocessWarmPool registered for the Server class, spawned
+     * JCoprocesses keep running
+     *
+     * @param klass the Server class
+     */
+    public static void cool(Class<? extends Server> klass) {
+        JCoprocessWarmPool warmPool = warmPools.remove(klass);
+        if (warmPool != null) {
+            warmPool.stop();
+        }
+    }
+
     /**
      * Creates a new JCoprocess
      *
@@ -50,6 +193,122 @@ public class JCoprocessManager {
         return spawn(klass, Client.FOREVER);
     }
 
+    /**
+     * Creates JCoprocesses concurrently
+     *
+     * @param klass the Server class
+     * @param n     the number of JCoprocesses
+     * @return the JCoprocess instances
+     * @throws IOException if starting a JCoprocess fails
+     * @see #spawnAll(Class, Transport, int, long)
+     */
+    public static List<JCoprocess> spawnAll(Class<? extends Server> klass, int n) throws IOException {
+        return spawnAll(klass, Transport.TCP, n, Client.FOREVER);
+    }
+
+    /**
+     * Creates JCoprocesses concurrently, each started on its own thread, so
+     * spawning n takes about as long as spawning one on a machine with enough
+     * cores
+     * <p>
+     * If starting any JCoprocess fails, the others are killed.
+     *
+     * @param klass         the Server class
+     * @param transport     the Transport used to connect to the Servers
+     * @param n             the number of JCoprocesses
+     * @param timeoutMillis the connection timeout, 0 for forever
+     * @return the JCoprocess instances
+     * @throws IOException if starting a JCoprocess fails
+     */
+    public static List<JCoprocess> spawnAll(Class<? extends Server> klass, Transport transport, int n,
+            long timeoutMillis) throws IOException {
+        if (n < 0) {
+            throw new IllegalArgumentException("Invalid number of processes: " + n);
+        }
+        AtomicInteger threads = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(n, 1), runnable -> {
+            Thread thread = new Thread(runnable,
+                    "jcoprocess-spawn-" + klass.getSimpleName() + "-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        List<CompletableFuture<JCoprocess>> spawns = new ArrayList<>(n);
+        try {
+            for (int i = 0; i < n; i++) {
+                spawns.add(CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return spawn(klass, transport, timeoutMillis);
+                    } catch (IOException e) {
+                        throw new CompletionException(e);
+                    }
+                }, executor));
+            }
+        } finally {
+            executor.shutdown();
+        }
+        List<JCoprocess> spawned = new ArrayList<>(n);
+        List<Throwable> failures = new ArrayList<>();
+        for (CompletableFuture<JCoprocess> spawn : spawns) {
+            try {
+                spawned.add(spawn.join());
+            } catch (CompletionException e) {
+                failures.add(e.getCause());
+            }
+        }
+        if (failures.isEmpty()) {
+            return spawned;
+        }
+        Throwable first = failures.get(0);
+        failures.subList(1, failures.size()).forEach(first::addSuppressed);
+        for (JCoprocess process : spawned) {
+            try {
+                kill(process);
+            } catch (RuntimeException e) {
+                first.addSuppressed(e); // e.g. killed concurrently
+            }
+        }
+        if (first instanceof IOException e) {
+            throw e;
+        } else if (first instanceof RuntimeException e) {
+            throw e;
+        }
+        throw new IOException(first);
+    }
+
+    /**
+     * Creates a new JCoprocessPool balancing requests between min and max
+     * JCoprocesses
+     * <p>
+     * The JCoprocesses of the pool are registered with the JCoprocessManager.
+     *
+     * @param klass         the Server class
+     * @param min           the minimum number of JCoprocesses, at least 1
+     * @param max           the maximum number of JCoprocesses
+     * @param timeoutMillis the connection timeout, 0 for forever
+     * @return the running JCoprocessPool
+     * @throws IOException if starting a JCoprocess fails
+     */
+    public static JCoprocessPool spawnPool(Class<? extends Server> klass, int min, int max, long timeoutMillis)
+            throws IOException {
+        JCoprocessPool pool = new JCoprocessPool(klass, min, max, JCoprocessPool.Balancing.POWER_OF_TWO_CHOICES);
+        pool.start(timeoutMillis);
+        return pool;
+    }
+
+    /**
+     * Creates a new JCoprocessPool balancing requests between min and max
+     * JCoprocesses
+     *
+     * @param klass the Server class
+     * @param min   the minimum number of JCoprocesses, at least 1
+     * @param max   the maximum number of JCoprocesses
+     * @return the running JCoprocessPool
+     * @throws IOException if starting a JCoprocess fails
+     */
+    public static JCoprocessPool spawnPool(Class<? extends Server> klass, int min, int max) throws IOException {
+        return spawnPool(klass, min, max, Client.FOREVER);
+    }
+
     /**
      * Sends a request over all registered processes
      *
@@ -144,15 +403,10 @@ public class JCoprocessManager {
      *                JSONArray, JSONObject, Long, String)
      * @return Future completing when all requests were answered
      */
-    public static synchronized Future<Void> broadcast(String method, Object payload) {
-        ExecutorService executor = Executors.newCachedThreadPool();
-        try {
-            return CompletableFuture.allOf(processes.parallelStream()
-                    .map(p -> CompletableFuture.supplyAsync(() -> p.request(method, payload), executor))
-                    .toArray(CompletableFuture[]::new));
-        } finally {
-            executor.shutdown();
-        }
+    public static Future<Void> broadcast(String method, Object payload) {
+        return CompletableFuture.allOf(processes.stream()
+                .map(p -> p.requestAsync(method, payload))
+                .toArray(CompletableFuture[]::new));
     }
 
     /**
@@ -160,7 +414,7 @@ public class JCoprocessManager {
      *
      * @param p the process
      */
-    public static synchronized void kill(JCoprocess p) {
+    public static void kill(JCoprocess p) {
         if (!processes.remove(p)) {
             throw new IllegalArgumentException("Unknown Process");
         }
@@ -168,16 +422,55 @@ public class JCoprocessManager {
     }
 
     /**
-     * Stops all JCoprocesses created by the JCoprocessManager
+     * Stops a JCoprocess and removes it from the registry if it is still
+     * registered, so stopping one already stopped by {@link #terminate()} does
+     * not fail
+     *
+     * @param p the process
+     */
+    static void release(JCoprocess p) {
+        processes.remove(p);
+        p.stop();
+    }
+
+    /**
+     * Stops all JCoprocesses created by the JCoprocessManager and all
+     * JCoprocessWarmPools
+     * <p>
+     * Spawns starting concurrently wait until it has finished. Spawns already
+     * running stop their JCoprocess once started, as if it had been registered
+     * before.
      */
-    public static synchronized void terminate() {
+    public static void terminate() {
+        synchronized (registration) {
+            terminating++;
+            terminations++;
+        }
+        try {
+            stopAll();
+        } finally {
+            synchronized (registration) {
+                if (--terminating == 0) {
+                    registration.notifyAll();
+                }
+            }
+        }
+    }
+
+    private static void stopAll() {
         List<Exception> suppressed = new ArrayList<>();
-        Iterator<JCoprocess> i = processes.iterator();
-        while (i.hasNext()) {
+        for (Class<? extends Server> klass : List.copyOf(warmPools.keySet())) {
+            try {
+                cool(klass);
+            } catch (Exception e) {
+                suppressed.add(e);
+            }
+        }
+        for (JCoprocess p : processes) {
             try {
-                JCoprocess p = i.next();
-                i.remove();
-                p.stop();
+                if (processes.remove(p)) { // not killed concurrently
+                    p.stop();
+                }
             } catch (Exception e) {
                 suppressed.add(e);
             }
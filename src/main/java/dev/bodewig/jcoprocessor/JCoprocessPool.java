@@ -0,0 +1,498 @@
+package dev.bodewig.jcoprocessor;
+
+import dev.bodewig.jcoprocessor.procbridge.Server;
+import dev.bodewig.jcoprocessor.procbridge.Transport;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A pool of JCoprocesses running the same Server class
+ * <p>
+ * Requests are dispatched to the least busy JCoprocess. The pool grows up to
+ * its maximum size while all JCoprocesses have at least the grow threshold of
+ * outstanding requests and shrinks down to its minimum size by stopping
+ * JCoprocesses that stayed idle for the keep-alive time. A JCoprocess whose
+ * Server process died is removed when it would be selected and replaced if the
+ * pool falls below its minimum size.
+ *
+ * @author Lars Bodewig
+ */
+public class JCoprocessPool {
+
+    private static final Logger logger = Logger.getLogger(JCoprocessPool.class.getName());
+
+    /**
+     * Strategies to select the JCoprocess handling a request
+     */
+    public enum Balancing {
+        /**
+         * Selects the JCoprocess with the fewest outstanding requests
+         */
+        LEAST_OUTSTANDING,
+        /**
+         * Selects the less busy of two random JCoprocesses
+         */
+        POWER_OF_TWO_CHOICES
+    }
+
+    /**
+     * The default number of outstanding requests per JCoprocess before the pool
+     * grows
+     */
+    public static final int DEFAULT_GROW_THRESHOLD = 2;
+
+    /**
+     * The default time a JCoprocess may stay idle before the pool shrinks
+     */
+    public static final long DEFAULT_KEEP_ALIVE_MILLIS = 60_000;
+
+    private final Class<? extends Server> server;
+    private final int min;
+    private final int max;
+    private final Balancing balancing;
+    private final List<Worker> workers = new CopyOnWriteArrayList<>();
+    private final AtomicBoolean growing = new AtomicBoolean();
+
+    private volatile int growThreshold = DEFAULT_GROW_THRESHOLD;
+    private long keepAliveMillis = DEFAULT_KEEP_ALIVE_MILLIS;
+    private long timeoutMillis;
+    private volatile ScheduledExecutorService maintenance;
+
+    /**
+     * Creates a new JCoprocessPool that is not yet running
+     *
+     * @param server    the Server class
+     * @param min       the minimum number of JCoprocesses, at least 1
+     * @param max       the maximum number of JCoprocesses
+     * @param balancing the strategy to select a JCoprocess
+     * @throws IllegalArgumentException if the sizes are invalid
+     */
+    public JCoprocessPool(Class<? extends Server> server, int min, int max, Balancing balancing) {
+        if (min < 1 || max < min) {
+            throw new IllegalArgumentException("Invalid pool size: min " + min + ", max " + max);
+        }
+        this.server = server;
+        this.min = min;
+        this.max = max;
+        this.balancing = balancing;
+    }
+
+    /**
+     * Get the minimum number of JCoprocesses
+     *
+     * @return the minimum size
+     */
+    public int getMin() {
+        return min;
+    }
+
+    /**
+     * Get the maximum number of JCoprocesses
+     *
+     * @return the maximum size
+     */
+    public int getMax() {
+        return max;
+    }
+
+    /**
+     * Get the balancing strategy
+     *
+     * @return the balancing strategy
+     */
+    public Balancing getBalancing() {
+        return balancing;
+    }
+
+    /**
+     * Get the current number of JCoprocesses
+     *
+     * @return the current size
+     */
+    public int size() {
+        return workers.size();
+    }
+
+    /**
+     * Get the number of requests that have not been answered yet
+     *
+     * @return the outstanding requests over all JCoprocesses
+     */
+    public int getOutstandingRequests() {
+        return workers.stream().mapToInt(w -> Math.max(w.outstanding.get(), 0)).sum();
+    }
+
+    /**
+     * Set the number of outstanding requests every JCoprocess needs to have before
+     * the pool grows
+     *
+     * @param growThreshold the grow threshold, at least 1
+     */
+    public void setGrowThreshold(int growThreshold) {
+        if (growThreshold < 1) {
+            throw new IllegalArgumentException("Invalid grow threshold: " + growThreshold);
+        }
+        this.growThreshold = growThreshold;
+    }
+
+    /**
+     * Set the time a JCoprocess may stay idle before it is stopped if the pool is
+     * larger than its minimum size
+     * <p>
+     * Takes effect when the pool is started.
+     *
+     * @param keepAliveMillis the keep-alive time
+     */
+    public void setKeepAliveMillis(long keepAliveMillis) {
+        if (keepAliveMillis <= 0) {
+            throw new IllegalArgumentException("Invalid keep-alive time: " + keepAliveMillis);
+        }
+        this.keepAliveMillis = keepAliveMillis;
+    }
+
+    /**
+     * Spawns the minimum number of JCoprocesses
+     *
+     * @param timeoutMillis the connection timeout, 0 for forever
+     * @throws IOException           if starting a JCoprocess fails
+     * @throws IllegalStateException if the pool is already running
+     */
+    public synchronized void start(long timeoutMillis) throws IOException {
+        if (maintenance != null) {
+            throw new IllegalStateException("Pool already started");
+        }
+        this.timeoutMillis = timeoutMillis;
+        maintenance = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "jcoprocess-pool-" + server.getSimpleName());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            for (JCoprocess process : JCoprocessManager.spawnAll(server, Transport.TCP, min, timeoutMillis)) {
+                workers.add(new Worker(process));
+            }
+        } catch (IOException | RuntimeException e) {
+            stop();
+            throw e;
+        }
+        long period = Math.max(keepAliveMillis / 2, 1);
+        maintenance.scheduleWithFixedDelay(this::shrink, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops all JCoprocesses of the pool, also if they were already stopped,
+     * e.g. by {@link JCoprocessManager#terminate()}
+     */
+    public synchronized void stop() {
+        if (maintenance != null) {
+            maintenance.shutdownNow();
+            maintenance = null;
+        }
+        RuntimeException failure = null;
+        for (Worker worker : workers) {
+            workers.remove(worker);
+            try {
+                JCoprocessManager.release(worker.process);
+            } catch (RuntimeException e) {
+                if (failure == null) {
+                    failure = new RuntimeException("Could not stop all processes");
+                }
+                failure.addSuppressed(e);
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Sends a request to a JCoprocess of the pool and casts the result to the
+     * correct Number type
+     *
+     * @param <T>    the expected return type for comfort (Double, Integer, Long)
+     * @param method the requested method
+     * @param type   Double, Integer or Long
+     * @return the response payload
+     */
+    public <T extends Number> T request(String method, Class<T> type) {
+        return request(method, null, type);
+    }
+
+    /**
+     * Sends a request to a JCoprocess of the pool
+     *
+     * @param <T>    the expected return type for comfort (supports Boolean, Double,
+     *               Integer, JSONArray, JSONObject, Long, String)
+     * @param method the requested method
+     * @return the response payload
+     */
+    public <T> T request(String method) {
+        return request(method, (Object) null);
+    }
+
+    /**
+     * Sends a request to a JCoprocess of the pool and casts the result to the
+     * correct Number type
+     *
+     * @param <T>     the expected return type for comfort (Double, Integer, Long)
+     * @param method  the requested method
+     * @param payload the request payload (supports Boolean, Double, Integer,
+     *                JSONArray, JSONObject, Long, String)
+     * @param type    Double, Integer or Long
+     * @return the response payload
+     */
+    public <T extends Number> T request(String method, Object payload, Class<T> type) {
+        Worker worker = acquire();
+        try {
+            return worker.process.request(method, payload, type);
+        } finally {
+            worker.outstanding.decrementAndGet();
+        }
+    }
+
+    /**
+     * Sends a request to a JCoprocess of the pool
+     *
+     * @param <T>     the expected return type for comfort (supports Boolean,
+     *                Double, Integer, JSONArray, JSONObject, Long, String)
+     * @param method  the requested method
+     * @param payload the request payload (supports Boolean, Double, Integer,
+     *                JSONArray, JSONObject, Long, String)
+     * @return the response payload
+     */
+    public <T> T request(String method, Object payload) {
+        Worker worker = acquire();
+        try {
+            return worker.process.request(method, payload);
+        } finally {
+            worker.outstanding.decrementAndGet();
+        }
+    }
+
+    /**
+     * Sends a request to a JCoprocess of the pool without blocking and casts the
+     * result to the correct Number type
+     *
+     * @param <T>    the expected return type for comfort (Double, Integer, Long)
+     * @param method the requested method
+     * @param type   Double, Integer or Long
+     * @return a future completing with the response payload
+     */
+    public <T extends Number> CompletableFuture<T> requestAsync(String method, Class<T> type) {
+        return requestAsync(method, null, type);
+    }
+
+    /**
+     * Sends a request to a JCoprocess of the pool without blocking
+     *
+     * @param <T>    the expected return type for comfort (supports Boolean, Double,
+     *               Integer, JSONArray, JSONObject, Long, String)
+     * @param method the requested method
+     * @return a future completing with the response payload
+     */
+    public <T> CompletableFuture<T> requestAsync(String method) {
+        return requestAsync(method, (Object) null);
+    }
+
+    /**
+     * Sends a request to a JCoprocess of the pool without blocking and casts the
+     * result to the correct Number type
+     *
+     * @param <T>     the expected return type for comfort (Double, Integer, Long)
+     * @param method  the requested method
+     * @param payload the request payload (supports Boolean, Double, Integer,
+     *                JSONArray, JSONObject, Long, String)
+     * @param type    Double, Integer or Long
+     * @return a future completing with the response payload
+     */
+    public <T extends Number> CompletableFuture<T> requestAsync(String method, Object payload, Class<T> type) {
+        return dispatch(p -> p.requestAsync(method, payload, type));
+    }
+
+    /**
+     * Sends a request to a JCoprocess of the pool without blocking
+     *
+     * @param <T>     the expected return type for comfort (supports Boolean,
+     *                Double, Integer, JSONArray, JSONObject, Long, String)
+     * @param method  the requested method
+     * @param payload the request payload (supports Boolean, Double, Integer,
+     *                JSONArray, JSONObject, Long, String)
+     * @return a future completing with the response payload
+     */
+    public <T> CompletableFuture<T> requestAsync(String method, Object payload) {
+        return dispatch(p -> p.requestAsync(method, payload));
+    }
+
+    private <T> CompletableFuture<T> dispatch(Function<JCoprocess, CompletableFuture<T>> request) {
+        Worker worker;
+        try {
+            worker = acquire();
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        CompletableFuture<T> future = request.apply(worker.process);
+        future.whenComplete((result, ex) -> worker.outstanding.decrementAndGet());
+        return future;
+    }
+
+    private Worker acquire() {
+        while (true) {
+            Worker worker = select();
+            if (worker.acquire()) {
+                worker.lastUsed = System.nanoTime();
+                grow();
+                return worker;
+            }
+        }
+    }
+
+    private Worker select() {
+        List<Worker> snapshot = List.copyOf(workers);
+        if (snapshot.isEmpty()) {
+            throw new IllegalStateException("Pool is not running");
+        }
+        if (!snapshot.stream().allMatch(w -> w.process.isAlive())) {
+            snapshot.stream().filter(w -> !w.process.isAlive()).forEach(this::evict);
+            snapshot = snapshot.stream().filter(w -> w.process.isAlive()).toList();
+            if (snapshot.isEmpty()) {
+                throw new IllegalStateException("No JCoprocess of the pool is alive");
+            }
+        }
+        if (snapshot.size() == 1) {
+            return snapshot.get(0);
+        }
+        if (balancing == Balancing.POWER_OF_TWO_CHOICES) {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            int first = random.nextInt(snapshot.size());
+            int second = random.nextInt(snapshot.size() - 1);
+            if (second >= first) {
+                second++;
+            }
+            Worker a = snapshot.get(first);
+            Worker b = snapshot.get(second);
+            return b.outstanding.get() < a.outstanding.get() ? b : a;
+        }
+        Worker least = snapshot.get(0);
+        for (Worker worker : snapshot) {
+            if (worker.outstanding.get() < least.outstanding.get()) {
+                least = worker;
+            }
+        }
+        return least;
+    }
+
+    /**
+     * Removes a worker whose Server process died and replaces it if the pool
+     * falls below its minimum size
+     */
+    private void evict(Worker worker) {
+        if (!workers.remove(worker)) {
+            return; // evicted concurrently
+        }
+        logger.warning("Removed dead JCoprocess from pool of " + server.getName());
+        try {
+            JCoprocessManager.release(worker.process);
+        } catch (RuntimeException e) {
+            logger.log(Level.FINE, "Could not stop dead JCoprocess of " + server.getName(), e);
+        }
+        if (workers.size() < min) {
+            spawnWorker();
+        }
+    }
+
+    private void grow() {
+        if (workers.size() >= max || workers.stream().anyMatch(w -> w.outstanding.get() < growThreshold)) {
+            return;
+        }
+        spawnWorker();
+    }
+
+    private void spawnWorker() {
+        if (!growing.compareAndSet(false, true)) {
+            return; // already growing
+        }
+        ScheduledExecutorService maintenance = this.maintenance;
+        if (maintenance == null) {
+            growing.set(false);
+            return;
+        }
+        try {
+            maintenance.execute(() -> {
+                boolean spawned = false;
+                try {
+                    if (workers.size() < max) {
+                        workers.add(new Worker(JCoprocessManager.spawn(server, timeoutMillis)));
+                        spawned = true;
+                    }
+                } catch (IOException | RuntimeException e) {
+                    logger.log(Level.WARNING, "Could not grow pool of " + server.getName(), e);
+                } finally {
+                    growing.set(false);
+                }
+                if (spawned && workers.size() < min) {
+                    spawnWorker(); // more workers died meanwhile
+                }
+            });
+        } catch (RuntimeException e) {
+            growing.set(false); // pool stopped concurrently
+        }
+    }
+
+    private void shrink() {
+        long idleSince = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(keepAliveMillis);
+        for (Worker worker : workers) {
+            if (workers.size() <= min) {
+                return;
+            }
+            if (worker.lastUsed - idleSince < 0 && worker.retire()) {
+                workers.remove(worker);
+                try {
+                    JCoprocessManager.release(worker.process);
+                } catch (RuntimeException e) {
+                    logger.log(Level.WARNING, "Could not shrink pool of " + server.getName(), e);
+                }
+            }
+        }
+    }
+
+    private static final class Worker {
+
+        final JCoprocess process;
+        /**
+         * The outstanding requests, -1 once the worker is retired
+         */
+        final AtomicInteger outstanding = new AtomicInteger();
+        volatile long lastUsed = System.nanoTime();
+
+        Worker(JCoprocess process) {
+            this.process = process;
+        }
+
+        boolean acquire() {
+            int n;
+            do {
+                n = outstanding.get();
+                if (n < 0) {
+                    return false;
+                }
+            } while (!outstanding.compareAndSet(n, n + 1));
+            return true;
+        }
+
+        boolean retire() {
+            return outstanding.compareAndSet(0, -1);
+        }
+    }
+}
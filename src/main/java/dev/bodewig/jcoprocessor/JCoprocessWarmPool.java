@@ -0,0 +1,235 @@
+package dev.bodewig.jcoprocessor;
+
+import dev.bodewig.jcoprocessor.procbridge.Server;
+import dev.bodewig.jcoprocessor.procbridge.Transport;
+
+import java.io.IOException;
+import java.util.Objects;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps a number of idle JCoprocesses of the same Server class started and
+ * connected, so taking one does not wait for a JVM to start
+ * <p>
+ * Every JCoprocess taken from the pool is replaced in the background. An
+ * optional warm-up hook is run on each new JCoprocess before it joins the pool,
+ * e.g. to send representative requests until the handlers are JIT-compiled.
+ * If no warm JCoprocess is idle, one is started on the calling thread instead.
+ *
+ * @author Lars Bodewig
+ */
+public class JCoprocessWarmPool {
+
+    private static final Logger logger = Logger.getLogger(JCoprocessWarmPool.class.getName());
+
+    private final Class<? extends Server> server;
+    private final Transport transport;
+    private final int size;
+    private final long timeoutMillis;
+    private final Consumer<? super JCoprocess> warmUp;
+    private final BlockingQueue<JCoprocess> idle = new LinkedBlockingQueue<>();
+
+    private int starting;
+    private ExecutorService spawner;
+
+    /**
+     * Creates a new JCoprocessWarmPool that is not yet running
+     *
+     * @param server        the Server class
+     * @param transport     the Transport used to connect to the Servers
+     * @param size          the number of idle JCoprocesses to keep, at least 1
+     * @param timeoutMillis the connection timeout of the JCoprocesses, 0 for
+     *                      forever
+     * @param warmUp        the hook run on each JCoprocess before it joins the
+     *                      pool, null for none
+     * @throws IllegalArgumentException if the size is invalid
+     */
+    public JCoprocessWarmPool(Class<? extends Server> server, Transport transport, int size, long timeoutMillis,
+            Consumer<? super JCoprocess> warmUp) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Invalid pool size: " + size);
+        }
+        this.server = Objects.requireNonNull(server);
+        this.transport = Objects.requireNonNull(transport);
+        this.size = size;
+        this.timeoutMillis = timeoutMillis;
+        this.warmUp = warmUp;
+    }
+
+    /**
+     * Get the Server class
+     *
+     * @return the Server class
+     */
+    public Class<? extends Server> getServer() {
+        return server;
+    }
+
+    /**
+     * Get the Transport used to connect to the Servers
+     *
+     * @return the Transport
+     */
+    public Transport getTransport() {
+        return transport;
+    }
+
+    /**
+     * Get the number of idle JCoprocesses to keep
+     *
+     * @return the size
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Get the connection timeout of the JCoprocesses
+     *
+     * @return the timeout, 0 for forever
+     */
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    /**
+     * Get the number of JCoprocesses ready to be taken
+     *
+     * @return the idle JCoprocesses
+     */
+    public int idle() {
+        return idle.size();
+    }
+
+    /**
+     * Starts filling the pool in the background
+     *
+     * @throws IllegalStateException if the pool is already running
+     */
+    public synchronized void start() {
+        if (spawner != null) {
+            throw new IllegalStateException("Pool already started");
+        }
+        spawner = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "jcoprocess-warm-pool-" + server.getSimpleName());
+            thread.setDaemon(true);
+            return thread;
+        });
+        replenish();
+    }
+
+    /**
+     * Stops the idle JCoprocesses and the ones still starting, JCoprocesses
+     * already taken keep running
+     */
+    public synchronized void stop() {
+        if (spawner != null) {
+            spawner.shutdownNow();
+            spawner = null;
+        }
+        JCoprocess process;
+        while ((process = idle.poll()) != null) {
+            process.stop();
+        }
+    }
+
+    /**
+     * Takes a started and connected JCoprocess from the pool and replaces it in
+     * the background
+     * <p>
+     * The JCoprocess is registered with the JCoprocessManager like a spawned one.
+     *
+     * @return the JCoprocess
+     * @throws IOException if no JCoprocess was idle and starting one fails
+     */
+    public JCoprocess take() throws IOException {
+        return take(JCoprocessManager.generation());
+    }
+
+    /**
+     * Takes a JCoprocess for a spawn started in the given generation
+     *
+     * @param generation the generation of the spawn
+     * @return the JCoprocess
+     * @throws IOException if no JCoprocess was idle and starting one fails
+     * @see JCoprocessManager#register(JCoprocess, long)
+     */
+    JCoprocess take(long generation) throws IOException {
+        JCoprocess process;
+        while ((process = idle.poll()) != null && !process.isAlive()) {
+            discard(process);
+        }
+        replenish();
+        if (process == null) {
+            process = new JCoprocess(server, transport);
+            process.start(timeoutMillis);
+        }
+        JCoprocessManager.register(process, generation);
+        return process;
+    }
+
+    /**
+     * Releases the Client, socket and files of a JCoprocess whose Server died
+     * while idle
+     */
+    private void discard(JCoprocess process) {
+        try {
+            process.stop();
+        } catch (RuntimeException e) {
+            logger.log(Level.FINE, "Could not stop dead " + server.getName(), e);
+        }
+    }
+
+    private synchronized boolean isRunning() {
+        return spawner != null;
+    }
+
+    private synchronized void replenish() {
+        if (spawner == null) {
+            return;
+        }
+        while (idle.size() + starting < size) {
+            starting++;
+            try {
+                spawner.execute(this::spawn);
+            } catch (RejectedExecutionException e) {
+                starting--;
+                return;
+            }
+        }
+    }
+
+    private void spawn() {
+        JCoprocess process = new JCoprocess(server, transport);
+        try {
+            process.start(timeoutMillis);
+            if (warmUp != null) {
+                warmUp.accept(process);
+            }
+            synchronized (this) {
+                if (spawner != null && !Thread.currentThread().isInterrupted()) {
+                    idle.add(process);
+                    process = null;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            if (isRunning()) {
+                logger.log(Level.WARNING, "Could not warm up " + server.getName(), e);
+            } // else interrupted by stop
+        } finally {
+            if (process != null) {
+                process.stop(); // failed or the pool was stopped
+            }
+            synchronized (this) {
+                starting--;
+            }
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package dev.bodewig.jcoprocessor;
+
+import dev.bodewig.jcoprocessor.procbridge.ClientException;
+import dev.bodewig.jcoprocessor.procbridge.Server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Waits for a Server process to print {@value Server#READY_MESSAGE} or to exit,
+ * whichever happens first
+ * <p>
+ * The standard output of the process is read by a daemon thread that forwards
+ * every other line to {@link System#out}, before and after the Server is ready.
+ *
+ * @author Lars Bodewig
+ */
+final class ReadySignal {
+
+    private ReadySignal() {
+    }
+
+    /**
+     * Blocks until the Server process is listening
+     *
+     * @param process       the Server process started with the system property
+     *                      {@value Server#READY_PROPERTY} and a piped standard
+     *                      output
+     * @param timeoutMillis the time to wait, 0 for forever
+     * @return the rest of the ready line, e.g. the bound port, empty if none
+     * @throws IOException     if the process exited or closed its output before it
+     *                         was ready
+     * @throws ClientException if the process was not ready in time
+     */
+    static String await(Process process, long timeoutMillis) throws IOException {
+        CompletableFuture<String> ready = new CompletableFuture<>();
+        Thread output = new Thread(() -> forward(process.getInputStream(), ready),
+                "jcoprocess-output-" + process.pid());
+        output.setDaemon(true);
+        output.start();
+        process.onExit().thenRun(() -> ready.completeExceptionally(
+                new IOException("Server process exited with code " + process.exitValue() + " before it was ready")));
+        try {
+            if (timeoutMillis > 0) {
+                return ready.get(timeoutMillis, TimeUnit.MILLISECONDS);
+            }
+            return ready.get();
+        } catch (ExecutionException e) {
+            throw (IOException) e.getCause();
+        } catch (TimeoutException e) {
+            throw new ClientException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the Server process");
+        }
+    }
+
+    private static void forward(InputStream in, CompletableFuture<String> ready) {
+        try (in) {
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            int b;
+            while (!ready.isDone() && (b = in.read()) != -1) {
+                line.write(b);
+                if (b == '\n') {
+                    String text = line.toString(StandardCharsets.UTF_8).strip();
+                    if (text.equals(Server.READY_MESSAGE)) {
+                        ready.complete("");
+                    } else if (text.startsWith(Server.READY_MESSAGE + " ")) {
+                        ready.complete(text.substring(Server.READY_MESSAGE.length() + 1));
+                    } else {
+                        line.writeTo(System.out);
+                    }
+                    line.reset();
+                }
+            }
+            line.writeTo(System.out);
+            ready.completeExceptionally(new IOException("Server process closed its output before it was ready"));
+            in.transferTo(System.out);
+        } catch (IOException ignored) {
+            // the process was destroyed
+        } finally {
+            System.out.flush();
+        }
+    }
+}
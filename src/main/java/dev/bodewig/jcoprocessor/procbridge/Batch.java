@@ -0,0 +1,159 @@
+package dev.bodewig.jcoprocessor.procbridge;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Collects requests to send them to a Server in one frame
+ * <p>
+ * A batch pays the frame write, flush and round trip once for all of its
+ * requests. The Server answers all of them in one response, each item either
+ * succeeds or fails on its own. Only encoded payloads are supported, ByteBuffers
+ * have to be sent with {@link Client#requestBytes(String, java.nio.ByteBuffer)}.
+ *
+ * @author Lars Bodewig
+ */
+public final class Batch {
+
+    private final Client client;
+    private final List<String> methods = new ArrayList<>();
+    private final List<Object> payloads = new ArrayList<>();
+
+    /**
+     * Creates a new empty Batch
+     *
+     * @param client the Client sending the Batch
+     */
+    Batch(Client client) {
+        this.client = client;
+    }
+
+    /**
+     * Adds a request without payload
+     *
+     * @param method the requested method
+     * @return this Batch
+     */
+    public Batch add(String method) {
+        return add(method, null);
+    }
+
+    /**
+     * Adds a request
+     *
+     * @param method  the requested method
+     * @param payload the request payload (supports Boolean, Double, Integer,
+     *                JSONArray, JSONObject, Long, String)
+     * @return this Batch
+     */
+    public Batch add(String method, Object payload) {
+        methods.add(method);
+        payloads.add(payload);
+        return this;
+    }
+
+    /**
+     * Get the number of requests
+     *
+     * @return the number of requests added so far
+     */
+    public int size() {
+        return methods.size();
+    }
+
+    /**
+     * Sends all requests in one frame and waits for the results
+     *
+     * @return a Result per request in the order they were added
+     * @throws ClientException  if an exception occurs in the Client
+     * @throws TimeoutException if the Batch reaches the configured timeout
+     * @throws ServerException  if the Server cannot answer the Batch as a whole
+     */
+    public List<Result> send() throws ClientException, TimeoutException, ServerException {
+        return Client.await(dispatch());
+    }
+
+    /**
+     * Sends all requests in one frame without blocking
+     * <p>
+     * The Batch can be modified and sent again once this method returns.
+     *
+     * @return a future completing with a Result per request in the order they
+     *         were added or exceptionally with a ClientException,
+     *         TimeoutException or ServerException
+     */
+    public CompletableFuture<List<Result>> sendAsync() {
+        return client.completeAsync(dispatch());
+    }
+
+    private CompletableFuture<List<Result>> dispatch() {
+        if (methods.isEmpty()) {
+            return CompletableFuture.completedFuture(List.of());
+        }
+        int size = methods.size();
+        return client.requestBatchAsync(List.copyOf(methods), new ArrayList<>(payloads))
+                .thenApply(responses -> {
+                    if (responses.size() != size) {
+                        throw new ProtocolException(ProtocolException.INVALID_BODY);
+                    }
+                    List<Result> results = new ArrayList<>(responses.size());
+                    responses.forEach(response -> results.add(new Result(response)));
+                    return Collections.unmodifiableList(results);
+                });
+    }
+
+    /**
+     * The outcome of a single request of a Batch
+     */
+    public static final class Result {
+
+        private final Object payload;
+        private final ServerException exception;
+
+        private Result(Response response) {
+            if (response.getStatusCode() == StatusCode.GOOD_RESPONSE) {
+                this.payload = response.getPayload();
+                this.exception = null;
+            } else {
+                this.payload = null;
+                this.exception = new ServerException((String) response.getPayload());
+            }
+        }
+
+        /**
+         * Return if the request was handled successfully
+         *
+         * @return if the request succeeded
+         */
+        public boolean isSuccess() {
+            return exception == null;
+        }
+
+        /**
+         * Get the response payload
+         *
+         * @param <T> the expected return type for comfort (supports Boolean,
+         *            Double, Integer, JSONArray, JSONObject, Long, String)
+         * @return the response payload
+         * @throws ServerException if the request failed in the Server
+         */
+        @SuppressWarnings("unchecked")
+        public <T> T get() throws ServerException {
+            if (exception != null) {
+                throw exception;
+            }
+            return (T) payload;
+        }
+
+        /**
+         * Get the exception if the request failed
+         *
+         * @return the exception, null if the request succeeded
+         */
+        public ServerException getException() {
+            return exception;
+        }
+    }
+}
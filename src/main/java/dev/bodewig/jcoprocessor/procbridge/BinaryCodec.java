@@ -0,0 +1,265 @@
+package dev.bodewig.jcoprocessor.procbridge;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Implementation of the BINARY Codec
+ * <p>
+ * The body starts with the number of entries, each entry is the ordinal of its
+ * Key followed by a tagged value. Multibyte values are little endian, lengths
+ * are 4 bytes.
+ *
+ * @author Lars Bodewig
+ */
+final class BinaryCodec {
+
+    private static final byte NULL = 0;
+    private static final byte TRUE = 1;
+    private static final byte FALSE = 2;
+    private static final byte INT = 3;
+    private static final byte LONG = 4;
+    private static final byte DOUBLE = 5;
+    private static final byte FLOAT = 6;
+    private static final byte STRING = 7;
+    private static final byte OBJECT = 8;
+    private static final byte ARRAY = 9;
+    private static final byte DOUBLE_ARRAY = 10;
+    private static final byte LONG_ARRAY = 11;
+    private static final byte INT_ARRAY = 12;
+    private static final byte BYTE_ARRAY = 13;
+    private static final byte BIG_INTEGER = 14;
+    private static final byte BIG_DECIMAL = 15;
+
+    private static final Key[] KEYS = Key.values();
+
+    private BinaryCodec() {
+    }
+
+    static byte[] encode(Map<Key, Object> body) {
+        Output out = new Output(64);
+        out.ensure(1).put((byte) body.size());
+        body.forEach((key, value) -> {
+            out.ensure(1).put((byte) key.ordinal());
+            writeValue(out, value);
+        });
+        byte[] result = new byte[out.buf.position()];
+        out.buf.flip().get(result);
+        return result;
+    }
+
+    static Map<Key, Object> decode(byte[] bytes) {
+        ByteBuffer buf = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        Map<Key, Object> body = new EnumMap<>(Key.class);
+        int count = buf.get();
+        for (int i = 0; i < count; i++) {
+            Key key = KEYS[buf.get()];
+            Object value = readValue(buf, false);
+            if (value != null) {
+                body.put(key, value);
+            }
+        }
+        if (buf.hasRemaining()) {
+            throw new IllegalArgumentException("Trailing bytes in body");
+        }
+        return body;
+    }
+
+    private static void writeValue(Output out, Object value) {
+        ByteBuffer buf;
+        if (value == null || JSONObject.NULL.equals(value)) {
+            out.ensure(1).put(NULL);
+        } else if (value instanceof Boolean b) {
+            out.ensure(1).put(b ? TRUE : FALSE);
+        } else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            out.ensure(5).put(INT).putInt(((Number) value).intValue());
+        } else if (value instanceof Long l) {
+            out.ensure(9).put(LONG).putLong(l);
+        } else if (value instanceof Double d) {
+            out.ensure(9).put(DOUBLE).putDouble(d);
+        } else if (value instanceof Float f) {
+            out.ensure(5).put(FLOAT).putFloat(f);
+        } else if (value instanceof BigInteger i) {
+            writeString(out, BIG_INTEGER, i.toString());
+        } else if (value instanceof BigDecimal d) {
+            writeString(out, BIG_DECIMAL, d.toString());
+        } else if (value instanceof Number n) {
+            writeString(out, BIG_DECIMAL, new BigDecimal(n.toString()).toString());
+        } else if (value instanceof CharSequence s) {
+            writeString(out, STRING, s.toString());
+        } else if (value instanceof Enum<?> e) {
+            writeString(out, STRING, e.name());
+        } else if (value instanceof double[] a) {
+            buf = out.ensure(5 + 8 * a.length).put(DOUBLE_ARRAY).putInt(a.length);
+            buf.asDoubleBuffer().put(a);
+            buf.position(buf.position() + 8 * a.length);
+        } else if (value instanceof long[] a) {
+            buf = out.ensure(5 + 8 * a.length).put(LONG_ARRAY).putInt(a.length);
+            buf.asLongBuffer().put(a);
+            buf.position(buf.position() + 8 * a.length);
+        } else if (value instanceof int[] a) {
+            buf = out.ensure(5 + 4 * a.length).put(INT_ARRAY).putInt(a.length);
+            buf.asIntBuffer().put(a);
+            buf.position(buf.position() + 4 * a.length);
+        } else if (value instanceof byte[] a) {
+            out.ensure(5 + a.length).put(BYTE_ARRAY).putInt(a.length).put(a);
+        } else if (value instanceof JSONObject o) {
+            out.ensure(5).put(OBJECT).putInt(o.length());
+            for (String key : o.keySet()) {
+                writeString(out, null, key);
+                writeValue(out, o.opt(key));
+            }
+        } else if (value instanceof Map<?, ?> m) {
+            out.ensure(5).put(OBJECT).putInt(m.size());
+            for (Map.Entry<?, ?> entry : m.entrySet()) {
+                writeString(out, null, String.valueOf(entry.getKey()));
+                writeValue(out, entry.getValue());
+            }
+        } else if (value instanceof JSONArray a) {
+            out.ensure(5).put(ARRAY).putInt(a.length());
+            for (int i = 0; i < a.length(); i++) {
+                writeValue(out, a.opt(i));
+            }
+        } else if (value instanceof Collection<?> c) {
+            out.ensure(5).put(ARRAY).putInt(c.size());
+            for (Object element : c) {
+                writeValue(out, element);
+            }
+        } else if (value instanceof Object[] a) {
+            out.ensure(5).put(ARRAY).putInt(a.length);
+            for (Object element : a) {
+                writeValue(out, element);
+            }
+        } else {
+            Object wrapped = JSONObject.wrap(value);
+            if (wrapped == null || wrapped == value) {
+                throw new IllegalArgumentException("Unsupported payload type " + value.getClass().getName());
+            }
+            writeValue(out, wrapped);
+        }
+    }
+
+    private static void writeString(Output out, Byte tag, String s) {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buf = out.ensure(5 + bytes.length);
+        if (tag != null) {
+            buf.put(tag);
+        }
+        buf.putInt(bytes.length).put(bytes);
+    }
+
+    private static Object readValue(ByteBuffer buf, boolean nested) {
+        byte tag = buf.get();
+        switch (tag) {
+            case NULL:
+                return nested ? JSONObject.NULL : null;
+            case TRUE:
+                return Boolean.TRUE;
+            case FALSE:
+                return Boolean.FALSE;
+            case INT:
+                return buf.getInt();
+            case LONG:
+                return buf.getLong();
+            case DOUBLE:
+                return buf.getDouble();
+            case FLOAT:
+                return buf.getFloat();
+            case STRING:
+                return readString(buf);
+            case BIG_INTEGER:
+                return new BigInteger(readString(buf));
+            case BIG_DECIMAL:
+                return new BigDecimal(readString(buf));
+            case DOUBLE_ARRAY: {
+                double[] a = new double[length(buf, 8)];
+                buf.asDoubleBuffer().get(a);
+                buf.position(buf.position() + 8 * a.length);
+                return a;
+            }
+            case LONG_ARRAY: {
+                long[] a = new long[length(buf, 8)];
+                buf.asLongBuffer().get(a);
+                buf.position(buf.position() + 8 * a.length);
+                return a;
+            }
+            case INT_ARRAY: {
+                int[] a = new int[length(buf, 4)];
+                buf.asIntBuffer().get(a);
+                buf.position(buf.position() + 4 * a.length);
+                return a;
+            }
+            case BYTE_ARRAY: {
+                byte[] a = new byte[length(buf, 1)];
+                buf.get(a);
+                return a;
+            }
+            case OBJECT: {
+                int size = length(buf, 6);
+                JSONObject o = new JSONObject();
+                for (int i = 0; i < size; i++) {
+                    String key = readString(buf);
+                    o.put(key, readValue(buf, true));
+                }
+                return o;
+            }
+            case ARRAY: {
+                int size = length(buf, 1);
+                JSONArray a = new JSONArray(size);
+                for (int i = 0; i < size; i++) {
+                    a.put(readValue(buf, true));
+                }
+                return a;
+            }
+            default:
+                throw new IllegalArgumentException("Unknown value tag " + tag);
+        }
+    }
+
+    private static String readString(ByteBuffer buf) {
+        int length = length(buf, 1);
+        String s = new String(buf.array(), buf.arrayOffset() + buf.position(), length, StandardCharsets.UTF_8);
+        buf.position(buf.position() + length);
+        return s;
+    }
+
+    /**
+     * Reads a length and checks it against the remaining bytes to not allocate
+     * more than the body can contain
+     */
+    private static int length(ByteBuffer buf, int minElementSize) {
+        int length = buf.getInt();
+        if (length < 0 || length > buf.remaining() / minElementSize) {
+            throw new IllegalArgumentException("Invalid length " + length);
+        }
+        return length;
+    }
+
+    private static final class Output {
+
+        ByteBuffer buf;
+
+        Output(int capacity) {
+            buf = ByteBuffer.allocate(capacity).order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        ByteBuffer ensure(int bytes) {
+            if (buf.remaining() < bytes) {
+                int capacity = Math.max(buf.capacity() * 2, buf.position() + bytes);
+                ByteBuffer grown = ByteBuffer.allocate(capacity).order(ByteOrder.LITTLE_ENDIAN);
+                grown.put(buf.flip());
+                buf = grown;
+            }
+            return buf;
+        }
+    }
+}
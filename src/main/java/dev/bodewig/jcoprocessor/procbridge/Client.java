@@ -1,37 +1,97 @@
 package dev.bodewig.jcoprocessor.procbridge;
 
 import dev.bodewig.jcoprocessor.util.Numeric;
+import org.json.JSONArray;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.net.SocketAddress;
 import java.net.SocketException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Connects to a Server and sends requests
+ * <p>
+ * Requests from multiple threads are multiplexed over the same socket. Each
+ * request carries an id and a reader thread dispatches the responses to the
+ * waiting callers. The socket is either a TCP socket or a Unix domain socket,
+ * alternatively the Client can use the pipes of a Server process. Many small
+ * requests can be sent in one frame with a {@link #batch()}, large results can
+ * be received item by item with {@link #requestStream(String, Object)} and
+ * large bodies sent chunk by chunk with
+ * {@link #upload(String, Object, InputStream)}.
  *
  * @author Gong Zhang
  * @author Lars Bodewig
  */
 public class Client implements AutoCloseable {
 
+    private static final Logger logger = Logger.getLogger(Client.class.getName());
+
     /**
      * Constant to not set a timeout
      */
     public static final long FOREVER = 0;
 
+    /**
+     * The default maximum number of stream items requested at once
+     */
+    public static final int DEFAULT_STREAM_WINDOW = 64;
+
+    /**
+     * The maximum delay between two connection attempts in milliseconds
+     */
+    private static final long MAX_CONNECT_BACKOFF = 100;
+
     private final Executor executor;
-    private Socket socket;
+    private final SocketAddress address;
+    private final Duplex duplex;
 
     private final long timeout;
 
+    private final AtomicInteger nextId = new AtomicInteger();
+    private final Map<Integer, Pending> pending = new ConcurrentHashMap<>();
+    private final Object writeLock = new Object();
+    private volatile ClientException failure;
+    private volatile Codec codec = Codec.JSON;
+    private volatile int sharedMemoryThreshold = -1;
+    private volatile int compressionThreshold = -1;
+    private volatile int streamWindow = DEFAULT_STREAM_WINDOW;
+    private volatile Map<String, Integer> methodIds = Map.of();
+    private volatile ResultCache resultCache;
+    private volatile Executor completionExecutor;
+
     /**
      * Creates a new Client connecting to the given host and port
+     * <p>
+     * The ids of the routed methods arrive asynchronously after connecting, see
+     * {@link #getMethodIds()}.
      *
      * @param host the Server host
      * @param port the Server port
@@ -44,34 +104,193 @@ public class Client implements AutoCloseable {
     /**
      * Creates a new Client connecting to the given host and port within a given
      * time
+     * <p>
+     * Refused connection attempts are retried with a growing delay of up to
+     * 100 ms until the timeout passes. The ids of the routed methods arrive
+     * asynchronously after connecting, see {@link #getMethodIds()}.
      *
      * @param host     the Server host
      * @param port     the Server port
-     * @param timeout  the connection timeout, 0 for forever
-     * @param executor the executor
+     * @param timeout  the connection and request timeout, 0 for forever
+     * @param executor the executor running the response reader, null for a
+     *                 dedicated thread
      * @throws ClientException if connecting failed
      */
     public Client(String host, int port, long timeout, Executor executor) throws ClientException {
+        this(InetSocketAddress.createUnresolved(host != null ? host : InetAddress.getLoopbackAddress().getHostName(),
+                port), timeout, executor);
+    }
+
+    /**
+     * Creates a new Client connecting to the Unix domain socket at the given path
+     * within a given time
+     * <p>
+     * The ids of the routed methods arrive asynchronously after connecting, see
+     * {@link #getMethodIds()}.
+     *
+     * @param socketPath the Server socket path
+     * @param timeout    the connection and request timeout, 0 for forever
+     * @param executor   the executor running the response reader, null for a
+     *                   dedicated thread
+     * @throws ClientException if connecting failed
+     */
+    public Client(Path socketPath, long timeout, Executor executor) throws ClientException {
+        this(UnixDomainSocketAddress.of(socketPath), timeout, executor);
+    }
+
+    /**
+     * Creates a new Client sending requests to a Server over the given streams,
+     * usually the standard input and output of the Server process
+     * <p>
+     * The ids of the routed methods arrive asynchronously, see
+     * {@link #getMethodIds()}.
+     *
+     * @param in       the stream to read responses from
+     * @param out      the stream to write requests to
+     * @param timeout  the request timeout, 0 for forever
+     * @param executor the executor running the response reader, null for a
+     *                 dedicated thread
+     */
+    public Client(InputStream in, OutputStream out, long timeout, Executor executor) {
+        this.address = null;
+        this.timeout = timeout;
+        this.executor = executor;
+        this.duplex = Duplex.of(in, out, "stdio");
+        startReader();
+        fetchMethodIds();
+    }
+
+    private Client(SocketAddress address, long timeout, Executor executor) throws ClientException {
+        this.address = address;
         this.timeout = timeout;
         this.executor = executor;
         Instant tryUntil = Instant.now().plus(Duration.ofMillis(timeout));
+        Duplex duplex = null;
         IOException ex;
+        long backoff = 1;
         do {
             try {
                 ex = null;
-                socket = new Socket(host, port);
+                duplex = connect(address);
             } catch (IOException e) {
                 ex = e;
+                // the Server may still be starting, retry without spinning
+                long remaining = timeout <= 0 ? backoff : Duration.between(Instant.now(), tryUntil).toMillis();
+                if (remaining > 0) {
+                    try {
+                        Thread.sleep(Math.min(backoff, remaining));
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                backoff = Math.min(backoff * 2, MAX_CONNECT_BACKOFF);
             }
         } while (!Thread.currentThread().isInterrupted() && ex != null
                 && (timeout <= 0 || Instant.now().isBefore(tryUntil)));
         if (ex != null) {
             throw new ClientException(ex);
         }
+        this.duplex = duplex;
+        startReader();
+        fetchMethodIds();
+    }
+
+    private void startReader() {
+        if (executor != null) {
+            executor.execute(this::readResponses);
+        } else {
+            Thread reader = new Thread(this::readResponses, "procbridge-client-" + duplex.getName());
+            reader.setDaemon(true);
+            reader.start();
+        }
+    }
+
+    /**
+     * Asks the Server for its routed methods without waiting, requests are sent
+     * by name until the ids arrive or if the Server does not know the request
+     */
+    private void fetchMethodIds() {
+        this.<JSONArray>call(Server.ROUTES_METHOD, null).thenAccept(routes -> {
+            Map<String, Integer> ids = new HashMap<>();
+            for (int i = 0; i < routes.length(); i++) {
+                ids.put(routes.getString(i), i);
+            }
+            methodIds = Map.copyOf(ids);
+        }).exceptionally(ex -> {
+            logger.log(Level.FINE, "Could not fetch the method ids on " + duplex.getName()
+                    + ", requests are sent by name", ex);
+            return null;
+        });
+    }
+
+    /**
+     * Get the ids the Server announced for its routed methods, requests to these
+     * methods are sent with the id instead of the name
+     * <p>
+     * Every constructor asks the Server for the ids without waiting for the
+     * answer, so requests sent right after connecting still use the name. If
+     * the lookup fails, e.g. with a Server that does not know the routes
+     * request, the ids stay empty and the failure is logged at FINE.
+     *
+     * @return the method ids by name, empty until the Server answered
+     */
+    public Map<String, Integer> getMethodIds() {
+        return methodIds;
+    }
+
+    private static Duplex connect(SocketAddress address) throws IOException {
+        if (address instanceof UnixDomainSocketAddress unix) {
+            SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+            try {
+                channel.connect(unix);
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+            return Duplex.of(channel, "socket " + unix.getPath().getFileName());
+        }
+        InetSocketAddress inet = (InetSocketAddress) address;
+        return Duplex.of(new Socket(inet.getHostString(), inet.getPort()));
+    }
+
+    private void readResponses() {
+        Exception cause = new SocketException("Socket closed");
+        try {
+            InputStream is = duplex.getInputStream();
+            while (!Thread.currentThread().isInterrupted()) {
+                Protocol.Header header = Protocol.readHeader(is).orElse(null);
+                if (header == null) {
+                    break; // end of stream
+                } else if (header.isDemand()) {
+                    int n = Protocol.readDemand(is, header);
+                    Pending request = pending.get(header.id);
+                    if (request != null && request.credit != null) {
+                        request.credit.grant(n);
+                    }
+                    continue;
+                }
+                // a stream request stays pending until its last frame
+                Pending request = header.isStream() && !header.isEnd() ? pending.get(header.id)
+                        : pending.remove(header.id);
+                Response response = Protocol.readResponse(is, header, request != null ? request.into : null);
+                if (request != null) {
+                    if (request.items != null && header.isStream() && !header.isEnd()) {
+                        request.items.accept(response.getPayload());
+                    } else {
+                        request.future.complete(response);
+                    }
+                }
+            }
+        } catch (Exception ex) {
+            cause = ex;
+        }
+        failure = new ClientException(cause);
+        pending.values().forEach(request -> request.future.completeExceptionally(failure));
+        pending.clear();
     }
 
     /**
-     * Get the executor
+     * Get the executor running the response reader
      *
      * @return the executor
      */
@@ -79,22 +298,167 @@ public class Client implements AutoCloseable {
         return executor;
     }
 
+    /**
+     * Get the executor completing the futures of asynchronous requests
+     *
+     * @return the executor, null for the shared pool
+     */
+    public Executor getCompletionExecutor() {
+        return completionExecutor;
+    }
+
+    /**
+     * Set the executor completing the futures returned by asynchronous requests.
+     * Their continuations run on it instead of on the response reader or the
+     * timeout scheduler, so they may block, e.g. on another request of this
+     * Client.
+     *
+     * @param completionExecutor the executor, null for a shared pool of daemon
+     *                           threads (the default)
+     */
+    public void setCompletionExecutor(Executor completionExecutor) {
+        this.completionExecutor = completionExecutor;
+    }
+
     /**
      * Get the host
      *
-     * @return the host
+     * @return the host, null if not connected over TCP
      */
     public final String getHost() {
-        return socket.getInetAddress().toString();
+        return address instanceof InetSocketAddress inet ? inet.getHostString() : null;
     }
 
     /**
      * Get the port
      *
-     * @return the port
+     * @return the port, -1 if not connected over TCP
      */
     public final int getPort() {
-        return socket.getPort();
+        return address instanceof InetSocketAddress inet ? inet.getPort() : -1;
+    }
+
+    /**
+     * Get the path of the Unix domain socket
+     *
+     * @return the socket path, null if not connected to a Unix domain socket
+     */
+    public final Path getSocketPath() {
+        return address instanceof UnixDomainSocketAddress unix ? unix.getPath() : null;
+    }
+
+    /**
+     * Get the Codec used to encode requests
+     *
+     * @return the Codec
+     */
+    public Codec getCodec() {
+        return codec;
+    }
+
+    /**
+     * Set the Codec used to encode requests, the Server answers with the same
+     * Codec
+     *
+     * @param codec the Codec, JSON by default
+     */
+    public void setCodec(Codec codec) {
+        this.codec = Objects.requireNonNull(codec);
+    }
+
+    /**
+     * Get the minimum size of raw payloads passed through shared memory
+     *
+     * @return the threshold in bytes, -1 if disabled
+     */
+    public int getSharedMemoryThreshold() {
+        return sharedMemoryThreshold;
+    }
+
+    /**
+     * Set the minimum size of raw payloads passed through shared memory instead
+     * of the socket. The Server answers requests passed through shared memory the
+     * same way and the response is returned as mapped buffer instead of being
+     * read into a given one.
+     *
+     * @param sharedMemoryThreshold the threshold in bytes, -1 to disable (the
+     *                              default)
+     */
+    public void setSharedMemoryThreshold(int sharedMemoryThreshold) {
+        if (sharedMemoryThreshold < -1) {
+            throw new IllegalArgumentException("Invalid threshold: " + sharedMemoryThreshold);
+        }
+        this.sharedMemoryThreshold = sharedMemoryThreshold;
+    }
+
+    /**
+     * Get the minimum size of encoded request bodies to compress
+     *
+     * @return the threshold in bytes, -1 if disabled
+     */
+    public int getCompressionThreshold() {
+        return compressionThreshold;
+    }
+
+    /**
+     * Set the minimum size of encoded request bodies to compress. Bodies that do
+     * not get smaller are sent uncompressed, raw payloads are never compressed.
+     * Each frame declares whether it is compressed, so the Server compresses its
+     * responses according to its own threshold.
+     *
+     * @param compressionThreshold the threshold in bytes, -1 to disable (the
+     *                             default)
+     */
+    public void setCompressionThreshold(int compressionThreshold) {
+        if (compressionThreshold < -1) {
+            throw new IllegalArgumentException("Invalid threshold: " + compressionThreshold);
+        }
+        this.compressionThreshold = compressionThreshold;
+    }
+
+    /**
+     * Get the cache of responses
+     *
+     * @return the ResultCache, null if disabled
+     */
+    public ResultCache getResultCache() {
+        return resultCache;
+    }
+
+    /**
+     * Set the cache of responses to methods enabled in it. Only requests with
+     * an encoded payload are cached, batches, streams, uploads and raw requests
+     * are always sent. The same ResultCache may be shared by several Clients of
+     * the same Server.
+     *
+     * @param resultCache the ResultCache, null to disable (the default)
+     */
+    public void setResultCache(ResultCache resultCache) {
+        this.resultCache = resultCache;
+    }
+
+    /**
+     * Get the maximum number of stream items requested at once
+     *
+     * @return the stream window
+     */
+    public int getStreamWindow() {
+        return streamWindow;
+    }
+
+    /**
+     * Set the maximum number of stream items requested but not yet consumed.
+     * Larger windows need more memory but hide the latency of requesting more
+     * items.
+     *
+     * @param streamWindow the stream window, {@value #DEFAULT_STREAM_WINDOW} by
+     *                     default
+     */
+    public void setStreamWindow(int streamWindow) {
+        if (streamWindow < 1) {
+            throw new IllegalArgumentException("Invalid stream window: " + streamWindow);
+        }
+        this.streamWindow = streamWindow;
     }
 
     /**
@@ -154,18 +518,9 @@ public class Client implements AutoCloseable {
      * @throws TimeoutException if the request reaches the configured timeout
      * @throws ServerException  if an exception occurs in the Server
      */
-    @SuppressWarnings("unchecked")
     public final <T extends Number> T request(String method, Object payload, Class<T> type)
             throws ClientException, TimeoutException, ServerException {
-        Number response = request(method, payload);
-        if (type.equals(Double.class)) {
-            return (T) Numeric.doubleBoxed(response);
-        } else if (type.equals(Long.class)) {
-            return (T) Numeric.longBoxed(response);
-        } else if (type.equals(Integer.class)) {
-            return (T) Numeric.intBoxed(response);
-        }
-        throw new IllegalArgumentException("Type " + type + " not supported");
+        return cast(this.<Number>request(method, payload), type);
     }
 
     /**
@@ -181,55 +536,579 @@ public class Client implements AutoCloseable {
      * @throws TimeoutException if the request reaches the configured timeout
      * @throws ServerException  if an exception occurs in the Server
      */
-    @SuppressWarnings("unchecked")
     public final <T> T request(String method, Object payload)
             throws ClientException, TimeoutException, ServerException {
-        if (socket.isClosed()) {
-            throw new ClientException(new SocketException("Socket already closed"));
+        return await(call(method, payload));
+    }
+
+    /**
+     * Sends a request to the target port without blocking and casts the result to
+     * the correct Number type
+     *
+     * @param <T>    the expected return type for comfort (supports Double, Integer,
+     *               Long)
+     * @param method the requested method
+     * @param type   Double, Integer or Long
+     * @return a future completing with the response payload or exceptionally with
+     *         a ClientException, TimeoutException or ServerException
+     */
+    public final <T extends Number> CompletableFuture<T> requestAsync(String method, Class<T> type) {
+        return requestAsync(method, null, type);
+    }
+
+    /**
+     * Sends a request to the target port without blocking
+     *
+     * @param <T>    the expected return type for comfort (supports Boolean, Double,
+     *               Integer, JSONArray, JSONObject, Long, String)
+     * @param method the requested method
+     * @return a future completing with the response payload or exceptionally with
+     *         a ClientException, TimeoutException or ServerException
+     */
+    public final <T> CompletableFuture<T> requestAsync(String method) {
+        return requestAsync(method, (Object) null);
+    }
+
+    /**
+     * Sends a request to the target port without blocking and casts the result to
+     * the correct Number type
+     *
+     * @param <T>     the expected return type for comfort (supports Double,
+     *                Integer, Long)
+     * @param method  the requested method
+     * @param payload the request payload (supports Boolean, Double, Integer,
+     *                JSONArray, JSONObject, Long, String)
+     * @param type    Double, Integer or Long
+     * @return a future completing with the response payload or exceptionally with
+     *         a ClientException, TimeoutException or ServerException
+     */
+    public final <T extends Number> CompletableFuture<T> requestAsync(String method, Object payload,
+            Class<T> type) {
+        return this.<Number>requestAsync(method, payload).thenApply(response -> cast(response, type));
+    }
+
+    /**
+     * Sends a request to the target port without blocking
+     * <p>
+     * No thread is blocked while the request is outstanding. The future is
+     * completed on the {@link #setCompletionExecutor(Executor) completion
+     * executor}, so continuations may send blocking requests without stalling
+     * the response reader.
+     *
+     * @param <T>     the expected return type for comfort (supports Boolean,
+     *                Double, Integer, JSONArray, JSONObject, Long, String)
+     * @param method  the requested method
+     * @param payload the request payload (supports Boolean, Double, Integer,
+     *                JSONArray, JSONObject, Long, String)
+     * @return a future completing with the response payload or exceptionally with
+     *         a ClientException, TimeoutException or ServerException
+     */
+    public final <T> CompletableFuture<T> requestAsync(String method, Object payload) {
+        return completeAsync(call(method, payload));
+    }
+
+    private <T> CompletableFuture<T> call(String method, Object payload) {
+        ResultCache cache = resultCache;
+        if (cache != null && cache.isEnabled(method)) {
+            return cache.get(method, payload, () -> send(method, payload));
         }
+        return send(method, payload);
+    }
 
-        // final 1-sized array for usage in lambda
-        final StatusCode[] respStatusCode = {null};
-        final Object[] respPayload = {null};
-        final Throwable[] innerException = {null};
+    private <T> CompletableFuture<T> send(String method, Object payload) {
+        Codec codec = this.codec;
+        int threshold = compressionThreshold;
+        Integer methodId = method != null ? methodIds.get(method) : null;
+        if (methodId != null) {
+            return payload(send((os, id) -> Protocol.writeRequest(os, codec, id, methodId, payload, threshold)));
+        }
+        return payload(send((os, id) -> Protocol.writeRequest(os, codec, id, method, payload, threshold)));
+    }
 
-        Runnable task = () -> {
-            try {
-                OutputStream os = socket.getOutputStream();
-                InputStream is = socket.getInputStream();
-
-                Protocol.writeRequest(os, method, payload);
-                Map.Entry<StatusCode, Object> entry;
-                do {
-                    entry = Protocol.readResponse(is).orElse(null);
-                } while (!Thread.currentThread().isInterrupted() && !socket.isInputShutdown() && entry == null);
-                respStatusCode[0] = entry.getKey();
-                respPayload[0] = entry.getValue();
-
-            } catch (Exception ex) {
-                innerException[0] = ex;
+    /**
+     * Sends a request answered with a stream of items
+     *
+     * @param <T>    the expected item type for comfort (supports Boolean, Double,
+     *               Integer, JSONArray, JSONObject, Long, String)
+     * @param method the requested method
+     * @return the items, lazily received
+     * @see #requestStream(String, Object)
+     */
+    public final <T> Stream<T> requestStream(String method) {
+        return requestStream(method, null);
+    }
+
+    /**
+     * Sends a request answered with a stream of items
+     * <p>
+     * Items are requested from the Server as the returned Stream is consumed, at
+     * most {@link #getStreamWindow()} at once. The timeout applies to waiting for
+     * each item. Closing the Stream before it is exhausted cancels the request.
+     * A ClientException, TimeoutException or ServerException is thrown while
+     * consuming the Stream.
+     *
+     * @param <T>     the expected item type for comfort (supports Boolean,
+     *                Double, Integer, JSONArray, JSONObject, Long, String)
+     * @param method  the requested method
+     * @param payload the request payload (supports Boolean, Double, Integer,
+     *                JSONArray, JSONObject, Long, String)
+     * @return the items, lazily received
+     */
+    @SuppressWarnings("unchecked")
+    public final <T> Stream<T> requestStream(String method, Object payload) {
+        Codec codec = this.codec;
+        int window = streamWindow;
+        ResponseStream items = new ResponseStream(this, window, timeout);
+        send(new Pending(null, items, null), (os, id) -> {
+            items.setId(id);
+            Protocol.writeStreamRequest(os, codec, id, method, payload);
+            Protocol.writeDemand(os, id, window);
+        }).whenComplete(items::end);
+        return (Stream<T>) StreamSupport.stream(Spliterators.spliteratorUnknownSize(items, Spliterator.ORDERED), false)
+                .onClose(items::close);
+    }
+
+    /**
+     * Grants the Server to send more items of a stream
+     *
+     * @param id the id of the stream request
+     * @param n  the number of additional items
+     */
+    void demand(int id, int n) {
+        try {
+            synchronized (writeLock) {
+                Protocol.writeDemand(duplex.getOutputStream(), id, n);
             }
-        };
-        if (timeout <= 0) {
-            task.run();
-        } else {
-            TimeoutExecutor guard = new TimeoutExecutor(timeout, executor);
-            guard.execute(task);
+        } catch (IOException ignored) {
+            // the response reader fails and ends the stream
         }
+    }
 
-        if (innerException[0] != null) {
-            throw new RuntimeException(innerException[0]);
+    /**
+     * Cancels a stream and forgets the request
+     *
+     * @param id the id of the stream request
+     */
+    void cancel(int id) {
+        pending.remove(id);
+        try {
+            synchronized (writeLock) {
+                Protocol.writeCancel(duplex.getOutputStream(), id);
+            }
+        } catch (IOException ignored) {
+            // the connection is gone and the stream with it
         }
+    }
+
+    /**
+     * Sends a request with a body read from an InputStream
+     *
+     * @param <T>    the expected return type for comfort (supports Boolean,
+     *               Double, Integer, JSONArray, JSONObject, Long, String)
+     * @param method the requested method
+     * @param data   the body of the request, read until its end but not closed
+     * @return the response payload
+     * @throws ClientException  if an exception occurs in the Client or reading the
+     *                          data fails
+     * @throws TimeoutException if the request reaches the configured timeout
+     * @throws ServerException  if an exception occurs in the Server
+     * @see #upload(String, Object, InputStream)
+     */
+    public final <T> T upload(String method, InputStream data)
+            throws ClientException, TimeoutException, ServerException {
+        return upload(method, null, data);
+    }
+
+    /**
+     * Sends a request with a body read from an InputStream
+     * <p>
+     * The data is sent in chunks of up to 64 KiB, but only as many as the Server
+     * has granted, so the calling thread is blocked while the handler on the
+     * Server falls behind and neither side holds the whole body in memory. The
+     * timeout applies to waiting for each grant and for the response after the
+     * last chunk. If reading the data fails, the upload is aborted.
+     *
+     * @param <T>     the expected return type for comfort (supports Boolean,
+     *                Double, Integer, JSONArray, JSONObject, Long, String)
+     * @param method  the requested method
+     * @param payload the request payload (supports Boolean, Double, Integer,
+     *                JSONArray, JSONObject, Long, String)
+     * @param data    the body of the request, read until its end but not closed
+     * @return the response payload
+     * @throws ClientException  if an exception occurs in the Client or reading the
+     *                          data fails
+     * @throws TimeoutException if the request reaches the configured timeout
+     * @throws ServerException  if an exception occurs in the Server
+     */
+    public final <T> T upload(String method, Object payload, InputStream data)
+            throws ClientException, TimeoutException, ServerException {
+        Codec codec = this.codec;
+        long timeout = this.timeout;
+        Streams.Credit credit = new Streams.Credit();
+        AtomicInteger upload = new AtomicInteger();
+        CompletableFuture<Response> future = send(new Pending(null, null, credit), (os, id) -> {
+            upload.set(id);
+            Protocol.writeUploadRequest(os, codec, id, method, payload);
+        });
+        // stop sending once answered, e.g. if the handler fails early
+        future.whenComplete((response, ex) -> credit.grant(0));
 
-        if (respStatusCode[0] != StatusCode.GOOD_RESPONSE) {
-            throw new ServerException((String) respPayload[0]);
+        int id = upload.get();
+        byte[] chunk = new byte[Protocol.UPLOAD_CHUNK_SIZE];
+        boolean last = future.isDone();
+        try {
+            while (!last) {
+                int n = data.readNBytes(chunk, 0, chunk.length);
+                last = n < chunk.length;
+                // an empty last chunk takes no space on the Server
+                if (n > 0 && !credit.acquire(timeout)) {
+                    break; // answered or failed
+                }
+                synchronized (writeLock) {
+                    Protocol.writeChunk(duplex.getOutputStream(), id, ByteBuffer.wrap(chunk, 0, n), last);
+                }
+            }
+        } catch (TimeoutException ex) {
+            cancel(id);
+            throw ex;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            cancel(id);
+            throw new ClientException(ex);
+        } catch (IOException ex) {
+            cancel(id);
+            throw new ClientException(ex);
         }
+        TimeoutExecutor.orTimeout(future, timeout);
+        return await(payload(future));
+    }
+
+    /**
+     * Creates a new empty Batch to send multiple requests in one frame
+     *
+     * @return the Batch
+     */
+    public final Batch batch() {
+        return new Batch(this);
+    }
+
+    /**
+     * Creates a proxy of a service interface whose calls are sent as requests to
+     * the Server that exported it with {@link Server#export(Class, Object)}
+     * <p>
+     * The method names and response conversions are resolved once, a call with
+     * several arguments sends them as a List. Methods returning a
+     * CompletableFuture are sent without blocking, default methods run locally
+     * and require a public interface.
+     *
+     * @param <T>     the service type
+     * @param service the service interface
+     * @return the proxy
+     * @throws IllegalArgumentException if the service is not an interface
+     */
+    public final <T> T proxy(Class<T> service) {
+        return ServiceProxy.create(this, service);
+    }
+
+    final CompletableFuture<List<Response>> requestBatchAsync(List<String> methods, List<Object> payloads) {
+        Codec codec = this.codec;
+        int threshold = compressionThreshold;
+        Map<String, Integer> ids = methodIds;
+        List<Object> routed = methods.stream().<Object>map(m -> {
+            Integer methodId = m != null ? ids.get(m) : null;
+            return methodId != null ? methodId : m;
+        }).toList();
+        return payload(
+                send((os, id) -> Protocol.writeBatchRequest(os, codec, id, routed, payloads, threshold)));
+    }
+
+    /**
+     * Sends a request passing the payload through as raw bytes without encoding
+     *
+     * @param method  the requested method
+     * @param payload the request payload from its position to its limit, the
+     *                position is not modified
+     * @return the response payload flipped for reading
+     * @throws ClientException  if an exception occurs in the Client
+     * @throws TimeoutException if the request reaches the configured timeout
+     * @throws ServerException  if an exception occurs in the Server
+     */
+    public final ByteBuffer requestBytes(String method, ByteBuffer payload)
+            throws ClientException, TimeoutException, ServerException {
+        return await(sendBytes(method, payload, null));
+    }
+
+    /**
+     * Sends a request passing the payload through as raw bytes without encoding
+     * and reads the response into the given buffer
+     *
+     * @param method  the requested method
+     * @param payload the request payload from its position to its limit, the
+     *                position is not modified
+     * @param into    the buffer to read the response into, cleared before
+     *                reading
+     * @return into flipped for reading, a new buffer if the response does not
+     *         fit or a mapped buffer if it was passed through shared memory
+     * @throws ClientException  if an exception occurs in the Client
+     * @throws TimeoutException if the request reaches the configured timeout
+     * @throws ServerException  if an exception occurs in the Server
+     */
+    public final ByteBuffer requestBytes(String method, ByteBuffer payload, ByteBuffer into)
+            throws ClientException, TimeoutException, ServerException {
+        return await(sendBytes(method, payload, into));
+    }
+
+    /**
+     * Sends a request passing the payload through as raw bytes without encoding
+     * and without blocking
+     *
+     * @param method  the requested method
+     * @param payload the request payload from its position to its limit, the
+     *                position is not modified
+     * @return a future completing with the response payload flipped for reading
+     *         or exceptionally with a ClientException, TimeoutException or
+     *         ServerException
+     */
+    public final CompletableFuture<ByteBuffer> requestBytesAsync(String method, ByteBuffer payload) {
+        return requestBytesAsync(method, payload, null);
+    }
 
-        return (T) respPayload[0];
+    /**
+     * Sends a request passing the payload through as raw bytes without encoding
+     * and without blocking and reads the response into the given buffer
+     * <p>
+     * The buffer must not be used until the future completes.
+     *
+     * @param method  the requested method
+     * @param payload the request payload from its position to its limit, the
+     *                position is not modified
+     * @param into    the buffer to read the response into, cleared before
+     *                reading
+     * @return a future completing with into flipped for reading, a new buffer if
+     *         the response does not fit or a mapped buffer if it was passed
+     *         through shared memory, or exceptionally with a ClientException,
+     *         TimeoutException or ServerException
+     */
+    public final CompletableFuture<ByteBuffer> requestBytesAsync(String method, ByteBuffer payload,
+            ByteBuffer into) {
+        return completeAsync(sendBytes(method, payload, into));
+    }
+
+    private CompletableFuture<ByteBuffer> sendBytes(String method, ByteBuffer payload, ByteBuffer into) {
+        int threshold = sharedMemoryThreshold;
+        boolean shared = threshold >= 0 && payload.remaining() >= threshold;
+        return payload(send(into, (os, id) -> Protocol.writeRawRequest(os, id, method, payload, shared)));
+    }
+
+    /**
+     * Sends a raw request of a single double to a method registered with
+     * {@link Server#registerDouble(String, java.util.function.DoubleUnaryOperator)}.
+     * The value is written to and the result read from the frame body without
+     * boxing.
+     *
+     * @param method the requested method
+     * @param value  the request value
+     * @return the response value
+     * @throws ClientException  if an exception occurs in the Client
+     * @throws TimeoutException if the request reaches the configured timeout
+     * @throws ServerException  if an exception occurs in the Server
+     */
+    public final double requestDouble(String method, double value)
+            throws ClientException, TimeoutException, ServerException {
+        return Primitives.decodeDouble(requestBytes(method, Primitives.encode(value)));
+    }
+
+    /**
+     * Sends a raw request of a single long to a method registered with
+     * {@link Server#registerLong(String, java.util.function.LongUnaryOperator)}
+     *
+     * @param method the requested method
+     * @param value  the request value
+     * @return the response value
+     * @throws ClientException  if an exception occurs in the Client
+     * @throws TimeoutException if the request reaches the configured timeout
+     * @throws ServerException  if an exception occurs in the Server
+     * @see #requestDouble(String, double)
+     */
+    public final long requestLong(String method, long value)
+            throws ClientException, TimeoutException, ServerException {
+        return Primitives.decodeLong(requestBytes(method, Primitives.encode(value)));
+    }
+
+    /**
+     * Sends a raw request of a single int to a method registered with
+     * {@link Server#registerInt(String, java.util.function.IntUnaryOperator)}
+     *
+     * @param method the requested method
+     * @param value  the request value
+     * @return the response value
+     * @throws ClientException  if an exception occurs in the Client
+     * @throws TimeoutException if the request reaches the configured timeout
+     * @throws ServerException  if an exception occurs in the Server
+     * @see #requestDouble(String, double)
+     */
+    public final int requestInt(String method, int value)
+            throws ClientException, TimeoutException, ServerException {
+        return Primitives.decodeInt(requestBytes(method, Primitives.encode(value)));
+    }
+
+    /**
+     * Sends a raw request of a double array to a method registered with
+     * {@link Server#registerDoubles(String, java.util.function.UnaryOperator)}.
+     * Large arrays are passed through shared memory like other raw payloads.
+     *
+     * @param method the requested method
+     * @param values the request values
+     * @return the response values
+     * @throws ClientException  if an exception occurs in the Client
+     * @throws TimeoutException if the request reaches the configured timeout
+     * @throws ServerException  if an exception occurs in the Server
+     * @see #requestDouble(String, double)
+     */
+    public final double[] requestDoubles(String method, double[] values)
+            throws ClientException, TimeoutException, ServerException {
+        return Primitives.decodeDoubles(requestBytes(method, Primitives.encode(values)));
+    }
+
+    /**
+     * Sends a raw request of a long array to a method registered with
+     * {@link Server#registerLongs(String, java.util.function.UnaryOperator)}
+     *
+     * @param method the requested method
+     * @param values the request values
+     * @return the response values
+     * @throws ClientException  if an exception occurs in the Client
+     * @throws TimeoutException if the request reaches the configured timeout
+     * @throws ServerException  if an exception occurs in the Server
+     * @see #requestDoubles(String, double[])
+     */
+    public final long[] requestLongs(String method, long[] values)
+            throws ClientException, TimeoutException, ServerException {
+        return Primitives.decodeLongs(requestBytes(method, Primitives.encode(values)));
+    }
+
+    /**
+     * Moves the completion of a future returned to the caller off the response
+     * reader and the timeout scheduler
+     *
+     * @param <T>    the result type
+     * @param future the future completed by the response reader
+     * @return a future completing on the completion executor
+     */
+    final <T> CompletableFuture<T> completeAsync(CompletableFuture<T> future) {
+        if (future.isDone()) {
+            return future; // continuations run on the calling thread
+        }
+        Executor executor = completionExecutor;
+        return future.whenCompleteAsync((result, ex) -> {
+        }, executor != null ? executor : TimeoutExecutor.workers());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> CompletableFuture<T> payload(CompletableFuture<Response> future) {
+        return future.handle((response, ex) -> {
+            if (ex != null) {
+                throw translate(ex);
+            }
+            if (response.getStatusCode() != StatusCode.GOOD_RESPONSE) {
+                throw new ServerException((String) response.getPayload());
+            }
+            return (T) response.getPayload();
+        });
+    }
+
+    private CompletableFuture<Response> send(RequestWriter writer) {
+        return send(new Pending(null, null, null), writer);
+    }
+
+    private CompletableFuture<Response> send(ByteBuffer into, RequestWriter writer) {
+        return send(new Pending(into, null, null), writer);
+    }
+
+    private CompletableFuture<Response> send(Pending request, RequestWriter writer) {
+        if (duplex.isClosed()) {
+            return CompletableFuture.failedFuture(new ClientException(new SocketException("Socket already closed")));
+        }
+
+        int id = nextId.getAndIncrement();
+        pending.put(id, request);
+        if (failure != null) {
+            pending.remove(id);
+            return CompletableFuture.failedFuture(failure);
+        }
+
+        try {
+            synchronized (writeLock) {
+                writer.write(duplex.getOutputStream(), id);
+            }
+        } catch (IOException | RuntimeException ex) {
+            pending.remove(id);
+            return CompletableFuture.failedFuture(new ClientException(ex));
+        }
+
+        CompletableFuture<Response> future = request.future;
+        if (request.items == null && request.credit == null) {
+            // streams time out per item, uploads per chunk
+            TimeoutExecutor.orTimeout(future, timeout);
+        }
+        // forget the request if it completes without a response, e.g. on timeout
+        future.whenComplete((response, ex) -> pending.remove(id));
+        return future;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T extends Number> T cast(Number response, Class<T> type) {
+        if (type.equals(Double.class)) {
+            return (T) Numeric.doubleBoxed(response);
+        } else if (type.equals(Long.class)) {
+            return (T) Numeric.longBoxed(response);
+        } else if (type.equals(Integer.class)) {
+            return (T) Numeric.intBoxed(response);
+        }
+        throw new IllegalArgumentException("Type " + type + " not supported");
+    }
+
+    static RuntimeException translate(Throwable ex) {
+        if (ex instanceof CompletionException && ex.getCause() != null) {
+            ex = ex.getCause();
+        }
+        if (ex instanceof RuntimeException re) {
+            return re;
+        }
+        return new ClientException(ex);
+    }
+
+    static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new ClientException(ex);
+        } catch (ExecutionException ex) {
+            throw translate(ex.getCause());
+        }
+    }
+
+    @FunctionalInterface
+    private interface RequestWriter {
+        void write(OutputStream stream, int id) throws IOException;
+    }
+
+    private static final class Pending {
+        final CompletableFuture<Response> future = new CompletableFuture<>();
+        final ByteBuffer into;
+        final ResponseStream items;
+        final Streams.Credit credit;
+
+        Pending(ByteBuffer into, ResponseStream items, Streams.Credit credit) {
+            this.into = into;
+            this.items = items;
+            this.credit = credit;
+        }
     }
 
     @Override
     public void close() throws IOException {
-        socket.close();
+        duplex.close();
     }
 }
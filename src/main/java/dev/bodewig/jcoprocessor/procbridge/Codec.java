@@ -0,0 +1,102 @@
+package dev.bodewig.jcoprocessor.procbridge;
+
+import org.json.JSONObject;
+
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Encodings of the frame body, identified by the first reserved byte of the
+ * header
+ * <p>
+ * A Server answers a request with the Codec the request was sent with.
+ *
+ * @author Lars Bodewig
+ */
+public enum Codec {
+
+    /**
+     * UTF-8 encoded JSON text, compatible with other ProcBridge implementations
+     */
+    JSON(0) {
+        @Override
+        byte[] encode(Map<Key, Object> body) {
+            JSONObject json = new JSONObject();
+            body.forEach((key, value) -> json.put(key.toString(), value));
+            return json.toString().getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        Map<Key, Object> decode(byte[] buf) {
+            JSONObject json = new JSONObject(new String(buf, StandardCharsets.UTF_8));
+            Map<Key, Object> body = new EnumMap<>(Key.class);
+            for (Key key : Key.values()) {
+                Object value = json.opt(key.toString());
+                if (value != null) {
+                    body.put(key, value);
+                }
+            }
+            return body;
+        }
+    },
+    /**
+     * Compact little endian encoding of primitives, primitive arrays, Strings,
+     * Maps and Lists
+     * <p>
+     * Primitive arrays (double[], long[], int[], byte[]) are transferred as
+     * contiguous values and decoded as primitive arrays. Maps and Lists decode as
+     * JSONObject and JSONArray.
+     */
+    BINARY(1) {
+        @Override
+        byte[] encode(Map<Key, Object> body) {
+            return BinaryCodec.encode(body);
+        }
+
+        @Override
+        Map<Key, Object> decode(byte[] buf) {
+            return BinaryCodec.decode(buf);
+        }
+    };
+
+    /**
+     * Find the Codec from the int representation
+     *
+     * @param rawValue the int representation
+     * @return the matching Codec
+     */
+    public static Codec fromRawValue(int rawValue) {
+        for (Codec codec : Codec.values()) {
+            if (codec.rawValue == rawValue) {
+                return codec;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The int representing the Codec
+     */
+    public final int rawValue;
+
+    Codec(int rawValue) {
+        this.rawValue = rawValue;
+    }
+
+    /**
+     * Encodes the frame body
+     *
+     * @param body the body values by Key, without null values
+     * @return the encoded body
+     */
+    abstract byte[] encode(Map<Key, Object> body);
+
+    /**
+     * Decodes the frame body
+     *
+     * @param buf the encoded body
+     * @return the body values by Key
+     */
+    abstract Map<Key, Object> decode(byte[] buf);
+}
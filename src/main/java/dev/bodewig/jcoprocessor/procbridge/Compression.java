@@ -0,0 +1,98 @@
+package dev.bodewig.jcoprocessor.procbridge;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import static dev.bodewig.jcoprocessor.procbridge.ProtocolException.INVALID_BODY;
+
+/**
+ * Compresses and decompresses encoded bodies with the fastest Deflater level
+ * <p>
+ * A compressed body starts with the 4-byte length of the uncompressed body
+ * (little endian) followed by the raw deflate data. Deflaters and Inflaters
+ * hold native memory and are pooled instead of being created per frame.
+ *
+ * @author Lars Bodewig
+ */
+final class Compression {
+
+    private static final Queue<Deflater> DEFLATERS = new ConcurrentLinkedQueue<>();
+    private static final Queue<Inflater> INFLATERS = new ConcurrentLinkedQueue<>();
+
+    private Compression() {
+    }
+
+    /**
+     * Compresses a body if that makes it smaller
+     *
+     * @param body the encoded body
+     * @return the compressed body or null if it would not be smaller
+     */
+    static byte[] compress(byte[] body) {
+        if (body.length <= 4) {
+            return null;
+        }
+        Deflater deflater = DEFLATERS.poll();
+        if (deflater == null) {
+            deflater = new Deflater(Deflater.BEST_SPEED, true);
+        }
+        try {
+            deflater.setInput(body);
+            deflater.finish();
+            // stop as soon as the output is not smaller
+            byte[] out = new byte[body.length];
+            int n = deflater.deflate(out, 4, out.length - 4);
+            if (!deflater.finished()) {
+                return null;
+            }
+            ByteBuffer.wrap(out).order(ByteOrder.LITTLE_ENDIAN).putInt(body.length);
+            return Arrays.copyOf(out, 4 + n);
+        } finally {
+            deflater.reset();
+            DEFLATERS.offer(deflater);
+        }
+    }
+
+    /**
+     * Decompresses a body
+     *
+     * @param body   the array holding the compressed body
+     * @param offset the offset of the compressed body
+     * @param length the length of the compressed body
+     * @return the encoded body
+     * @throws ProtocolException if the body is not valid
+     */
+    static byte[] decompress(byte[] body, int offset, int length) throws ProtocolException {
+        if (length < 4) {
+            throw new ProtocolException(INVALID_BODY);
+        }
+        int size = ByteBuffer.wrap(body, offset, 4).order(ByteOrder.LITTLE_ENDIAN).getInt();
+        if (size < 0) {
+            throw new ProtocolException(INVALID_BODY);
+        }
+        Inflater inflater = INFLATERS.poll();
+        if (inflater == null) {
+            inflater = new Inflater(true);
+        }
+        try {
+            inflater.setInput(body, offset + 4, length - 4);
+            byte[] out = new byte[size];
+            int n = inflater.inflate(out);
+            if (n != size || !inflater.finished()) {
+                throw new ProtocolException(INVALID_BODY);
+            }
+            return out;
+        } catch (DataFormatException ex) {
+            throw new ProtocolException(INVALID_BODY);
+        } finally {
+            inflater.reset();
+            INFLATERS.offer(inflater);
+        }
+    }
+}
@@ -1,14 +1,30 @@
 package dev.bodewig.jcoprocessor.procbridge;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.net.Socket;
-import java.util.Map;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * A connection between a Server handling a request and a socket
+ * <p>
+ * Requests are read sequentially but may be handled concurrently by an
+ * executor, responses are written in the order they complete and correlated by
+ * the request id. Responses use the Codec of their request, raw responses are
+ * passed through shared memory if their request was. The items of a batch
+ * request are answered together in one response, the items of a stream request
+ * one by one as the Client demands them.
  *
  * @author Gong Zhang
  * @author Lars Bodewig
@@ -18,47 +34,263 @@ public class Connection implements Runnable {
     private static final Logger logger = Logger.getLogger(Connection.class.getName());
 
     private final Server server;
-    private final Socket socket;
+    private final Duplex duplex;
+    private final Executor executor;
+    private final Streams streams = new Streams();
 
     /**
-     * Creates a new Connection between the given Server and socket
+     * Creates a new Connection between the given Server and socket that handles
+     * requests one after another, except stream and upload requests which need
+     * a thread of their own
      *
      * @param server the Server handling the request
      * @param socket the socket to read from and write to
+     * @throws UncheckedIOException if the socket streams are not available
      */
     public Connection(Server server, Socket socket) {
+        this(server, socket, null);
+    }
+
+    /**
+     * Creates a new Connection between the given Server and socket
+     *
+     * @param server   the Server handling the request
+     * @param socket   the socket to read from and write to
+     * @param executor the executor used to handle requests, null to handle them
+     *                 on the reading thread. Stream and upload requests then
+     *                 run on a dedicated thread, since waiting for demand or
+     *                 chunks on the reading thread would block them from being
+     *                 read.
+     * @throws UncheckedIOException if the socket streams are not available
+     */
+    public Connection(Server server, Socket socket, Executor executor) {
+        this(server, duplex(socket), executor);
+    }
+
+    Connection(Server server, Duplex duplex, Executor executor) {
         this.server = server;
-        this.socket = socket;
+        this.duplex = duplex;
+        this.executor = executor;
+    }
+
+    private static Duplex duplex(Socket socket) {
+        try {
+            return Duplex.of(socket);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 
     @Override
     public void run() {
-        try (OutputStream os = socket.getOutputStream(); InputStream is = socket.getInputStream()) {
+        try (Duplex io = duplex) {
+            OutputStream os = io.getOutputStream();
+            InputStream is = io.getInputStream();
 
             while (!Thread.currentThread().isInterrupted()) {
-                Map.Entry<String, Object> req;
-                do {
-                    req = Protocol.readRequest(is).orElse(null);
-                } while (!Thread.currentThread().isInterrupted() && !socket.isInputShutdown() && req == null);
-                String method = req.getKey();
-                Object payload = req.getValue();
-
-                Object result = null;
-                Exception exception = null;
-                try {
-                    result = server.handleRequest(method, payload);
-                } catch (Exception ex) {
-                    exception = ex;
+                Request req = Protocol.readRequest(is).orElse(null);
+                if (req == null) {
+                    return; // end of stream
+                }
+                if (streams.route(req)) {
+                    continue; // demand applied
                 }
 
-                if (exception != null) {
-                    Protocol.writeBadResponse(os, exception);
+                if (executor != null) {
+                    executor.execute(() -> handle(os, req));
+                } else if (req.isStream() || req.isUpload()) {
+                    // the reading thread has to stay free to read demand and chunks
+                    Thread handler = new Thread(() -> handle(os, req),
+                            (req.isStream() ? "procbridge-stream-" : "procbridge-upload-") + req.getId() + "-"
+                                    + duplex.getName());
+                    handler.setDaemon(true);
+                    handler.start();
                 } else {
-                    Protocol.writeGoodResponse(os, result);
+                    handle(os, req);
+                }
+            }
+        } catch (Exception ex) {
+            logger.log(Level.SEVERE, "Exception occurred in connection on " + duplex.getName(), ex);
+        } finally {
+            streams.cancelAll();
+        }
+    }
+
+    private void handle(OutputStream os, Request req) {
+        try {
+            handle(server, req, os, os, executor, streams);
+        } catch (IOException ex) {
+            logger.log(Level.SEVERE, "Exception occurred in connection on " + duplex.getName(), ex);
+        }
+    }
+
+    /**
+     * Handles a request with the Server and writes the response
+     *
+     * @param server   the Server handling the request
+     * @param req      the request
+     * @param os       the stream to write the response to
+     * @param lock     the lock held while writing the response
+     * @param executor the executor to handle the items of a batch concurrently,
+     *                 null to handle them one after another
+     * @param streams  the streams of the connection the request was routed to
+     * @throws IOException if writing the response fails
+     */
+    static void handle(Server server, Request req, OutputStream os, Object lock, Executor executor,
+            Streams streams) throws IOException {
+        if (req.isBatch()) {
+            handleBatch(server, req, os, lock, executor);
+            return;
+        } else if (req.isStream()) {
+            handleStream(server, req, os, lock, streams);
+            return;
+        } else if (req.isUpload()) {
+            handleUpload(server, req, os, lock, streams);
+            return;
+        }
+        Object result = null;
+        Exception exception = null;
+        try {
+            if (req.isRaw()) {
+                result = server.dispatchBytes(req.getMethod(), (ByteBuffer) req.getPayload());
+            } else {
+                result = server.dispatch(req);
+            }
+        } catch (Exception ex) {
+            exception = ex;
+        }
+        respond(server, req, result, exception, os, lock);
+    }
+
+    private static void respond(Server server, Request req, Object result, Exception exception, OutputStream os,
+            Object lock) throws IOException {
+        synchronized (lock) {
+            if (exception == null) {
+                try {
+                    if (req.isRaw()) {
+                        Protocol.writeRawResponse(os, req.getId(),
+                                result != null ? (ByteBuffer) result : ByteBuffer.allocate(0), req.isShared());
+                    } else {
+                        Protocol.writeGoodResponse(os, req.getCodec(), req.getId(), result,
+                                server.getCompressionThreshold());
+                    }
+                    return;
+                } catch (RuntimeException ex) {
+                    exception = ex; // result not serializable, nothing was written
                 }
             }
+            Protocol.writeBadResponse(os, req.getCodec(), req.getId(), exception);
+        }
+    }
+
+    private static void handleBatch(Server server, Request req, OutputStream os, Object lock, Executor executor)
+            throws IOException {
+        List<FutureTask<Response>> tasks = new ArrayList<>(req.getItems().size());
+        for (Request item : req.getItems()) {
+            tasks.add(new FutureTask<>(() -> handleItem(server, item)));
+        }
+        if (server.isParallelBatches() && executor != null) {
+            for (int i = 1; i < tasks.size(); i++) {
+                try {
+                    executor.execute(tasks.get(i));
+                } catch (RejectedExecutionException ignored) {
+                    break; // handled below
+                }
+            }
+        }
+
+        List<Response> results = new ArrayList<>(tasks.size());
+        for (FutureTask<Response> task : tasks) {
+            // handle items the executor has not started yet on this thread, so a
+            // saturated executor cannot deadlock
+            task.run();
+            try {
+                results.add(task.get());
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                results.add(new Response(req.getCodec(), req.getId(), StatusCode.BAD_RESPONSE,
+                        Protocol.message(ex)));
+            } catch (ExecutionException ex) {
+                throw new IllegalStateException(ex.getCause()); // handleItem does not throw
+            }
+        }
+
+        synchronized (lock) {
+            try {
+                Protocol.writeBatchResponse(os, req.getCodec(), req.getId(), results,
+                        server.getCompressionThreshold());
+            } catch (RuntimeException ex) {
+                // a result is not serializable, nothing was written
+                Protocol.writeBadResponse(os, req.getCodec(), req.getId(), ex);
+            }
+        }
+    }
+
+    private static void handleStream(Server server, Request req, OutputStream os, Object lock, Streams streams)
+            throws IOException {
+        Streams.Credit credit = streams.get(req.getId());
+        Iterator<?> items = null;
+        try {
+            items = server.handleStream(req.getMethod(), req.getPayload());
+            while (items.hasNext()) {
+                if (!credit.acquire()) {
+                    return; // cancelled
+                }
+                Object item = items.next();
+                synchronized (lock) {
+                    Protocol.writeStreamItem(os, req.getCodec(), req.getId(), item, server.getCompressionThreshold());
+                }
+            }
+            synchronized (lock) {
+                Protocol.writeStreamEnd(os, req.getCodec(), req.getId());
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException ex) {
+            // thrown by the handler or an item is not serializable, nothing was written
+            synchronized (lock) {
+                Protocol.writeStreamError(os, req.getCodec(), req.getId(), ex);
+            }
+        } finally {
+            streams.remove(req.getId());
+            if (items instanceof AutoCloseable closeable) {
+                try {
+                    closeable.close();
+                } catch (Exception ex) {
+                    logger.log(Level.WARNING, "Exception occurred closing stream " + req.getMethod(), ex);
+                }
+            }
+        }
+    }
+
+    private static void handleUpload(Server server, Request req, OutputStream os, Object lock, Streams streams)
+            throws IOException {
+        UploadInput data = streams.getUpload(req.getId());
+        Object result = null;
+        Exception exception = null;
+        try {
+            data.start(n -> {
+                synchronized (lock) {
+                    Protocol.writeUploadDemand(os, req.getId(), n);
+                }
+            });
+            result = server.handleUpload(req.getMethod(), req.getPayload(), data);
+        } catch (Exception ex) {
+            exception = ex;
+        } finally {
+            // chunks still arriving are dropped
+            streams.remove(req.getId());
+            data.close();
+        }
+        respond(server, req, result, exception, os, lock);
+    }
+
+    private static Response handleItem(Server server, Request item) {
+        try {
+            Object result = server.dispatch(item);
+            return new Response(item.getCodec(), item.getId(), StatusCode.GOOD_RESPONSE, result);
         } catch (Exception ex) {
-            logger.log(Level.SEVERE, "Exception occurred in connection on port " + server.getPort(), ex);
+            return new Response(item.getCodec(), item.getId(), StatusCode.BAD_RESPONSE, Protocol.message(ex));
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,130 @@
+package dev.bodewig.jcoprocessor.procbridge;
+
+import dev.bodewig.jcoprocessor.util.Numeric;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Converts decoded payloads to Java types with MethodHandles looked up once per
+ * type
+ * <p>
+ * The Codecs decode numbers as the smallest fitting type and Lists and Maps as
+ * JSONArray and JSONObject, the JSON Codec also decodes primitive arrays as
+ * JSONArray. Numeric types therefore accept any Number, primitive arrays
+ * accept a JSONArray or List of Numbers, Lists and Maps accept their JSON form
+ * and all other types are cast.
+ *
+ * @author Lars Bodewig
+ */
+final class Conversions {
+
+    private Conversions() {
+    }
+
+    /**
+     * Get a converter from a decoded payload to the given type
+     *
+     * @param type the target type
+     * @return a MethodHandle of type {@code (Object)type}
+     */
+    static MethodHandle converter(Class<?> type) {
+        Class<?> boxed = MethodType.methodType(type).wrap().returnType();
+        String name;
+        Class<?> owner = Conversions.class;
+        if (boxed == Integer.class) {
+            owner = Numeric.class;
+            name = "intValue";
+        } else if (boxed == Long.class) {
+            owner = Numeric.class;
+            name = "longValue";
+        } else if (boxed == Double.class) {
+            owner = Numeric.class;
+            name = "doubleValue";
+        } else if (boxed == Float.class) {
+            name = "floatValue";
+        } else if (type == double[].class) {
+            name = "doubleArray";
+        } else if (type == long[].class) {
+            name = "longArray";
+        } else if (type == int[].class) {
+            name = "intArray";
+        } else if (type == List.class) {
+            name = "list";
+        } else if (type == Map.class) {
+            name = "map";
+        } else {
+            return MethodHandles.identity(Object.class).asType(MethodType.methodType(type, Object.class));
+        }
+        try {
+            Class<?> result = MethodType.methodType(type).unwrap().returnType();
+            MethodHandle handle = MethodHandles.lookup().findStatic(owner, name,
+                    MethodType.methodType(result, Object.class));
+            return handle.asType(MethodType.methodType(type, Object.class));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static float floatValue(Object value) {
+        return (float) Numeric.doubleValue(value);
+    }
+
+    private static double[] doubleArray(Object value) {
+        if (value instanceof JSONArray array) {
+            double[] result = new double[array.length()];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = array.getDouble(i);
+            }
+            return result;
+        } else if (value instanceof List<?> list) {
+            return list.stream().mapToDouble(Numeric::doubleValue).toArray();
+        }
+        return (double[]) value;
+    }
+
+    private static long[] longArray(Object value) {
+        if (value instanceof JSONArray array) {
+            long[] result = new long[array.length()];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = array.getLong(i);
+            }
+            return result;
+        } else if (value instanceof List<?> list) {
+            return list.stream().mapToLong(Numeric::longValue).toArray();
+        }
+        return (long[]) value;
+    }
+
+    private static int[] intArray(Object value) {
+        if (value instanceof JSONArray array) {
+            int[] result = new int[array.length()];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = array.getInt(i);
+            }
+            return result;
+        } else if (value instanceof List<?> list) {
+            return list.stream().mapToInt(Numeric::intValue).toArray();
+        }
+        return (int[]) value;
+    }
+
+    private static List<?> list(Object value) {
+        if (value instanceof JSONArray array) {
+            return array.toList();
+        }
+        return (List<?>) value;
+    }
+
+    private static Map<?, ?> map(Object value) {
+        if (value instanceof JSONObject object) {
+            return object.toMap();
+        }
+        return (Map<?, ?>) value;
+    }
+}
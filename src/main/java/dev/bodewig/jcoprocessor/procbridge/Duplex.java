@@ -0,0 +1,192 @@
+package dev.bodewig.jcoprocessor.procbridge;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.Objects;
+
+/**
+ * A bidirectional byte stream between a Client and a Server independent of the
+ * Transport
+ *
+ * @author Lars Bodewig
+ */
+final class Duplex implements Closeable {
+
+    /**
+     * The size of the buffers per connection, frames of up to this size are read
+     * and written in a single system call
+     */
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    private final String name;
+    private final InputStream in;
+    private final OutputStream out;
+    private final Closeable closeable;
+    private volatile boolean closed;
+
+    private Duplex(String name, InputStream in, OutputStream out, Closeable closeable) {
+        this.name = name;
+        this.in = in;
+        this.out = out;
+        this.closeable = closeable;
+    }
+
+    /**
+     * Creates a Duplex over a TCP socket with Nagle's algorithm disabled, as
+     * each frame is flushed at once
+     *
+     * @param socket the connected socket
+     * @return the Duplex
+     * @throws IOException if the socket streams are not available
+     */
+    static Duplex of(Socket socket) throws IOException {
+        socket.setTcpNoDelay(true);
+        return new Duplex("port " + socket.getLocalPort(),
+                new FrameInputStream(socket.getInputStream()), new FrameOutputStream(socket.getOutputStream()), socket);
+    }
+
+    /**
+     * Creates a Duplex over a pair of streams, e.g. the pipes of a process
+     *
+     * @param in   the stream to read from, buffered by the Duplex
+     * @param out  the stream to write to, buffered by the Duplex and flushed
+     *             after each frame
+     * @param name the name used in thread names and log messages
+     * @return the Duplex
+     */
+    static Duplex of(InputStream in, OutputStream out, String name) {
+        return new Duplex(name, new FrameInputStream(in), new FrameOutputStream(out), () -> {
+            try (in; out) {
+                // close both
+            }
+        });
+    }
+
+    /**
+     * Creates a Duplex over a blocking socket channel
+     * <p>
+     * The streams of {@link java.nio.channels.Channels} synchronize reads and
+     * writes on the same lock, which blocks writing while a reader waits for a
+     * response, so the channel is adapted directly.
+     *
+     * @param channel the connected channel
+     * @param name    the name used in thread names and log messages
+     * @return the Duplex
+     */
+    static Duplex of(SocketChannel channel, String name) {
+        InputStream in = new InputStream() {
+            private final byte[] one = new byte[1];
+
+            @Override
+            public int read() throws IOException {
+                int n;
+                do {
+                    n = read(one, 0, 1);
+                } while (n == 0);
+                return n == -1 ? -1 : one[0] & 0xff;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                Objects.checkFromIndexSize(off, len, b.length);
+                if (len == 0) {
+                    return 0;
+                }
+                return channel.read(ByteBuffer.wrap(b, off, len));
+            }
+        };
+        OutputStream out = new OutputStream() {
+            private final byte[] one = new byte[1];
+
+            @Override
+            public void write(int b) throws IOException {
+                one[0] = (byte) b;
+                write(one, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                ByteBuffer buf = ByteBuffer.wrap(b, off, len);
+                while (buf.hasRemaining()) {
+                    channel.write(buf);
+                }
+            }
+        };
+        return new Duplex(name, new FrameInputStream(in), new FrameOutputStream(out), channel);
+    }
+
+    /**
+     * Get the name
+     *
+     * @return the name used in thread names and log messages
+     */
+    String getName() {
+        return name;
+    }
+
+    /**
+     * Get the stream to read from
+     *
+     * @return the InputStream
+     */
+    InputStream getInputStream() {
+        return in;
+    }
+
+    /**
+     * Get the stream to write to
+     *
+     * @return the OutputStream
+     */
+    OutputStream getOutputStream() {
+        return out;
+    }
+
+    /**
+     * Return if the Duplex was closed
+     *
+     * @return if the Duplex was closed
+     */
+    boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        closeable.close();
+    }
+
+    /**
+     * A buffered stream to read frames from that owns the buffer their headers
+     * are read into, only used by the single reading thread of a connection
+     */
+    static final class FrameInputStream extends BufferedInputStream {
+
+        final ByteBuffer header = ByteBuffer.allocate(Protocol.HEADER_SIZE);
+
+        FrameInputStream(InputStream in) {
+            super(in, BUFFER_SIZE);
+        }
+    }
+
+    /**
+     * A buffered stream to write frames to that owns the buffer their headers
+     * are encoded into, only used while holding the write lock of a connection
+     */
+    static final class FrameOutputStream extends BufferedOutputStream {
+
+        final ByteBuffer header = ByteBuffer.allocate(Protocol.HEADER_SIZE);
+
+        FrameOutputStream(OutputStream out) {
+            super(out, BUFFER_SIZE);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package dev.bodewig.jcoprocessor.procbridge;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a method of a Server as the handler of requests to a method name
+ * <p>
+ * The method takes no parameter, the payload as its only parameter or the
+ * elements of a List payload as its parameters and returns the response
+ * payload. Numeric parameters accept any Number, primitive arrays, Lists and
+ * Maps accept their decoded JSON form and other parameter types are cast. A
+ * returned CompletionStage is awaited. The handlers are bound once when the
+ * Server is created and take precedence over
+ * {@link IDelegate#handleRequest(String, Object)}.
+ *
+ * @author Lars Bodewig
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface Handler {
+
+    /**
+     * Get the handled method name
+     *
+     * @return the method name, the name of the annotated method if empty
+     */
+    String value() default "";
+}
@@ -1,5 +1,9 @@
 package dev.bodewig.jcoprocessor.procbridge;
 
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+
 /**
  * Defines how the Server handles requests
  *
@@ -14,11 +18,58 @@ public interface IDelegate {
      * according to the method.
      * <p>
      * Payload types are: Boolean, Double, Integer, JSONArray, JSONObject, Long,
-     * String
+     * String. Requests using the BINARY Codec may additionally contain double[],
+     * long[], int[] and byte[].
      *
      * @param method  the requested method
      * @param payload the requested payload
      * @return the response payload
      */
     Object handleRequest(String method, Object payload);
+
+    /**
+     * Defines how the Server handles requests with a raw byte payload that is
+     * passed through without encoding
+     *
+     * @param method  the requested method
+     * @param payload the requested payload
+     * @return the response payload from its position to its limit
+     * @throws UnsupportedOperationException if raw requests are not supported
+     */
+    default ByteBuffer handleBytes(String method, ByteBuffer payload) {
+        throw new UnsupportedOperationException("Raw requests are not supported");
+    }
+
+    /**
+     * Defines how the Server handles requests answered with a stream of items.
+     * The items are sent one by one as the Client requests them, so the result
+     * never has to be held in memory as a whole. If the Iterator is
+     * AutoCloseable, it is closed when the stream ends or is cancelled.
+     *
+     * @param method  the requested method
+     * @param payload the requested payload
+     * @return the items to send
+     * @throws UnsupportedOperationException if streams are not supported
+     */
+    default Iterator<?> handleStream(String method, Object payload) {
+        throw new UnsupportedOperationException("Streams are not supported");
+    }
+
+    /**
+     * Defines how the Server handles requests with a body the Client sends as a
+     * stream of chunks. The chunks are read from the given InputStream as they
+     * arrive and the Client only sends more once the handler has consumed the
+     * previous ones, so a slow handler throttles the Client instead of buffering
+     * the whole body. Reading fails with an IOException if the Client aborts the
+     * upload.
+     *
+     * @param method  the requested method
+     * @param payload the requested payload
+     * @param data    the uploaded data, closed when the handler returns
+     * @return the response payload
+     * @throws UnsupportedOperationException if uploads are not supported
+     */
+    default Object handleUpload(String method, Object payload, InputStream data) {
+        throw new UnsupportedOperationException("Uploads are not supported");
+    }
 }
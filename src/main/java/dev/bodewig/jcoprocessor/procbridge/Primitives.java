@@ -0,0 +1,197 @@
+package dev.bodewig.jcoprocessor.procbridge;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.Function;
+import java.util.function.IntUnaryOperator;
+import java.util.function.LongUnaryOperator;
+import java.util.function.UnaryOperator;
+
+/**
+ * Encodes primitive values and arrays as raw little endian bodies, so requests
+ * of a single number or a primitive array are passed through without any
+ * boxing
+ *
+ * @author Lars Bodewig
+ */
+final class Primitives {
+
+    private Primitives() {
+    }
+
+    /**
+     * Encodes a double
+     *
+     * @param value the value
+     * @return the body flipped for reading
+     */
+    static ByteBuffer encode(double value) {
+        return allocate(Double.BYTES).putDouble(0, value);
+    }
+
+    /**
+     * Encodes a long
+     *
+     * @param value the value
+     * @return the body flipped for reading
+     */
+    static ByteBuffer encode(long value) {
+        return allocate(Long.BYTES).putLong(0, value);
+    }
+
+    /**
+     * Encodes an int
+     *
+     * @param value the value
+     * @return the body flipped for reading
+     */
+    static ByteBuffer encode(int value) {
+        return allocate(Integer.BYTES).putInt(0, value);
+    }
+
+    /**
+     * Encodes a double array
+     *
+     * @param values the values
+     * @return the body flipped for reading
+     */
+    static ByteBuffer encode(double[] values) {
+        ByteBuffer buf = allocate(values.length * Double.BYTES);
+        buf.asDoubleBuffer().put(values);
+        return buf;
+    }
+
+    /**
+     * Encodes a long array
+     *
+     * @param values the values
+     * @return the body flipped for reading
+     */
+    static ByteBuffer encode(long[] values) {
+        ByteBuffer buf = allocate(values.length * Long.BYTES);
+        buf.asLongBuffer().put(values);
+        return buf;
+    }
+
+    /**
+     * Decodes a double
+     *
+     * @param body the body
+     * @return the value
+     * @throws IllegalArgumentException if the body does not hold a single double
+     */
+    static double decodeDouble(ByteBuffer body) {
+        return order(body, Double.BYTES, true).getDouble(body.position());
+    }
+
+    /**
+     * Decodes a long
+     *
+     * @param body the body
+     * @return the value
+     * @throws IllegalArgumentException if the body does not hold a single long
+     */
+    static long decodeLong(ByteBuffer body) {
+        return order(body, Long.BYTES, true).getLong(body.position());
+    }
+
+    /**
+     * Decodes an int
+     *
+     * @param body the body
+     * @return the value
+     * @throws IllegalArgumentException if the body does not hold a single int
+     */
+    static int decodeInt(ByteBuffer body) {
+        return order(body, Integer.BYTES, true).getInt(body.position());
+    }
+
+    /**
+     * Decodes a double array
+     *
+     * @param body the body
+     * @return the values
+     * @throws IllegalArgumentException if the body is not a multiple of 8 bytes
+     */
+    static double[] decodeDoubles(ByteBuffer body) {
+        double[] values = new double[order(body, Double.BYTES, false).remaining() / Double.BYTES];
+        body.asDoubleBuffer().get(values);
+        return values;
+    }
+
+    /**
+     * Decodes a long array
+     *
+     * @param body the body
+     * @return the values
+     * @throws IllegalArgumentException if the body is not a multiple of 8 bytes
+     */
+    static long[] decodeLongs(ByteBuffer body) {
+        long[] values = new long[order(body, Long.BYTES, false).remaining() / Long.BYTES];
+        body.asLongBuffer().get(values);
+        return values;
+    }
+
+    /**
+     * Adapts a handler of a double to raw bodies
+     *
+     * @param handler the handler
+     * @return the raw handler
+     */
+    static Function<ByteBuffer, ByteBuffer> ofDouble(DoubleUnaryOperator handler) {
+        return body -> encode(handler.applyAsDouble(decodeDouble(body)));
+    }
+
+    /**
+     * Adapts a handler of a long to raw bodies
+     *
+     * @param handler the handler
+     * @return the raw handler
+     */
+    static Function<ByteBuffer, ByteBuffer> ofLong(LongUnaryOperator handler) {
+        return body -> encode(handler.applyAsLong(decodeLong(body)));
+    }
+
+    /**
+     * Adapts a handler of an int to raw bodies
+     *
+     * @param handler the handler
+     * @return the raw handler
+     */
+    static Function<ByteBuffer, ByteBuffer> ofInt(IntUnaryOperator handler) {
+        return body -> encode(handler.applyAsInt(decodeInt(body)));
+    }
+
+    /**
+     * Adapts a handler of a double array to raw bodies
+     *
+     * @param handler the handler
+     * @return the raw handler
+     */
+    static Function<ByteBuffer, ByteBuffer> ofDoubles(UnaryOperator<double[]> handler) {
+        return body -> encode(handler.apply(decodeDoubles(body)));
+    }
+
+    /**
+     * Adapts a handler of a long array to raw bodies
+     *
+     * @param handler the handler
+     * @return the raw handler
+     */
+    static Function<ByteBuffer, ByteBuffer> ofLongs(UnaryOperator<long[]> handler) {
+        return body -> encode(handler.apply(decodeLongs(body)));
+    }
+
+    private static ByteBuffer allocate(int size) {
+        return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static ByteBuffer order(ByteBuffer body, int size, boolean single) {
+        int remaining = body.remaining();
+        if (single ? remaining != size : remaining % size != 0) {
+            throw new IllegalArgumentException("Invalid primitive body of " + remaining + " bytes");
+        }
+        return body.order(ByteOrder.LITTLE_ENDIAN);
+    }
+}
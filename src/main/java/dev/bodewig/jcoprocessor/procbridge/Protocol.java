@@ -1,11 +1,17 @@
 package dev.bodewig.jcoprocessor.procbridge;
 
+import org.json.JSONArray;
 import org.json.JSONObject;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.charset.StandardCharsets;
-import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 
 import static dev.bodewig.jcoprocessor.procbridge.ProtocolException.*;
@@ -20,240 +26,1027 @@ public final class Protocol {
 
     private static final byte[] FLAG = {'p', 'b'};
 
-    private static Optional<Map.Entry<StatusCode, JSONObject>> read(InputStream stream)
-            throws IOException, ProtocolException {
-        int b;
+    /**
+     * Flag in the second reserved byte to pass the body through as raw bytes
+     * instead of encoding it with the Codec
+     */
+    static final int RAW = 0x01;
 
-        // 1. FLAG
-        b = stream.read();
-        if (b == -1) {
-            return Optional.empty();
+    /**
+     * Flag in the second reserved byte to pass a raw payload through shared
+     * memory, the body only contains a descriptor of the mapped region
+     */
+    static final int SHARED = 0x02;
+
+    /**
+     * Flag in the second reserved byte to send multiple requests or responses in
+     * one frame, the body holds a list with an entry per item under each Key
+     */
+    static final int BATCH = 0x04;
+
+    /**
+     * Flag in the second reserved byte for frames of a stream, a request with
+     * this flag is answered with a response frame per item
+     */
+    static final int STREAM = 0x08;
+
+    /**
+     * Flag in the second reserved byte for the last frame of a stream
+     */
+    static final int END = 0x10;
+
+    /**
+     * Flag in the second reserved byte for a stream frame granting the sender
+     * more items, the body is the 4-byte number of items. Together with END the
+     * stream is cancelled.
+     */
+    static final int DEMAND = 0x20;
+
+    /**
+     * Flag in the second reserved byte for a request whose data follows in raw
+     * STREAM frames as the Server demands them
+     */
+    static final int UPLOAD = 0x40;
+
+    /**
+     * Flag in the second reserved byte for an encoded body compressed with
+     * Deflater, preceded by its uncompressed length
+     */
+    static final int COMPRESSED = 0x80;
+
+    /**
+     * The maximum size of the data in a single upload frame
+     */
+    static final int UPLOAD_CHUNK_SIZE = 64 * 1024;
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    /**
+     * The size of a frame header in bytes
+     */
+    static final int HEADER_SIZE = 15;
+
+    /**
+     * The header of a frame
+     */
+    static final class Header {
+        final StatusCode statusCode;
+        final Codec codec;
+        final int flags;
+        final int id;
+        final int length;
+
+        Header(StatusCode statusCode, Codec codec, int flags, int id, int length) {
+            this.statusCode = statusCode;
+            this.codec = codec;
+            this.flags = flags;
+            this.id = id;
+            this.length = length;
         }
-        if (b != FLAG[0]) {
-            throw new ProtocolException(UNRECOGNIZED_PROTOCOL);
+
+        boolean isRaw() {
+            return (flags & RAW) != 0;
         }
-        b = stream.read();
-        if (b == -1 || b != FLAG[1]) {
-            throw new ProtocolException(UNRECOGNIZED_PROTOCOL);
+
+        boolean isShared() {
+            return (flags & SHARED) != 0;
         }
 
-        // 2. VERSION
-        b = stream.read();
-        if (b == -1) {
-            throw new ProtocolException(INCOMPLETE_DATA);
+        boolean isBatch() {
+            return (flags & BATCH) != 0;
         }
-        if (b != Versions.CURRENT[0]) {
-            throw new ProtocolException(INCOMPATIBLE_VERSION);
+
+        boolean isStream() {
+            return (flags & STREAM) != 0;
+        }
+
+        boolean isEnd() {
+            return (flags & END) != 0;
+        }
+
+        boolean isDemand() {
+            return (flags & DEMAND) != 0;
         }
-        b = stream.read();
-        if (b == -1) {
+
+        boolean isCompressed() {
+            return (flags & COMPRESSED) != 0;
+        }
+    }
+
+    /**
+     * Reads a header in a single operation
+     * <p>
+     * The streams of a Duplex bring their own header buffer, which is reused as
+     * only a single thread reads from a connection.
+     *
+     * @param stream the stream to read from
+     * @return the header or empty at the end of the stream
+     * @throws IOException       if reading fails
+     * @throws ProtocolException if the data does not match the protocol
+     */
+    static Optional<Header> readHeader(InputStream stream) throws IOException, ProtocolException {
+        ByteBuffer buf = stream instanceof Duplex.FrameInputStream frames ? frames.header.clear()
+                : ByteBuffer.allocate(HEADER_SIZE);
+        int n = stream.readNBytes(buf.array(), 0, HEADER_SIZE);
+        if (n == 0) {
+            return Optional.empty();
+        }
+        if (n != HEADER_SIZE) {
             throw new ProtocolException(INCOMPLETE_DATA);
         }
-        if (b != Versions.CURRENT[1]) {
+        return Optional.of(parseHeader(buf));
+    }
+
+    /**
+     * Parses a header from a buffer holding at least {@link #HEADER_SIZE} bytes
+     *
+     * @param buf the buffer to read from, its position is advanced past the
+     *            header
+     * @return the header
+     * @throws ProtocolException if the data does not match the protocol
+     */
+    static Header parseHeader(ByteBuffer buf) throws ProtocolException {
+        // 1. FLAG
+        if (buf.get() != FLAG[0] || buf.get() != FLAG[1]) {
+            throw new ProtocolException(UNRECOGNIZED_PROTOCOL);
+        }
+
+        // 2. VERSION
+        if (buf.get() != Versions.CURRENT[0] || buf.get() != Versions.CURRENT[1]) {
             throw new ProtocolException(INCOMPATIBLE_VERSION);
         }
 
         // 3. STATUS CODE
-        b = stream.read();
-        if (b == -1) {
-            throw new ProtocolException(INCOMPLETE_DATA);
-        }
-        StatusCode statusCode = StatusCode.fromRawValue(b);
+        StatusCode statusCode = StatusCode.fromRawValue(buf.get() & 0xff);
         if (statusCode == null) {
             throw new ProtocolException(INVALID_STATUS_CODE);
         }
 
-        // 4. RESERVED BYTES (2 bytes)
-        b = stream.read();
-        if (b == -1) {
-            throw new ProtocolException(INCOMPLETE_DATA);
+        // 4. RESERVED BYTES (Codec and flags)
+        Codec codec = Codec.fromRawValue(buf.get() & 0xff);
+        if (codec == null) {
+            throw new ProtocolException(UNSUPPORTED_CODEC);
         }
-        b = stream.read();
-        if (b == -1) {
-            throw new ProtocolException(INCOMPLETE_DATA);
+        int flags = buf.get() & 0xff;
+
+        // 5. REQUEST ID and 6. LENGTH (little endian)
+        int id = (buf.get() & 0xff) | (buf.get() & 0xff) << 8 | (buf.get() & 0xff) << 16 | (buf.get() & 0xff) << 24;
+        int bodyLen = (buf.get() & 0xff) | (buf.get() & 0xff) << 8 | (buf.get() & 0xff) << 16
+                | (buf.get() & 0xff) << 24;
+        if (bodyLen < 0) {
+            throw new ProtocolException(INVALID_BODY);
         }
 
-        // 5. LENGTH (little endian)
-        int bodyLen;
-        b = stream.read();
-        if (b == -1) {
-            throw new ProtocolException(INCOMPLETE_DATA);
+        return new Header(statusCode, codec, flags, id, bodyLen);
+    }
+
+    /**
+     * Decodes a request from a complete body
+     *
+     * @param header the header of the request
+     * @param body   the body from its position to its limit, its position is
+     *               advanced past the body
+     * @return the request
+     * @throws IOException       if mapping a shared payload fails
+     * @throws ProtocolException if the data does not match the protocol
+     */
+    static Request decodeRequest(Header header, ByteBuffer body) throws IOException, ProtocolException {
+        if (header.statusCode != StatusCode.REQUEST) {
+            throw new ProtocolException(INVALID_STATUS_CODE);
         }
-        bodyLen = b;
-        b = stream.read();
-        if (b == -1) {
-            throw new ProtocolException(INCOMPLETE_DATA);
+        if (header.isDemand()) {
+            if (body.remaining() != 4) {
+                throw new ProtocolException(INVALID_BODY);
+            }
+            return demand(header, body.order(ByteOrder.LITTLE_ENDIAN).getInt());
         }
-        bodyLen |= (b << 8);
-        b = stream.read();
-        if (b == -1) {
-            throw new ProtocolException(INCOMPLETE_DATA);
+        if (header.isRaw() && header.isStream()) {
+            ByteBuffer chunk = ByteBuffer.allocate(body.remaining()).put(body).flip();
+            return new Request(header.codec, header.id, "", chunk, header.flags);
         }
-        bodyLen |= (b << 16);
-        b = stream.read();
-        if (b == -1) {
-            throw new ProtocolException(INCOMPLETE_DATA);
+        if (header.isRaw()) {
+            if (body.remaining() < 4) {
+                throw new ProtocolException(INVALID_BODY);
+            }
+            int methodLen = (body.get() & 0xff) | (body.get() & 0xff) << 8 | (body.get() & 0xff) << 16
+                    | (body.get() & 0xff) << 24;
+            if (methodLen < 0 || methodLen > body.remaining()) {
+                throw new ProtocolException(INVALID_BODY);
+            }
+            byte[] method = new byte[methodLen];
+            body.get(method);
+            ByteBuffer payload;
+            if (header.isShared()) {
+                byte[] descriptor = new byte[body.remaining()];
+                body.get(descriptor);
+                payload = SharedMemory.map(descriptor);
+            } else {
+                payload = ByteBuffer.allocate(body.remaining()).put(body).flip();
+            }
+            return new Request(header.codec, header.id, new String(method, StandardCharsets.UTF_8), payload, true,
+                    header.isShared());
         }
-        bodyLen |= (b << 24);
-
-        // 6. JSON OBJECT
-        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-        int readCount;
-        int restCount = bodyLen;
-        byte[] buf = new byte[Math.min(bodyLen, 1024 * 1024)];
-        while ((readCount = stream.read(buf, 0, Math.min(buf.length, restCount))) != -1) {
-            buffer.write(buf, 0, readCount);
-            restCount -= readCount;
-            if (restCount == 0) {
-                break;
+        byte[] buf = new byte[body.remaining()];
+        body.get(buf);
+        return decodeRequest(header, decodeBody(header, buf));
+    }
+
+    private static Request decodeRequest(Header header, Map<Key, Object> body) throws ProtocolException {
+        if (header.isBatch()) {
+            JSONArray methods = list(body.get(Key.METHOD));
+            JSONArray payloads = list(body.get(Key.PAYLOAD));
+            if (methods.length() != payloads.length()) {
+                throw new ProtocolException(INVALID_BODY);
             }
+            List<Request> items = new ArrayList<>(methods.length());
+            for (int i = 0; i < methods.length(); i++) {
+                items.add(request(header, unwrap(methods.opt(i)), unwrap(payloads.opt(i)), 0));
+            }
+            return new Request(header.codec, header.id, items);
         }
+        return request(header, body.get(Key.METHOD), body.get(Key.PAYLOAD), header.flags & (STREAM | UPLOAD));
+    }
 
-        if (buffer.size() != bodyLen) {
-            throw new ProtocolException(INCOMPLETE_DATA);
+    private static Request request(Header header, Object method, Object payload, int flags) {
+        if (method instanceof Integer methodId && flags == 0) {
+            return new Request(header.codec, header.id, methodId, payload);
+        }
+        return new Request(header.codec, header.id, Objects.toString(method, ""), payload, flags);
+    }
+
+    private static Request demand(Header header, int n) throws ProtocolException {
+        if (n < 0 || (n == 0) != header.isEnd()) {
+            throw new ProtocolException(INVALID_BODY);
+        }
+        return new Request(header.codec, header.id, "", n, header.flags);
+    }
+
+    private static JSONArray list(Object value) throws ProtocolException {
+        if (value == null) {
+            return new JSONArray();
+        } else if (value instanceof JSONArray a) {
+            return a;
         }
+        throw new ProtocolException(INVALID_BODY);
+    }
+
+    private static Object unwrap(Object value) {
+        return JSONObject.NULL.equals(value) ? null : value;
+    }
 
-        buffer.flush();
-        buf = buffer.toByteArray();
+    static Map<Key, Object> readBody(InputStream stream, Header header) throws IOException, ProtocolException {
+        // 7. BODY, read to its exact size and decoded in place
+        byte[] buf = new byte[header.length];
+        if (stream.readNBytes(buf, 0, buf.length) != buf.length) {
+            throw new ProtocolException(INCOMPLETE_DATA);
+        }
+        return decodeBody(header, buf);
+    }
 
+    private static Map<Key, Object> decodeBody(Header header, byte[] buf) throws ProtocolException {
+        if (header.isCompressed()) {
+            buf = Compression.decompress(buf, 0, buf.length);
+        }
         try {
-            String jsonText = new String(buf, StandardCharsets.UTF_8);
-            JSONObject body = new JSONObject(jsonText);
-            return Optional.of(new AbstractMap.SimpleEntry<>(statusCode, body));
+            return header.codec.decode(buf);
         } catch (Exception ex) {
             throw new ProtocolException(INVALID_BODY);
         }
     }
 
+    /**
+     * Reads the remaining body of a raw frame
+     *
+     * @param stream the stream to read from
+     * @param length the number of bytes to read
+     * @param into   the buffer to read into, cleared before reading, or null to
+     *               allocate a new one
+     * @return the buffer flipped for reading, a new one if into is too small
+     */
+    static ByteBuffer readRawBody(InputStream stream, int length, ByteBuffer into) throws IOException {
+        ByteBuffer buf;
+        if (into != null && into.capacity() >= length) {
+            buf = into.clear();
+        } else {
+            buf = ByteBuffer.allocate(length);
+        }
+        if (buf.hasArray()) {
+            if (stream.readNBytes(buf.array(), buf.arrayOffset() + buf.position(), length) != length) {
+                throw new ProtocolException(INCOMPLETE_DATA);
+            }
+            buf.position(buf.position() + length);
+        } else {
+            byte[] chunk = new byte[Math.min(length, CHUNK_SIZE)];
+            int rest = length;
+            while (rest > 0) {
+                int n = stream.readNBytes(chunk, 0, Math.min(chunk.length, rest));
+                if (n == 0) {
+                    throw new ProtocolException(INCOMPLETE_DATA);
+                }
+                buf.put(chunk, 0, n);
+                rest -= n;
+            }
+        }
+        return buf.flip();
+    }
+
+    private static String readRawMethod(InputStream stream, Header header) throws IOException {
+        byte[] len = stream.readNBytes(4);
+        if (len.length != 4) {
+            throw new ProtocolException(INCOMPLETE_DATA);
+        }
+        int methodLen = (len[0] & 0xff) | (len[1] & 0xff) << 8 | (len[2] & 0xff) << 16 | (len[3] & 0xff) << 24;
+        if (methodLen < 0 || methodLen > header.length - 4) {
+            throw new ProtocolException(INVALID_BODY);
+        }
+        byte[] method = stream.readNBytes(methodLen);
+        if (method.length != methodLen) {
+            throw new ProtocolException(INCOMPLETE_DATA);
+        }
+        return new String(method, StandardCharsets.UTF_8);
+    }
+
     /**
      * Reads a request from the given InputStream if available
      *
      * @param stream the stream to read from
-     * @return an optional tuple of the request method and payload
+     * @return an optional request with id, method and payload
      * @throws IOException       if reading fails
      * @throws ProtocolException if the data does not match the protocol
      */
-    public static Optional<Map.Entry<String, Object>> readRequest(InputStream stream)
-            throws IOException, ProtocolException {
-        return read(stream).map(entry -> {
-            StatusCode statusCode = entry.getKey();
-            JSONObject body = entry.getValue();
-            if (statusCode != StatusCode.REQUEST) {
-                throw new ProtocolException(INVALID_STATUS_CODE);
-            }
-            String method = body.optString(Key.METHOD.toString());
-            Object payload = body.opt(Key.PAYLOAD.toString());
-            return new AbstractMap.SimpleEntry<>(method, payload);
-        });
+    public static Optional<Request> readRequest(InputStream stream) throws IOException, ProtocolException {
+        Header header = readHeader(stream).orElse(null);
+        if (header == null) {
+            return Optional.empty();
+        }
+        if (header.statusCode != StatusCode.REQUEST) {
+            throw new ProtocolException(INVALID_STATUS_CODE);
+        }
+        if (header.isDemand()) {
+            return Optional.of(demand(header, readDemand(stream, header)));
+        }
+        if (header.isRaw() && header.isStream()) {
+            ByteBuffer chunk = readRawBody(stream, header.length, null);
+            return Optional.of(new Request(header.codec, header.id, "", chunk, header.flags));
+        }
+        if (header.isRaw()) {
+            String method = readRawMethod(stream, header);
+            int payloadLen = header.length - 4 - method.getBytes(StandardCharsets.UTF_8).length;
+            ByteBuffer payload = header.isShared() ? SharedMemory.read(stream, payloadLen)
+                    : readRawBody(stream, payloadLen, null);
+            return Optional.of(new Request(header.codec, header.id, method, payload, true, header.isShared()));
+        }
+        return Optional.of(decodeRequest(header, readBody(stream, header)));
+    }
+
+    /**
+     * Reads the number of items or chunks granted by a demand
+     *
+     * @param stream the stream to read from
+     * @param header the header of the demand
+     * @return the number, 0 if the stream is cancelled
+     * @throws IOException       if reading fails
+     * @throws ProtocolException if the data does not match the protocol
+     */
+    static int readDemand(InputStream stream, Header header) throws IOException, ProtocolException {
+        if (header.length != 4) {
+            throw new ProtocolException(INVALID_BODY);
+        }
+        return readRawBody(stream, 4, null).order(ByteOrder.LITTLE_ENDIAN).getInt();
     }
 
     /**
      * Reads a response from the given InputStream if available
      *
      * @param stream the stream to read from
-     * @return an optional tuple of the response StatusCode and payload
+     * @return an optional response with request id, StatusCode and payload
      * @throws IOException       if reading fails
      * @throws ProtocolException if the data does not match the protocol
      */
-    public static Optional<Map.Entry<StatusCode, Object>> readResponse(InputStream stream)
+    public static Optional<Response> readResponse(InputStream stream) throws IOException, ProtocolException {
+        Header header = readHeader(stream).orElse(null);
+        if (header == null) {
+            return Optional.empty();
+        }
+        return Optional.of(readResponse(stream, header, null));
+    }
+
+    static Response readResponse(InputStream stream, Header header, ByteBuffer into)
             throws IOException, ProtocolException {
-        return read(stream).map(entry -> {
-            StatusCode statusCode = entry.getKey();
-            JSONObject body = entry.getValue();
-            if (statusCode == StatusCode.GOOD_RESPONSE) {
-                return new AbstractMap.SimpleEntry<>(StatusCode.GOOD_RESPONSE, body.opt(Key.PAYLOAD.toString()));
-            } else if (statusCode == StatusCode.BAD_RESPONSE) {
-                return new AbstractMap.SimpleEntry<>(StatusCode.BAD_RESPONSE, body.optString(Key.MESSAGE.toString()));
-            } else {
-                throw new ProtocolException(INVALID_STATUS_CODE);
+        if (header.statusCode == StatusCode.GOOD_RESPONSE) {
+            if (header.isRaw()) {
+                ByteBuffer payload = header.isShared() ? SharedMemory.read(stream, header.length)
+                        : readRawBody(stream, header.length, into);
+                return new Response(header.codec, header.id, StatusCode.GOOD_RESPONSE, payload);
             }
-        });
+            Map<Key, Object> body = readBody(stream, header);
+            if (header.isBatch()) {
+                return new Response(header.codec, header.id, StatusCode.GOOD_RESPONSE, decodeItems(header, body));
+            }
+            return new Response(header.codec, header.id, StatusCode.GOOD_RESPONSE, body.get(Key.PAYLOAD));
+        } else if (header.statusCode == StatusCode.BAD_RESPONSE) {
+            Map<Key, Object> body = readBody(stream, header);
+            return new Response(header.codec, header.id, StatusCode.BAD_RESPONSE,
+                    Objects.toString(body.get(Key.MESSAGE), ""));
+        } else {
+            throw new ProtocolException(INVALID_STATUS_CODE);
+        }
+    }
+
+    private static List<Response> decodeItems(Header header, Map<Key, Object> body) throws ProtocolException {
+        // an item failed if it has a message
+        JSONArray payloads = list(body.get(Key.PAYLOAD));
+        JSONArray messages = list(body.get(Key.MESSAGE));
+        if (payloads.length() != messages.length()) {
+            throw new ProtocolException(INVALID_BODY);
+        }
+        List<Response> items = new ArrayList<>(payloads.length());
+        for (int i = 0; i < payloads.length(); i++) {
+            Object message = unwrap(messages.opt(i));
+            items.add(message != null ? new Response(header.codec, header.id, StatusCode.BAD_RESPONSE, message)
+                    : new Response(header.codec, header.id, StatusCode.GOOD_RESPONSE, unwrap(payloads.opt(i))));
+        }
+        return items;
     }
 
-    private static void write(OutputStream stream, StatusCode statusCode, JSONObject body) throws IOException {
-        // 1. FLAG 'p', 'b'
-        stream.write(FLAG);
+    private static void write(OutputStream stream, Codec codec, StatusCode statusCode, int id,
+            Map<Key, Object> body) throws IOException {
+        write(stream, codec, 0, statusCode, id, body, -1);
+    }
 
-        // 2. VERSION
-        stream.write(Versions.CURRENT);
+    private static void write(OutputStream stream, Codec codec, int flags, StatusCode statusCode, int id,
+            Map<Key, Object> body) throws IOException {
+        write(stream, codec, flags, statusCode, id, body, -1);
+    }
 
-        // 3. STATUS CODE
-        stream.write(statusCode.rawValue);
-
-        // 4. RESERVED BYTES (2 bytes)
-        stream.write(0);
-        stream.write(0);
-
-        // make json object
-        byte[] buf = body.toString().getBytes(StandardCharsets.UTF_8);
-
-        // 5. LENGTH (4-byte, little endian)
-        int len = buf.length;
-        int b0 = len & 0xff;
-        int b1 = (len & 0xff00) >> 8;
-        int b2 = (len & 0xff0000) >> 16;
-        int b3 = (len & 0xff000000) >> 24;
-        stream.write(b0);
-        stream.write(b1);
-        stream.write(b2);
-        stream.write(b3);
-
-        // 6. JSON OBJECT
+    private static void write(OutputStream stream, Codec codec, int flags, StatusCode statusCode, int id,
+            Map<Key, Object> body, int compressionThreshold) throws IOException {
+        // encode body before writing anything to not leave a partial frame
+        byte[] buf = codec.encode(body);
+        if (compressionThreshold >= 0 && buf.length >= compressionThreshold) {
+            byte[] compressed = Compression.compress(buf);
+            if (compressed != null) {
+                buf = compressed;
+                flags |= COMPRESSED;
+            }
+        }
+
+        writeHeader(stream, codec, flags, statusCode, id, buf.length);
+
+        // 7. BODY
         stream.write(buf);
 
         stream.flush();
     }
 
+    private static void writeRaw(OutputStream stream, StatusCode statusCode, int id, byte[] prefix,
+            ByteBuffer payload, boolean shared) throws IOException {
+        if (shared) {
+            byte[] descriptor = SharedMemory.write(payload);
+            try {
+                writeRaw(stream, statusCode, SHARED, id, prefix, ByteBuffer.wrap(descriptor));
+            } catch (IOException | RuntimeException ex) {
+                SharedMemory.delete(descriptor);
+                throw ex;
+            }
+        } else {
+            writeRaw(stream, statusCode, 0, id, prefix, payload);
+        }
+    }
+
+    private static void writeRaw(OutputStream stream, StatusCode statusCode, int flags, int id, byte[] prefix,
+            ByteBuffer payload) throws IOException {
+        ByteBuffer buf = payload.duplicate();
+        int length = Math.addExact(prefix.length, buf.remaining());
+
+        writeHeader(stream, Codec.JSON, RAW | flags, statusCode, id, length);
+
+        // 7. BODY
+        stream.write(prefix);
+        if (buf.hasArray()) {
+            stream.write(buf.array(), buf.arrayOffset() + buf.position(), buf.remaining());
+        } else {
+            byte[] chunk = new byte[Math.min(buf.remaining(), CHUNK_SIZE)];
+            while (buf.hasRemaining()) {
+                int n = Math.min(chunk.length, buf.remaining());
+                buf.get(chunk, 0, n);
+                stream.write(chunk, 0, n);
+            }
+        }
+
+        stream.flush();
+    }
+
+    private static void writeHeader(OutputStream stream, Codec codec, int flags, StatusCode statusCode, int id,
+            int length) throws IOException {
+        // frames are written under the lock of the stream, so its header buffer is reused
+        ByteBuffer header = (stream instanceof Duplex.FrameOutputStream frames ? frames.header.clear()
+                : ByteBuffer.allocate(HEADER_SIZE)).order(ByteOrder.LITTLE_ENDIAN)
+                // 1. FLAG 'p', 'b'
+                .put(FLAG)
+                // 2. VERSION
+                .put(Versions.CURRENT)
+                // 3. STATUS CODE
+                .put((byte) statusCode.rawValue)
+                // 4. RESERVED BYTES (Codec and flags)
+                .put((byte) codec.rawValue)
+                .put((byte) flags)
+                // 5. REQUEST ID (4-byte, little endian)
+                .putInt(id)
+                // 6. LENGTH (4-byte, little endian)
+                .putInt(length);
+        stream.write(header.array());
+    }
+
+    /**
+     * Writes a non-successful response to the given OutputStream
+     *
+     * @param stream    the stream to write to
+     * @param id        the id of the answered request
+     * @param exception the Exception to send
+     * @throws IOException if writing fails
+     */
+    public static void writeBadResponse(OutputStream stream, int id, Exception exception) throws IOException {
+        writeBadResponse(stream, Codec.JSON, id, exception);
+    }
+
     /**
      * Writes a non-successful response to the given OutputStream
      *
      * @param stream    the stream to write to
+     * @param codec     the Codec to encode the body with
+     * @param id        the id of the answered request
      * @param exception the Exception to send
      * @throws IOException if writing fails
      */
-    public static void writeBadResponse(OutputStream stream, Exception exception) throws IOException {
-        JSONObject body = new JSONObject();
+    public static void writeBadResponse(OutputStream stream, Codec codec, int id, Exception exception)
+            throws IOException {
+        Map<Key, Object> body = new EnumMap<>(Key.class);
         if (exception != null) {
-            try (StringWriter sw = new StringWriter(); PrintWriter pw = new PrintWriter(sw)) {
-                exception.printStackTrace(pw);
-                body.put(Key.MESSAGE.toString(), sw.toString());
-            }
+            body.put(Key.MESSAGE, message(exception));
         }
-        write(stream, StatusCode.BAD_RESPONSE, body);
+        write(stream, codec, StatusCode.BAD_RESPONSE, id, body);
+    }
+
+    /**
+     * Formats an Exception as message of a non-successful response
+     *
+     * @param exception the Exception to send
+     * @return the stack trace of the Exception
+     */
+    static String message(Exception exception) {
+        StringWriter sw = new StringWriter();
+        exception.printStackTrace(new PrintWriter(sw));
+        return sw.toString();
+    }
+
+    /**
+     * Writes a successful response to the given OutputStream
+     *
+     * @param stream  the stream to write to
+     * @param id      the id of the answered request
+     * @param payload the response payload
+     * @throws IOException if writing fails
+     */
+    public static void writeGoodResponse(OutputStream stream, int id, Object payload) throws IOException {
+        writeGoodResponse(stream, Codec.JSON, id, payload);
     }
 
     /**
      * Writes a successful response to the given OutputStream
      *
      * @param stream  the stream to write to
+     * @param codec   the Codec to encode the body with
+     * @param id      the id of the answered request
      * @param payload the response payload
      * @throws IOException if writing fails
      */
-    public static void writeGoodResponse(OutputStream stream, Object payload) throws IOException {
-        JSONObject body = new JSONObject();
+    public static void writeGoodResponse(OutputStream stream, Codec codec, int id, Object payload)
+            throws IOException {
+        writeGoodResponse(stream, codec, id, payload, -1);
+    }
+
+    /**
+     * Writes a successful response to the given OutputStream
+     *
+     * @param stream               the stream to write to
+     * @param codec                the Codec to encode the body with
+     * @param id                   the id of the answered request
+     * @param payload              the response payload
+     * @param compressionThreshold the minimum size of the encoded body to
+     *                             compress it, -1 to never compress
+     * @throws IOException if writing fails
+     */
+    public static void writeGoodResponse(OutputStream stream, Codec codec, int id, Object payload,
+            int compressionThreshold) throws IOException {
+        Map<Key, Object> body = new EnumMap<>(Key.class);
         if (payload != null) {
-            body.put(Key.PAYLOAD.toString(), payload);
+            body.put(Key.PAYLOAD, payload);
         }
-        write(stream, StatusCode.GOOD_RESPONSE, body);
+        write(stream, codec, 0, StatusCode.GOOD_RESPONSE, id, body, compressionThreshold);
+    }
+
+    /**
+     * Writes a request to the given OutputStream
+     *
+     * @param stream  the stream to write to
+     * @param id      the id to correlate the response with
+     * @param method  the method to request
+     * @param payload the request payload
+     * @throws IOException if writing fails
+     */
+    public static void writeRequest(OutputStream stream, int id, String method, Object payload)
+            throws IOException {
+        writeRequest(stream, Codec.JSON, id, method, payload);
     }
 
     /**
      * Writes a request to the given OutputStream
      *
      * @param stream  the stream to write to
+     * @param codec   the Codec to encode the body with
+     * @param id      the id to correlate the response with
      * @param method  the method to request
      * @param payload the request payload
      * @throws IOException if writing fails
      */
-    public static void writeRequest(OutputStream stream, String method, Object payload) throws IOException {
-        JSONObject body = new JSONObject();
+    public static void writeRequest(OutputStream stream, Codec codec, int id, String method, Object payload)
+            throws IOException {
+        writeRequest(stream, codec, id, method, payload, -1);
+    }
+
+    /**
+     * Writes a request to the given OutputStream
+     *
+     * @param stream               the stream to write to
+     * @param codec                the Codec to encode the body with
+     * @param id                   the id to correlate the response with
+     * @param method               the method to request
+     * @param payload              the request payload
+     * @param compressionThreshold the minimum size of the encoded body to
+     *                             compress it, -1 to never compress
+     * @throws IOException if writing fails
+     */
+    public static void writeRequest(OutputStream stream, Codec codec, int id, String method, Object payload,
+            int compressionThreshold) throws IOException {
+        Map<Key, Object> body = new EnumMap<>(Key.class);
         if (method != null) {
-            body.put(Key.METHOD.toString(), method);
+            body.put(Key.METHOD, method);
         }
         if (payload != null) {
-            body.put(Key.PAYLOAD.toString(), payload);
+            body.put(Key.PAYLOAD, payload);
         }
-        write(stream, StatusCode.REQUEST, body);
+        write(stream, codec, 0, StatusCode.REQUEST, id, body, compressionThreshold);
+    }
+
+    /**
+     * Writes a request to a method by its id to the given OutputStream
+     *
+     * @param stream               the stream to write to
+     * @param codec                the Codec to encode the body with
+     * @param id                   the id to correlate the response with
+     * @param methodId             the id of the method to request as announced
+     *                             by {@value Server#ROUTES_METHOD}
+     * @param payload              the request payload
+     * @param compressionThreshold the minimum size of the encoded body to
+     *                             compress it, -1 to never compress
+     * @throws IOException if writing fails
+     */
+    public static void writeRequest(OutputStream stream, Codec codec, int id, int methodId, Object payload,
+            int compressionThreshold) throws IOException {
+        Map<Key, Object> body = new EnumMap<>(Key.class);
+        body.put(Key.METHOD, methodId);
+        if (payload != null) {
+            body.put(Key.PAYLOAD, payload);
+        }
+        write(stream, codec, 0, StatusCode.REQUEST, id, body, compressionThreshold);
+    }
+
+    /**
+     * Writes multiple requests as one frame to the given OutputStream
+     *
+     * @param stream   the stream to write to
+     * @param codec    the Codec to encode the body with
+     * @param id       the id to correlate the responses with
+     * @param methods  the methods to request, names or Integer method ids
+     * @param payloads the request payloads, one per method
+     * @throws IOException if writing fails
+     */
+    public static void writeBatchRequest(OutputStream stream, Codec codec, int id, List<?> methods,
+            List<?> payloads) throws IOException {
+        writeBatchRequest(stream, codec, id, methods, payloads, -1);
+    }
+
+    /**
+     * Writes multiple requests as one frame to the given OutputStream
+     *
+     * @param stream               the stream to write to
+     * @param codec                the Codec to encode the body with
+     * @param id                   the id to correlate the responses with
+     * @param methods              the methods to request, names or Integer
+     *                             method ids
+     * @param payloads             the request payloads, one per method
+     * @param compressionThreshold the minimum size of the encoded body to
+     *                             compress it, -1 to never compress
+     * @throws IOException if writing fails
+     */
+    public static void writeBatchRequest(OutputStream stream, Codec codec, int id, List<?> methods,
+            List<?> payloads, int compressionThreshold) throws IOException {
+        if (methods.size() != payloads.size()) {
+            throw new IllegalArgumentException("Expected " + methods.size() + " payloads but got " + payloads.size());
+        }
+        Map<Key, Object> body = new EnumMap<>(Key.class);
+        body.put(Key.METHOD, methods);
+        body.put(Key.PAYLOAD, payloads);
+        write(stream, codec, BATCH, StatusCode.REQUEST, id, body, compressionThreshold);
+    }
+
+    /**
+     * Writes the responses to a batch request as one frame to the given
+     * OutputStream
+     *
+     * @param stream the stream to write to
+     * @param codec  the Codec to encode the body with
+     * @param id     the id of the answered request
+     * @param items  a response per item of the request in the same order, the
+     *               payload of a non-successful response is its message
+     * @throws IOException if writing fails
+     */
+    public static void writeBatchResponse(OutputStream stream, Codec codec, int id, List<Response> items)
+            throws IOException {
+        writeBatchResponse(stream, codec, id, items, -1);
+    }
+
+    /**
+     * Writes the responses to a batch request as one frame to the given
+     * OutputStream
+     *
+     * @param stream               the stream to write to
+     * @param codec                the Codec to encode the body with
+     * @param id                   the id of the answered request
+     * @param items                a response per item of the request in the
+     *                             same order, the payload of a non-successful
+     *                             response is its message
+     * @param compressionThreshold the minimum size of the encoded body to
+     *                             compress it, -1 to never compress
+     * @throws IOException if writing fails
+     */
+    public static void writeBatchResponse(OutputStream stream, Codec codec, int id, List<Response> items,
+            int compressionThreshold) throws IOException {
+        List<Object> payloads = new ArrayList<>(items.size());
+        List<Object> messages = new ArrayList<>(items.size());
+        for (Response item : items) {
+            boolean good = item.getStatusCode() == StatusCode.GOOD_RESPONSE;
+            payloads.add(good ? item.getPayload() : null);
+            messages.add(good ? null : Objects.toString(item.getPayload(), ServerException.UNKNOWN_SERVER_ERROR));
+        }
+        Map<Key, Object> body = new EnumMap<>(Key.class);
+        body.put(Key.PAYLOAD, payloads);
+        body.put(Key.MESSAGE, messages);
+        write(stream, codec, BATCH, StatusCode.GOOD_RESPONSE, id, body, compressionThreshold);
+    }
+
+    /**
+     * Writes a request to be answered with a stream of items to the given
+     * OutputStream
+     * <p>
+     * The Server only sends as many items as granted by
+     * {@link #writeDemand(OutputStream, int, int)}.
+     *
+     * @param stream  the stream to write to
+     * @param codec   the Codec to encode the body with
+     * @param id      the id to correlate the items with
+     * @param method  the method to request
+     * @param payload the request payload
+     * @throws IOException if writing fails
+     */
+    public static void writeStreamRequest(OutputStream stream, Codec codec, int id, String method, Object payload)
+            throws IOException {
+        Map<Key, Object> body = new EnumMap<>(Key.class);
+        if (method != null) {
+            body.put(Key.METHOD, method);
+        }
+        if (payload != null) {
+            body.put(Key.PAYLOAD, payload);
+        }
+        write(stream, codec, STREAM, StatusCode.REQUEST, id, body);
+    }
+
+    /**
+     * Writes a demand granting the Server to send more items of a stream to the
+     * given OutputStream
+     *
+     * @param stream the stream to write to
+     * @param id     the id of the stream request
+     * @param n      the number of additional items, positive
+     * @throws IOException if writing fails
+     */
+    public static void writeDemand(OutputStream stream, int id, int n) throws IOException {
+        if (n <= 0) {
+            throw new IllegalArgumentException("Invalid demand: " + n);
+        }
+        writeDemand(stream, StatusCode.REQUEST, STREAM | DEMAND, id, n);
+    }
+
+    /**
+     * Writes a demand cancelling a stream or an upload to the given OutputStream
+     *
+     * @param stream the stream to write to
+     * @param id     the id of the stream request
+     * @throws IOException if writing fails
+     */
+    public static void writeCancel(OutputStream stream, int id) throws IOException {
+        writeDemand(stream, StatusCode.REQUEST, STREAM | DEMAND | END, id, 0);
+    }
+
+    private static void writeDemand(OutputStream stream, StatusCode statusCode, int flags, int id, int n)
+            throws IOException {
+        writeHeader(stream, Codec.JSON, flags, statusCode, id, 4);
+        stream.write(new byte[] {(byte) n, (byte) (n >> 8), (byte) (n >> 16), (byte) (n >> 24)});
+        stream.flush();
+    }
+
+    /**
+     * Writes a request whose data follows in chunks to the given OutputStream
+     * <p>
+     * The chunks may only be sent as granted by the Server.
+     *
+     * @param stream  the stream to write to
+     * @param codec   the Codec to encode the body with
+     * @param id      the id to correlate the chunks and the response with
+     * @param method  the method to request
+     * @param payload the request payload besides the data
+     * @throws IOException if writing fails
+     */
+    public static void writeUploadRequest(OutputStream stream, Codec codec, int id, String method, Object payload)
+            throws IOException {
+        Map<Key, Object> body = new EnumMap<>(Key.class);
+        if (method != null) {
+            body.put(Key.METHOD, method);
+        }
+        if (payload != null) {
+            body.put(Key.PAYLOAD, payload);
+        }
+        write(stream, codec, UPLOAD, StatusCode.REQUEST, id, body);
+    }
+
+    /**
+     * Writes a chunk of the data of an upload request to the given OutputStream
+     *
+     * @param stream the stream to write to
+     * @param id     the id of the upload request
+     * @param chunk  the data from its position to its limit, the position is not
+     *               modified
+     * @param last   if this is the last chunk
+     * @throws IOException if writing fails
+     */
+    public static void writeChunk(OutputStream stream, int id, ByteBuffer chunk, boolean last) throws IOException {
+        writeRaw(stream, StatusCode.REQUEST, STREAM | (last ? END : 0), id, new byte[0], chunk);
+    }
+
+    /**
+     * Writes a demand granting the Client to send more chunks of an upload to
+     * the given OutputStream
+     *
+     * @param stream the stream to write to
+     * @param id     the id of the upload request
+     * @param n      the number of additional chunks, positive
+     * @throws IOException if writing fails
+     */
+    public static void writeUploadDemand(OutputStream stream, int id, int n) throws IOException {
+        if (n <= 0) {
+            throw new IllegalArgumentException("Invalid demand: " + n);
+        }
+        writeDemand(stream, StatusCode.GOOD_RESPONSE, STREAM | DEMAND, id, n);
+    }
+
+    /**
+     * Writes an item of a stream to the given OutputStream
+     *
+     * @param stream the stream to write to
+     * @param codec  the Codec to encode the body with
+     * @param id     the id of the stream request
+     * @param item   the item
+     * @throws IOException if writing fails
+     */
+    public static void writeStreamItem(OutputStream stream, Codec codec, int id, Object item) throws IOException {
+        writeStreamItem(stream, codec, id, item, -1);
+    }
+
+    /**
+     * Writes an item of a stream to the given OutputStream
+     *
+     * @param stream               the stream to write to
+     * @param codec                the Codec to encode the body with
+     * @param id                   the id of the stream request
+     * @param item                 the item
+     * @param compressionThreshold the minimum size of the encoded body to
+     *                             compress it, -1 to never compress
+     * @throws IOException if writing fails
+     */
+    public static void writeStreamItem(OutputStream stream, Codec codec, int id, Object item,
+            int compressionThreshold) throws IOException {
+        Map<Key, Object> body = new EnumMap<>(Key.class);
+        if (item != null) {
+            body.put(Key.PAYLOAD, item);
+        }
+        write(stream, codec, STREAM, StatusCode.GOOD_RESPONSE, id, body, compressionThreshold);
+    }
+
+    /**
+     * Writes the end of a stream to the given OutputStream
+     *
+     * @param stream the stream to write to
+     * @param codec  the Codec to encode the body with
+     * @param id     the id of the stream request
+     * @throws IOException if writing fails
+     */
+    public static void writeStreamEnd(OutputStream stream, Codec codec, int id) throws IOException {
+        write(stream, codec, STREAM | END, StatusCode.GOOD_RESPONSE, id, new EnumMap<>(Key.class));
+    }
+
+    /**
+     * Writes the end of a stream that failed to the given OutputStream
+     *
+     * @param stream    the stream to write to
+     * @param codec     the Codec to encode the body with
+     * @param id        the id of the stream request
+     * @param exception the Exception to send
+     * @throws IOException if writing fails
+     */
+    public static void writeStreamError(OutputStream stream, Codec codec, int id, Exception exception)
+            throws IOException {
+        Map<Key, Object> body = new EnumMap<>(Key.class);
+        body.put(Key.MESSAGE, message(exception));
+        write(stream, codec, STREAM | END, StatusCode.BAD_RESPONSE, id, body);
+    }
+
+    /**
+     * Writes a successful response passing the payload through as raw bytes
+     *
+     * @param stream  the stream to write to
+     * @param id      the id of the answered request
+     * @param payload the response payload from its position to its limit, the
+     *                position is not modified
+     * @throws IOException if writing fails
+     */
+    public static void writeRawResponse(OutputStream stream, int id, ByteBuffer payload) throws IOException {
+        writeRawResponse(stream, id, payload, false);
+    }
+
+    /**
+     * Writes a successful response passing the payload through as raw bytes
+     *
+     * @param stream  the stream to write to
+     * @param id      the id of the answered request
+     * @param payload the response payload from its position to its limit, the
+     *                position is not modified
+     * @param shared  if the payload is passed through shared memory and only its
+     *                descriptor is written to the stream
+     * @throws IOException if writing fails
+     */
+    public static void writeRawResponse(OutputStream stream, int id, ByteBuffer payload, boolean shared)
+            throws IOException {
+        writeRaw(stream, StatusCode.GOOD_RESPONSE, id, new byte[0], payload, shared);
+    }
+
+    /**
+     * Writes a request passing the payload through as raw bytes
+     *
+     * @param stream  the stream to write to
+     * @param id      the id to correlate the response with
+     * @param method  the method to request
+     * @param payload the request payload from its position to its limit, the
+     *                position is not modified
+     * @throws IOException if writing fails
+     */
+    public static void writeRawRequest(OutputStream stream, int id, String method, ByteBuffer payload)
+            throws IOException {
+        writeRawRequest(stream, id, method, payload, false);
+    }
+
+    /**
+     * Writes a request passing the payload through as raw bytes
+     *
+     * @param stream  the stream to write to
+     * @param id      the id to correlate the response with
+     * @param method  the method to request
+     * @param payload the request payload from its position to its limit, the
+     *                position is not modified
+     * @param shared  if the payload is passed through shared memory and only its
+     *                descriptor is written to the stream
+     * @throws IOException if writing fails
+     */
+    public static void writeRawRequest(OutputStream stream, int id, String method, ByteBuffer payload,
+            boolean shared) throws IOException {
+        byte[] name = method.getBytes(StandardCharsets.UTF_8);
+        byte[] prefix = new byte[4 + name.length];
+        prefix[0] = (byte) name.length;
+        prefix[1] = (byte) (name.length >> 8);
+        prefix[2] = (byte) (name.length >> 16);
+        prefix[3] = (byte) (name.length >> 24);
+        System.arraycopy(name, 0, prefix, 4, name.length);
+        writeRaw(stream, StatusCode.REQUEST, id, prefix, payload, shared);
     }
 
     private Protocol() {
@@ -33,6 +33,11 @@ public class ProtocolException extends RuntimeException {
      */
     protected static final String INVALID_STATUS_CODE = "Invalid status code";
 
+    /**
+     * The message to indicate an unsupported Codec
+     */
+    protected static final String UNSUPPORTED_CODEC = "Unsupported codec";
+
     /**
      * The message to indicate an unrecognized protocol
      */
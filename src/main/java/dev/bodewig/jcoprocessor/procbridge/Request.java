@@ -0,0 +1,232 @@
+package dev.bodewig.jcoprocessor.procbridge;
+
+import java.util.List;
+
+/**
+ * A request read according to the ProcBridge protocol
+ *
+ * @author Lars Bodewig
+ */
+public final class Request {
+
+    private final Codec codec;
+    private final int id;
+    private final String method;
+    private final Object payload;
+    private final int flags;
+    private final int methodId;
+
+    /**
+     * Creates a new Request
+     *
+     * @param codec   the Codec the request was encoded with
+     * @param id      the request id used to correlate the response
+     * @param method  the requested method
+     * @param payload the request payload
+     */
+    public Request(Codec codec, int id, String method, Object payload) {
+        this(codec, id, method, payload, false);
+    }
+
+    /**
+     * Creates a new Request
+     *
+     * @param codec   the Codec the request was encoded with
+     * @param id      the request id used to correlate the response
+     * @param method  the requested method
+     * @param payload the request payload
+     * @param raw     if the payload is a ByteBuffer passed through as raw bytes
+     */
+    public Request(Codec codec, int id, String method, Object payload, boolean raw) {
+        this(codec, id, method, payload, raw, false);
+    }
+
+    /**
+     * Creates a new Request
+     *
+     * @param codec   the Codec the request was encoded with
+     * @param id      the request id used to correlate the response
+     * @param method  the requested method
+     * @param payload the request payload
+     * @param raw     if the payload is a ByteBuffer passed through as raw bytes
+     * @param shared  if the raw payload was passed through shared memory
+     */
+    public Request(Codec codec, int id, String method, Object payload, boolean raw, boolean shared) {
+        this(codec, id, method, payload, (raw ? Protocol.RAW : 0) | (shared ? Protocol.SHARED : 0));
+    }
+
+    /**
+     * Creates a new batch Request whose payload are the items
+     *
+     * @param codec the Codec the request was encoded with
+     * @param id    the request id used to correlate the responses
+     * @param items the requests of the batch
+     */
+    public Request(Codec codec, int id, List<Request> items) {
+        this(codec, id, "", List.copyOf(items), Protocol.BATCH);
+    }
+
+    /**
+     * Creates a new Request with the flags of its frame
+     *
+     * @param codec   the Codec the request was encoded with
+     * @param id      the request id used to correlate the response
+     * @param method  the requested method
+     * @param payload the request payload
+     * @param flags   the flags of the frame
+     */
+    Request(Codec codec, int id, String method, Object payload, int flags) {
+        this(codec, id, method, payload, flags, -1);
+    }
+
+    /**
+     * Creates a new Request to a method sent by its id
+     *
+     * @param codec    the Codec the request was encoded with
+     * @param id       the request id used to correlate the response
+     * @param methodId the id of the requested method
+     * @param payload  the request payload
+     */
+    public Request(Codec codec, int id, int methodId, Object payload) {
+        this(codec, id, "", payload, 0, methodId);
+    }
+
+    private Request(Codec codec, int id, String method, Object payload, int flags, int methodId) {
+        this.codec = codec;
+        this.id = id;
+        this.method = method;
+        this.payload = payload;
+        this.flags = flags;
+        this.methodId = methodId;
+    }
+
+    /**
+     * Get the Codec
+     *
+     * @return the Codec the request was encoded with
+     */
+    public Codec getCodec() {
+        return codec;
+    }
+
+    /**
+     * Get the request id
+     *
+     * @return the request id
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Get the method
+     *
+     * @return the requested method, empty if it was sent by id
+     */
+    public String getMethod() {
+        return method;
+    }
+
+    /**
+     * Get the id of the method if it was sent instead of the name
+     *
+     * @return the method id, -1 if the method was sent by name
+     */
+    public int getMethodId() {
+        return methodId;
+    }
+
+    /**
+     * Get the payload
+     *
+     * @return the request payload
+     */
+    public Object getPayload() {
+        return payload;
+    }
+
+    /**
+     * Return if the payload is a ByteBuffer passed through as raw bytes
+     *
+     * @return if the request is raw
+     */
+    public boolean isRaw() {
+        return (flags & Protocol.RAW) != 0;
+    }
+
+    /**
+     * Return if the raw payload was passed through shared memory
+     *
+     * @return if the request is shared
+     */
+    public boolean isShared() {
+        return (flags & Protocol.SHARED) != 0;
+    }
+
+    /**
+     * Return if the payload is a List of requests sent in one frame
+     *
+     * @return if the request is a batch
+     */
+    public boolean isBatch() {
+        return (flags & Protocol.BATCH) != 0;
+    }
+
+    /**
+     * Return if the request is answered with a stream of responses
+     *
+     * @return if the request opens a stream
+     */
+    public boolean isStream() {
+        return (flags & (Protocol.STREAM | Protocol.DEMAND | Protocol.RAW)) == Protocol.STREAM;
+    }
+
+    /**
+     * Return if the data of the request follows in chunks
+     *
+     * @return if the request opens an upload
+     */
+    public boolean isUpload() {
+        return (flags & Protocol.UPLOAD) != 0;
+    }
+
+    /**
+     * Return if the request is a chunk of the data of an upload. The payload is
+     * a ByteBuffer with the data.
+     *
+     * @return if the request is a chunk
+     */
+    public boolean isChunk() {
+        return (flags & (Protocol.STREAM | Protocol.RAW)) == (Protocol.STREAM | Protocol.RAW);
+    }
+
+    /**
+     * Return if the request is the last chunk of an upload or cancels a stream
+     *
+     * @return if the request ends a stream
+     */
+    public boolean isEnd() {
+        return (flags & Protocol.END) != 0;
+    }
+
+    /**
+     * Return if the request grants the Server to send more items of a stream or
+     * cancels a stream or an upload. The payload is the Integer number of items,
+     * 0 to cancel.
+     *
+     * @return if the request is a demand
+     */
+    public boolean isDemand() {
+        return (flags & Protocol.DEMAND) != 0;
+    }
+
+    /**
+     * Get the items of a batch request
+     *
+     * @return the requests of the batch, empty if this is not a batch
+     */
+    @SuppressWarnings("unchecked")
+    public List<Request> getItems() {
+        return isBatch() ? (List<Request>) payload : List.of();
+    }
+}
@@ -0,0 +1,65 @@
+package dev.bodewig.jcoprocessor.procbridge;
+
+/**
+ * A response read according to the ProcBridge protocol
+ *
+ * @author Lars Bodewig
+ */
+public final class Response {
+
+    private final Codec codec;
+    private final int id;
+    private final StatusCode statusCode;
+    private final Object payload;
+
+    /**
+     * Creates a new Response
+     *
+     * @param codec      the Codec the response was encoded with
+     * @param id         the id of the answered request
+     * @param statusCode GOOD_RESPONSE or BAD_RESPONSE
+     * @param payload    the response payload or the error message
+     */
+    public Response(Codec codec, int id, StatusCode statusCode, Object payload) {
+        this.codec = codec;
+        this.id = id;
+        this.statusCode = statusCode;
+        this.payload = payload;
+    }
+
+    /**
+     * Get the Codec
+     *
+     * @return the Codec the response was encoded with
+     */
+    public Codec getCodec() {
+        return codec;
+    }
+
+    /**
+     * Get the id of the answered request
+     *
+     * @return the request id
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Get the StatusCode
+     *
+     * @return GOOD_RESPONSE or BAD_RESPONSE
+     */
+    public StatusCode getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * Get the payload
+     *
+     * @return the response payload or the error message
+     */
+    public Object getPayload() {
+        return payload;
+    }
+}
@@ -0,0 +1,161 @@
+package dev.bodewig.jcoprocessor.procbridge;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Receives the items of a stream request and grants the Server to send more as
+ * they are consumed
+ * <p>
+ * At most window items are requested but not yet consumed, so neither side
+ * holds more than that in memory. The response reader adds items without
+ * blocking.
+ *
+ * @author Lars Bodewig
+ */
+final class ResponseStream implements Iterator<Object>, AutoCloseable {
+
+    private static final Object NULL = new Object();
+
+    private final Client client;
+    private final int window;
+    private final long timeout;
+    private final Deque<Object> items = new ArrayDeque<>();
+    private volatile int id;
+    private int consumed;
+    private boolean ended;
+    private RuntimeException failure;
+
+    /**
+     * Creates a new ResponseStream
+     *
+     * @param client  the Client that sent the request
+     * @param window  the maximum number of items requested at once
+     * @param timeout the time to wait for each item, 0 for forever
+     */
+    ResponseStream(Client client, int window, long timeout) {
+        this.client = client;
+        this.window = window;
+        this.timeout = timeout;
+    }
+
+    /**
+     * Set the id of the request, before it is sent
+     *
+     * @param id the request id
+     */
+    void setId(int id) {
+        this.id = id;
+    }
+
+    /**
+     * Adds an item, called by the response reader
+     *
+     * @param item the item
+     */
+    synchronized void accept(Object item) {
+        if (!ended) {
+            items.add(item != null ? item : NULL);
+            notifyAll();
+        }
+    }
+
+    /**
+     * Ends the stream when the request completes
+     *
+     * @param response the final response
+     * @param ex       the exception if the request failed
+     */
+    synchronized void end(Response response, Throwable ex) {
+        if (ended) {
+            return;
+        }
+        if (ex != null) {
+            failure = Client.translate(ex);
+        } else if (response.getStatusCode() != StatusCode.GOOD_RESPONSE) {
+            failure = new ServerException((String) response.getPayload());
+        }
+        ended = true;
+        notifyAll();
+    }
+
+    @Override
+    public boolean hasNext() {
+        boolean timedOut = false;
+        synchronized (this) {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+            while (items.isEmpty() && !ended) {
+                try {
+                    if (timeout <= 0) {
+                        wait();
+                    } else {
+                        long millis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                        if (millis <= 0) {
+                            timedOut = true;
+                            break;
+                        }
+                        wait(millis);
+                    }
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new ClientException(ex);
+                }
+            }
+            if (!items.isEmpty()) {
+                return true;
+            } else if (!timedOut) {
+                if (failure != null) {
+                    throw failure;
+                }
+                return false;
+            }
+        }
+        close();
+        throw new TimeoutException();
+    }
+
+    @Override
+    public Object next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Object item;
+        int demand = 0;
+        synchronized (this) {
+            item = items.poll();
+            if (item == null) {
+                throw new NoSuchElementException(); // closed concurrently
+            }
+            // top up the window once half of it is consumed
+            if (++consumed >= (window + 1) / 2 && !ended) {
+                demand = consumed;
+                consumed = 0;
+            }
+        }
+        if (demand > 0) {
+            client.demand(id, demand);
+        }
+        return item != NULL ? item : null;
+    }
+
+    /**
+     * Cancels the stream if it has not ended yet and discards the remaining
+     * items
+     */
+    @Override
+    public void close() {
+        boolean cancel;
+        synchronized (this) {
+            cancel = !ended;
+            ended = true;
+            items.clear();
+            notifyAll();
+        }
+        if (cancel) {
+            client.cancel(id);
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package dev.bodewig.jcoprocessor.procbridge;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Caches the responses of methods whose result only depends on the method and
+ * payload, so repeated requests are answered without a round trip
+ * <p>
+ * Caching is enabled per method. Responses are keyed by the method and the
+ * payload encoded with the BINARY Codec, the least recently used one is
+ * evicted once the maximum size is reached and entries expire after the time
+ * to live. Concurrent requests with the same key share one request to the
+ * Server. Failed requests are not cached.
+ * <p>
+ * Cached responses are shared by all callers and must not be modified.
+ *
+ * @author Lars Bodewig
+ * @see Client#setResultCache(ResultCache)
+ */
+public final class ResultCache {
+
+    private final int maximumSize;
+    private final long timeToLive;
+    private final Set<String> methods = ConcurrentHashMap.newKeySet();
+    private final Map<CacheKey, Entry> entries;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    private record CacheKey(String method, byte[] payload, int hash) {
+
+        CacheKey(String method, byte[] payload) {
+            this(method, payload, 31 * method.hashCode() + Arrays.hashCode(payload));
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof CacheKey other && hash == other.hash && method.equals(other.method)
+                    && Arrays.equals(payload, other.payload);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private record Entry(CompletableFuture<Object> future, long created) {
+    }
+
+    /**
+     * Creates a new ResultCache without enabled methods
+     *
+     * @param maximumSize      the maximum number of cached responses
+     * @param timeToLiveMillis the time after which a response expires in
+     *                         milliseconds, {@link Client#FOREVER} to keep it
+     *                         until evicted
+     * @throws IllegalArgumentException if a parameter is not positive
+     */
+    public ResultCache(int maximumSize, long timeToLiveMillis) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("Invalid maximum size: " + maximumSize);
+        } else if (timeToLiveMillis < 0) {
+            throw new IllegalArgumentException("Invalid time to live: " + timeToLiveMillis);
+        }
+        this.maximumSize = maximumSize;
+        this.timeToLive = TimeUnit.MILLISECONDS.toNanos(timeToLiveMillis);
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<CacheKey, Entry> eldest) {
+                if (size() > ResultCache.this.maximumSize) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Enables caching the responses of a method
+     *
+     * @param method the method name
+     */
+    public void enable(String method) {
+        methods.add(method);
+    }
+
+    /**
+     * Disables caching the responses of a method and removes its cached ones
+     *
+     * @param method the method name
+     */
+    public void disable(String method) {
+        methods.remove(method);
+        invalidate(method);
+    }
+
+    /**
+     * Get if the responses of a method are cached
+     *
+     * @param method the method name
+     * @return true if enabled
+     */
+    public boolean isEnabled(String method) {
+        return method != null && methods.contains(method);
+    }
+
+    /**
+     * Removes the cached responses of a method
+     *
+     * @param method the method name
+     */
+    public void invalidate(String method) {
+        synchronized (entries) {
+            entries.keySet().removeIf(key -> key.method.equals(method));
+        }
+    }
+
+    /**
+     * Removes all cached responses
+     */
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    /**
+     * Get the maximum number of cached responses
+     *
+     * @return the maximum size
+     */
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    /**
+     * Get the time after which a response expires
+     *
+     * @return the time to live in milliseconds, {@link Client#FOREVER} if
+     *         responses do not expire
+     */
+    public long getTimeToLive() {
+        return TimeUnit.NANOSECONDS.toMillis(timeToLive);
+    }
+
+    /**
+     * Get the number of cached responses, including expired and pending ones
+     *
+     * @return the size
+     */
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * Get the number of requests answered from the cache or joined to a pending
+     * request
+     *
+     * @return the hit count
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Get the number of requests sent to the Server
+     *
+     * @return the miss count
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Get the number of responses evicted because the cache was full
+     *
+     * @return the eviction count
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * Get the cached response or sends the request
+     *
+     * @param <T>     the response type
+     * @param method  the method name
+     * @param payload the request payload
+     * @param request sends the request
+     * @return a future completing with the response
+     */
+    @SuppressWarnings("unchecked")
+    <T> CompletableFuture<T> get(String method, Object payload, Supplier<CompletableFuture<T>> request) {
+        CacheKey key;
+        try {
+            Map<Key, Object> body = new EnumMap<>(Key.class);
+            body.put(Key.PAYLOAD, payload);
+            key = new CacheKey(method, Codec.BINARY.encode(body));
+        } catch (RuntimeException e) {
+            return request.get(); // not encodable, fails when sent
+        }
+        long now = System.nanoTime();
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+            if (entry != null && (timeToLive == 0 || now - entry.created < timeToLive)) {
+                hits.incrementAndGet();
+                return (CompletableFuture<T>) entry.future.copy();
+            }
+            entry = new Entry(new CompletableFuture<>(), now);
+            entries.put(key, entry);
+        }
+        misses.incrementAndGet();
+        Entry pending = entry;
+        CompletableFuture<T> response;
+        try {
+            response = request.get();
+        } catch (RuntimeException e) {
+            response = CompletableFuture.failedFuture(e);
+        }
+        response.whenComplete((result, ex) -> {
+            if (ex != null) {
+                synchronized (entries) {
+                    entries.remove(key, pending);
+                }
+                pending.future.completeExceptionally(ex);
+            } else {
+                pending.future.complete(result);
+            }
+        });
+        return (CompletableFuture<T>) pending.future.copy();
+    }
+}
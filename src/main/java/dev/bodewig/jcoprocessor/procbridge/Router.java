@@ -0,0 +1,327 @@
+package dev.bodewig.jcoprocessor.procbridge;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
+
+/**
+ * Maps method names to handlers bound once as MethodHandles
+ * <p>
+ * Each route gets the next integer id, ids are never reused. The Client learns
+ * the table with a request to {@value Server#ROUTES_METHOD} and then sends the
+ * id instead of the name.
+ *
+ * @author Lars Bodewig
+ */
+final class Router {
+
+    private static final MethodType HANDLER_TYPE = MethodType.methodType(Object.class, Object.class);
+    private static final MethodHandle APPLY;
+    private static final MethodHandle ARGUMENTS;
+    private static final MethodHandle AWAIT;
+    private static final MethodHandle RETURN_NULL = MethodHandles.dropArguments(
+            MethodHandles.constant(Object.class, null), 0, Object.class);
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            APPLY = lookup.findVirtual(Function.class, "apply", HANDLER_TYPE);
+            ARGUMENTS = lookup.findStatic(Router.class, "arguments",
+                    MethodType.methodType(Object[].class, Object.class, int.class));
+            AWAIT = lookup.findStatic(Router.class, "await",
+                    MethodType.methodType(Object.class, CompletionStage.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final Map<String, Route> byName = new ConcurrentHashMap<>();
+    private final Map<String, Function<ByteBuffer, ByteBuffer>> raw = new ConcurrentHashMap<>();
+    private volatile Route[] byId = new Route[0];
+
+    /**
+     * A handler of one method
+     */
+    static final class Route {
+        private final int id;
+        private final String name;
+        private final MethodHandle handle;
+
+        private Route(int id, String name, MethodHandle handle) {
+            this.id = id;
+            this.name = name;
+            this.handle = handle;
+        }
+
+        /**
+         * Get the id sent instead of the name
+         *
+         * @return the method id
+         */
+        int getId() {
+            return id;
+        }
+
+        /**
+         * Get the method name
+         *
+         * @return the method name
+         */
+        String getName() {
+            return name;
+        }
+
+        /**
+         * Calls the handler
+         *
+         * @param payload the request payload
+         * @return the response payload
+         * @throws Exception if the handler fails or the payload has the wrong type
+         */
+        Object invoke(Object payload) throws Exception {
+            try {
+                return (Object) handle.invokeExact(payload);
+            } catch (Exception | Error e) {
+                throw e;
+            } catch (Throwable t) {
+                throw new IllegalStateException(t);
+            }
+        }
+    }
+
+    /**
+     * Adds the methods annotated with {@link Handler} of the given object and its
+     * superclasses, ordered by name so the ids do not depend on reflection order
+     *
+     * @param target the object to bind the handlers to
+     * @throws IllegalArgumentException if a method name is used twice
+     */
+    void scan(Object target) {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        for (Class<?> klass = target.getClass(); klass != null && klass != Object.class;
+                klass = klass.getSuperclass()) {
+            Method[] methods = klass.getDeclaredMethods();
+            Arrays.sort(methods, Comparator.comparing(Method::getName));
+            for (Method method : methods) {
+                Handler handler = method.getAnnotation(Handler.class);
+                if (handler == null || method.isBridge()) {
+                    continue;
+                }
+                String name = name(method);
+                if (byName.containsKey(name) && isOverridden(method, target.getClass())) {
+                    continue; // bound from the subclass already
+                }
+                try {
+                    method.setAccessible(true);
+                    MethodHandle handle = lookup.unreflect(method);
+                    if (!Modifier.isStatic(method.getModifiers())) {
+                        handle = handle.bindTo(target);
+                    }
+                    add(name, handle);
+                } catch (IllegalAccessException | RuntimeException e) {
+                    throw new IllegalArgumentException("Cannot bind handler " + method, e);
+                }
+            }
+        }
+    }
+
+    private static boolean isOverridden(Method method, Class<?> klass) {
+        try {
+            return !klass.getMethod(method.getName(), method.getParameterTypes()).equals(method);
+        } catch (NoSuchMethodException e) {
+            return false; // not public
+        }
+    }
+
+    /**
+     * Adds a handler Function that receives the payload cast to the given type
+     *
+     * @param <P>     the payload type
+     * @param name    the method name
+     * @param type    the payload type
+     * @param handler the handler
+     * @throws IllegalArgumentException if the method name is already used
+     */
+    <P> void add(String name, Class<P> type, Function<? super P, ?> handler) {
+        add(name, APPLY.bindTo(handler).asType(MethodType.methodType(Object.class, type)));
+    }
+
+    /**
+     * Adds the abstract methods of a service interface bound to an
+     * implementation, named like methods annotated with {@link Handler}
+     *
+     * @param <T>            the service type
+     * @param service        the service interface
+     * @param implementation the implementation
+     * @throws IllegalArgumentException if the service is not an interface or a
+     *                                  method name is already used
+     */
+    <T> void export(Class<T> service, T implementation) {
+        if (!service.isInterface()) {
+            throw new IllegalArgumentException("Not an interface: " + service.getName());
+        }
+        Method[] methods = service.getMethods();
+        Arrays.sort(methods, Comparator.comparing(Method::getName));
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        for (Method method : methods) {
+            if (!Modifier.isAbstract(method.getModifiers())) {
+                continue; // default methods run in the Client
+            }
+            try {
+                method.setAccessible(true);
+                add(name(method), lookup.unreflect(method).bindTo(implementation));
+            } catch (IllegalAccessException | RuntimeException e) {
+                throw new IllegalArgumentException("Cannot bind handler " + method, e);
+            }
+        }
+    }
+
+    /**
+     * Get the method name a Java method is routed as
+     *
+     * @param method the Java method
+     * @return the value of its {@link Handler} annotation if present, its name
+     *         otherwise
+     */
+    static String name(Method method) {
+        Handler handler = method.getAnnotation(Handler.class);
+        return handler == null || handler.value().isEmpty() ? method.getName() : handler.value();
+    }
+
+    /**
+     * Adds a bound handler. A handler taking several arguments receives them
+     * from a List payload, a CompletionStage result is awaited.
+     *
+     * @param name   the method name
+     * @param handle the bound handler
+     * @throws IllegalArgumentException if the method name is already used
+     */
+    synchronized void add(String name, MethodHandle handle) {
+        if (byName.containsKey(name) || Server.ROUTES_METHOD.equals(name)) {
+            throw new IllegalArgumentException("Method already handled: " + name);
+        }
+        MethodType type = handle.type();
+        int n = type.parameterCount();
+        for (int i = 0; i < n; i++) {
+            handle = MethodHandles.filterArguments(handle, i, Conversions.converter(type.parameterType(i)));
+        }
+        if (n == 0) {
+            handle = MethodHandles.dropArguments(handle, 0, Object.class);
+        } else if (n > 1) {
+            handle = MethodHandles.filterArguments(handle.asSpreader(Object[].class, n), 0,
+                    MethodHandles.insertArguments(ARGUMENTS, 1, n));
+        }
+        if (type.returnType() == void.class) {
+            handle = MethodHandles.foldArguments(RETURN_NULL, handle.asType(MethodType.methodType(void.class,
+                    Object.class)));
+        } else if (CompletionStage.class.isAssignableFrom(type.returnType())) {
+            handle = MethodHandles.filterReturnValue(handle.asType(MethodType.methodType(CompletionStage.class,
+                    Object.class)), AWAIT);
+        }
+        Route route = new Route(byId.length, name, handle.asType(HANDLER_TYPE));
+        Route[] routes = Arrays.copyOf(byId, byId.length + 1);
+        routes[route.id] = route;
+        byName.put(name, route);
+        byId = routes;
+    }
+
+    /**
+     * Get the route of a method name
+     *
+     * @param name the method name
+     * @return the route, null if the method is not routed
+     */
+    Route get(String name) {
+        return byName.get(name);
+    }
+
+    /**
+     * Get the route of a method id
+     *
+     * @param id the method id
+     * @return the route, null if the id is unknown
+     */
+    Route get(int id) {
+        Route[] routes = byId;
+        return id >= 0 && id < routes.length ? routes[id] : null;
+    }
+
+    /**
+     * Adds a handler of requests with a raw body, a method name may have a raw
+     * handler and a handler of encoded requests
+     *
+     * @param name    the method name
+     * @param handler the handler
+     * @throws IllegalArgumentException if the method name already has a raw
+     *                                  handler
+     */
+    void addRaw(String name, Function<ByteBuffer, ByteBuffer> handler) {
+        if (raw.putIfAbsent(name, handler) != null) {
+            throw new IllegalArgumentException("Method already handled: " + name);
+        }
+    }
+
+    /**
+     * Get the handler of requests with a raw body to a method name
+     *
+     * @param name the method name
+     * @return the handler, null if the method has no raw handler
+     */
+    Function<ByteBuffer, ByteBuffer> getRaw(String name) {
+        return raw.get(name);
+    }
+
+    /**
+     * Get the routed method names by id
+     *
+     * @return the method names, the index is the id
+     */
+    List<String> names() {
+        return Arrays.stream(byId).map(Route::getName).toList();
+    }
+
+    private static Object[] arguments(Object payload, int n) {
+        Object[] values;
+        if (payload instanceof JSONArray array) {
+            values = new Object[array.length()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = array.opt(i); // keeps nested JSONArrays for the converters
+            }
+        } else if (payload instanceof List<?> list) {
+            values = list.toArray();
+        } else {
+            values = null;
+        }
+        if (values == null || values.length != n) {
+            throw new IllegalArgumentException("Expected " + n + " arguments");
+        }
+        for (int i = 0; i < n; i++) {
+            if (JSONObject.NULL.equals(values[i])) {
+                values[i] = null;
+            }
+        }
+        return values;
+    }
+
+    private static Object await(CompletionStage<?> stage) throws Exception {
+        try {
+            return stage.toCompletableFuture().get();
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception cause ? cause : e;
+        }
+    }
+}
@@ -0,0 +1,295 @@
+package dev.bodewig.jcoprocessor.procbridge;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Accepts connections and reads their requests without blocking on a single
+ * selector thread
+ * <p>
+ * Frames are parsed incrementally from a buffer per connection and handled by
+ * the Server executor, except stream and upload requests which wait for
+ * demand or chunks on a thread of their own. Responses are queued per connection frame by frame and
+ * written as the channel accepts them, so neither slow handlers nor slow
+ * readers block other connections. A connection whose queued responses exceed
+ * the high-water mark is not read from until they drain below it again, so a
+ * Client that does not read its responses cannot exhaust the memory of the
+ * Server.
+ *
+ * @author Lars Bodewig
+ */
+final class SelectorListener implements Runnable, Closeable {
+
+    private static final Logger logger = Logger.getLogger(SelectorListener.class.getName());
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The number of queued response bytes per connection above which its
+     * requests are no longer read
+     */
+    private static final int HIGH_WATER_MARK = 4 * BUFFER_SIZE;
+
+    private final Server server;
+    private final ServerSocketChannel serverChannel;
+    private final Executor executor;
+    private final String name;
+    private final Selector selector;
+    private final Set<Session> sessions = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Creates a new SelectorListener
+     *
+     * @param server        the Server handling the requests
+     * @param serverChannel the bound channel to accept connections from
+     * @param executor      the executor used to handle requests
+     * @param name          the name used in log messages
+     * @throws IOException if the selector cannot be opened
+     */
+    SelectorListener(Server server, ServerSocketChannel serverChannel, Executor executor, String name)
+            throws IOException {
+        this.server = server;
+        this.serverChannel = serverChannel;
+        this.executor = executor;
+        this.name = name;
+        this.selector = Selector.open();
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                selector.select();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (key.attachment() instanceof Session session) {
+                        try {
+                            if (key.isReadable()) {
+                                session.read();
+                            }
+                            if (key.isValid() && key.isWritable()) {
+                                session.flush();
+                            }
+                        } catch (IOException | RuntimeException ex) {
+                            logger.log(Level.SEVERE, "Exception occurred in connection on " + name, ex);
+                            session.close();
+                        }
+                    } else if (key.isValid() && key.isAcceptable()) {
+                        accept();
+                    }
+                }
+            }
+        } catch (ClosedSelectorException ignored) {
+            // closed by the Server
+        } catch (IOException ex) {
+            logger.log(Level.SEVERE, "Exception occurred in listener on " + name, ex);
+        } finally {
+            sessions.forEach(Session::close);
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        if (channel.getLocalAddress() instanceof InetSocketAddress) {
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        }
+        SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+        Session session = new Session(channel, key);
+        key.attach(session);
+        sessions.add(session);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try (serverChannel) {
+            selector.close();
+        } finally {
+            sessions.forEach(Session::close);
+        }
+    }
+
+    /**
+     * The state of a single connection
+     */
+    private final class Session {
+        private final SocketChannel channel;
+        private final SelectionKey key;
+        private final Deque<ByteBuffer> out = new ArrayDeque<>();
+        private final Streams streams = new Streams();
+        private boolean closed;
+        private long queued;
+        private ByteBuffer in = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        private Protocol.Header header;
+
+        Session(SocketChannel channel, SelectionKey key) {
+            this.channel = channel;
+            this.key = key;
+        }
+
+        /**
+         * Reads what is available and dispatches all complete frames, only called
+         * by the selector thread
+         */
+        void read() throws IOException {
+            if (channel.read(in) == -1) {
+                close(); // end of stream
+                return;
+            }
+            in.flip();
+            while (true) {
+                if (header == null) {
+                    if (in.remaining() < Protocol.HEADER_SIZE) {
+                        break;
+                    }
+                    header = Protocol.parseHeader(in);
+                }
+                if (in.remaining() < header.length) {
+                    break;
+                }
+                Request req = Protocol.decodeRequest(header, in.slice(in.position(), header.length));
+                in.position(in.position() + header.length);
+                header = null;
+                if (streams.route(req)) {
+                    continue; // demand applied
+                }
+                if (req.isStream() || req.isUpload()) {
+                    // waiting for demand or chunks must not hold a worker of the bounded executor
+                    Thread handler = new Thread(() -> respond(req),
+                            (req.isStream() ? "procbridge-stream-" : "procbridge-upload-") + req.getId() + "-" + name);
+                    handler.setDaemon(true);
+                    handler.start();
+                } else {
+                    executor.execute(() -> respond(req));
+                }
+            }
+            in.compact();
+
+            int required = header != null ? header.length : 0;
+            if (in.capacity() < required || (in.capacity() > BUFFER_SIZE && in.position() <= BUFFER_SIZE
+                    && required <= BUFFER_SIZE)) {
+                // grow for a large body or shrink back afterwards
+                ByteBuffer resized = ByteBuffer.allocate(Math.max(required, BUFFER_SIZE))
+                        .order(ByteOrder.LITTLE_ENDIAN);
+                in = resized.put(in.flip());
+            }
+        }
+
+        private void respond(Request req) {
+            FrameOutput frames = new FrameOutput();
+            try {
+                Connection.handle(server, req, frames, frames, executor, streams);
+            } catch (IOException ex) {
+                if (!isClosed()) {
+                    logger.log(Level.SEVERE, "Exception occurred in connection on " + name, ex);
+                }
+            }
+        }
+
+        private synchronized boolean isClosed() {
+            return closed;
+        }
+
+        private synchronized void enqueue(ByteBuffer frame) throws IOException {
+            if (closed) {
+                throw new IOException("Connection closed");
+            }
+            out.add(frame);
+            queued += frame.remaining();
+            try {
+                if (out.size() > 1) {
+                    interest(); // an earlier frame is still being written
+                } else {
+                    flush();
+                }
+            } catch (IOException | RuntimeException ex) {
+                close();
+            }
+        }
+
+        /**
+         * Writes queued responses until the channel would block and registers
+         * for writability if anything remains
+         */
+        synchronized void flush() throws IOException {
+            while (!out.isEmpty()) {
+                ByteBuffer buf = out.peek();
+                queued -= channel.write(buf);
+                if (buf.hasRemaining()) {
+                    break;
+                }
+                out.poll();
+            }
+            interest();
+        }
+
+        /**
+         * Registers for writability while responses are queued and stops
+         * reading while they exceed the high-water mark
+         */
+        private void interest() {
+            int ops = (queued > HIGH_WATER_MARK ? 0 : SelectionKey.OP_READ)
+                    | (out.isEmpty() ? 0 : SelectionKey.OP_WRITE);
+            if (key.interestOps() != ops) {
+                key.interestOps(ops);
+                selector.wakeup();
+            }
+        }
+
+        void close() {
+            synchronized (this) {
+                closed = true;
+            }
+            streams.cancelAll();
+            sessions.remove(this);
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+        }
+
+        /**
+         * Collects the frames of a response and queues each one when flushed
+         * without copying it again
+         */
+        private final class FrameOutput extends ByteArrayOutputStream {
+
+            @Override
+            public void flush() throws IOException {
+                if (count == 0) {
+                    return;
+                }
+                ByteBuffer frame = ByteBuffer.wrap(buf, 0, count);
+                buf = new byte[32];
+                count = 0;
+                enqueue(frame);
+            }
+        }
+    }
+}
@@ -1,16 +1,77 @@
 package dev.bodewig.jcoprocessor.procbridge;
 
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
-import java.net.Socket;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.Function;
+import java.util.function.IntUnaryOperator;
+import java.util.function.LongUnaryOperator;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+import java.util.logging.Logger;
 
 /**
  * Opens a socket to listen for Client requests and handles them asynchronously
  * <p>
  * Servers should declare a main method accepting the port number as argument to
- * create and start a Server instance as JCoprocess
+ * create and start a Server instance as JCoprocess. If the system property
+ * {@value #SOCKET_PROPERTY} is set, the Server listens on a Unix domain socket at
+ * that path instead and the port is ignored. If the system property
+ * {@value #STDIO_PROPERTY} is true, the Server serves a single connection over
+ * its standard input and output. This way the same main method serves all
+ * transports.
+ * <p>
+ * By default each connection is read by a blocking thread. In non-blocking mode,
+ * enabled by {@link #setNonBlocking(boolean)} or the system property
+ * {@value #NON_BLOCKING_PROPERTY}, a single selector thread reads all
+ * connections and requests are handled by a bounded pool of worker threads.
+ * <p>
+ * The executor handling connections and requests can be replaced with
+ * {@link #setExecutorFactory(Supplier)}, e.g. to use a virtual thread per task
+ * with {@link #useVirtualThreads()} or the system property
+ * {@value #VIRTUAL_THREADS_PROPERTY}. Listening always happens on a dedicated
+ * platform thread that keeps the process alive.
+ * <p>
+ * The items of a batch request are handled one after another unless
+ * {@link #setParallelBatches(boolean)} is enabled.
+ * <p>
+ * Encoded response bodies are compressed above the threshold set with
+ * {@link #setCompressionThreshold(int)} or the system property
+ * {@value #COMPRESSION_PROPERTY}.
+ * <p>
+ * Instead of switching on the method name in
+ * {@link #handleRequest(String, Object)}, methods can be routed to handlers
+ * annotated with {@link Handler} or registered with
+ * {@link #register(String, Class, Function)}. A service interface implemented
+ * by the Server can be routed with {@link #export(Class, Object)} and called
+ * through {@link Client#proxy(Class)}. Routed methods get an integer id that
+ * Clients send instead of the name once they received the routes. Handlers of
+ * a single number or a primitive array registered with e.g.
+ * {@link #registerDouble(String, DoubleUnaryOperator)} receive raw requests
+ * without boxing.
+ * <p>
+ * If the system property {@value #READY_PROPERTY} is true, the Server prints
+ * {@value #READY_MESSAGE} as a line to the standard output once it is listening,
+ * so the parent process does not need to poll the socket. A Server created with
+ * port 0 listens to a free port chosen by the system and reports it in that
+ * line.
  *
  * @author Gong Zhang
  * @author Lars Bodewig
@@ -18,7 +79,60 @@ import java.util.concurrent.Executors;
 public abstract class Server implements IDelegate {
 
     /**
-     * The executor used to handle requests
+     * The system property holding the path of the Unix domain socket to listen
+     * on instead of the port
+     */
+    public static final String SOCKET_PROPERTY = "procbridge.socket";
+
+    /**
+     * The system property to serve requests over the standard input and output
+     * instead of the port
+     */
+    public static final String STDIO_PROPERTY = "procbridge.stdio";
+
+    /**
+     * The system property to read connections with a selector instead of a
+     * thread per connection
+     */
+    public static final String NON_BLOCKING_PROPERTY = "procbridge.nonblocking";
+
+    /**
+     * The system property to handle connections and requests in virtual threads
+     * if the runtime supports them
+     */
+    public static final String VIRTUAL_THREADS_PROPERTY = "procbridge.virtualthreads";
+
+    /**
+     * The system property holding the minimum size of encoded response bodies to
+     * compress
+     */
+    public static final String COMPRESSION_PROPERTY = "procbridge.compression";
+
+    /**
+     * The system property to print {@value #READY_MESSAGE} to the standard output
+     * once the Server is listening
+     */
+    public static final String READY_PROPERTY = "procbridge.ready";
+
+    /**
+     * The line printed to the standard output once the Server is listening,
+     * followed by a space and the bound port if listening to a port
+     */
+    public static final String READY_MESSAGE = "procbridge ready";
+
+    /**
+     * The reserved method answered with the names of the methods routed with
+     * {@link Handler} or {@link #register(String, Class, Function)}, the index
+     * of a name is the id a Client may send instead
+     */
+    public static final String ROUTES_METHOD = "procbridge.routes";
+
+    private static final Logger logger = Logger.getLogger(Server.class.getName());
+
+    private final Router router = new Router();
+
+    /**
+     * The executor used to handle connections and their requests
      */
     protected ExecutorService executor;
 
@@ -27,11 +141,56 @@ public abstract class Server implements IDelegate {
      */
     protected final int port;
 
+    private volatile int localPort = -1;
+
+    /**
+     * The path of the Unix domain socket to listen to, null to listen to the port
+     */
+    protected final Path socketPath;
+
+    /**
+     * If the Server serves requests over the standard input and output
+     */
+    protected final boolean stdio;
+
     /**
      * The socket used to listen
      */
     protected ServerSocket serverSocket;
 
+    /**
+     * The channel used to listen to the Unix domain socket or in non-blocking
+     * mode
+     */
+    protected ServerSocketChannel serverChannel;
+
+    /**
+     * If connections are read by a selector instead of a thread each
+     */
+    protected boolean nonBlocking;
+
+    /**
+     * The number of threads handling requests in non-blocking mode
+     */
+    protected int workerThreads;
+
+    /**
+     * Creates the executor on start, null for the default executor
+     */
+    protected Supplier<? extends ExecutorService> executorFactory;
+
+    /**
+     * If the items of a batch request are handled concurrently by the executor
+     */
+    protected volatile boolean parallelBatches;
+
+    /**
+     * The minimum size of encoded response bodies to compress, -1 if disabled
+     */
+    protected volatile int compressionThreshold;
+
+    private SelectorListener selectorListener;
+
     /**
      * If the Server is running
      */
@@ -39,23 +198,232 @@ public abstract class Server implements IDelegate {
 
     /**
      * Creates a new Server that is not yet running
+     * <p>
+     * The Server listens to the Unix domain socket given by the system property
+     * {@value #SOCKET_PROPERTY} or the standard input if {@value #STDIO_PROPERTY}
+     * is true instead of the port.
      *
      * @param port the port to listen to
      */
     public Server(int port) {
-        this.port = port;
+        this(port, Optional.ofNullable(System.getProperty(SOCKET_PROPERTY)).map(Paths::get).orElse(null),
+                Boolean.getBoolean(STDIO_PROPERTY));
+    }
+
+    /**
+     * Creates a new Server listening to a Unix domain socket that is not yet
+     * running
+     *
+     * @param socketPath the path of the socket to listen to
+     */
+    public Server(Path socketPath) {
+        this(-1, Objects.requireNonNull(socketPath), false);
+    }
+
+    private Server(int port, Path socketPath, boolean stdio) {
+        this.port = socketPath != null || stdio ? -1 : port;
+        this.socketPath = stdio ? null : socketPath;
+        this.stdio = stdio;
+        this.nonBlocking = Boolean.getBoolean(NON_BLOCKING_PROPERTY);
+        this.workerThreads = Runtime.getRuntime().availableProcessors();
+        this.compressionThreshold = Math.max(-1, Integer.getInteger(COMPRESSION_PROPERTY, -1));
+        router.scan(this);
+        if (Boolean.getBoolean(VIRTUAL_THREADS_PROPERTY)) {
+            if (VirtualThreads.isSupported()) {
+                this.executorFactory = VirtualThreads::newVirtualThreadPerTaskExecutor;
+            } else {
+                logger.warning("Virtual threads are not supported, using platform threads");
+            }
+        }
         this.started = false;
         this.executor = null;
         this.serverSocket = null;
+        this.serverChannel = null;
+    }
+
+    /**
+     * Routes requests to a method to a handler Function instead of
+     * {@link #handleRequest(String, Object)}. The handler is bound once, numeric
+     * payloads are converted to the given Number type and other payloads are
+     * cast.
+     *
+     * @param <P>     the payload type
+     * @param method  the method name
+     * @param type    the payload type
+     * @param handler the handler returning the response payload
+     * @throws IllegalArgumentException if the method is already routed
+     */
+    public final <P> void register(String method, Class<P> type, Function<? super P, ?> handler) {
+        router.add(Objects.requireNonNull(method), type, Objects.requireNonNull(handler));
+    }
+
+    /**
+     * Routes the abstract methods of a service interface to an implementation,
+     * usually the Server itself. Clients call them through a proxy of the same
+     * interface created with {@link Client#proxy(Class)}. Methods are named like
+     * handlers annotated with {@link Handler}, arguments of methods taking
+     * several parameters are sent as a List.
+     *
+     * @param <T>            the service type
+     * @param service        the service interface
+     * @param implementation the implementation
+     * @throws IllegalArgumentException if the service is not an interface or a
+     *                                  method is already routed
+     */
+    public final <T> void export(Class<T> service, T implementation) {
+        router.export(service, Objects.requireNonNull(implementation));
+    }
+
+    /**
+     * Routes raw requests of a single double, as sent by
+     * {@link Client#requestDouble(String, double)}, to a handler instead of
+     * {@link #handleBytes(String, ByteBuffer)}. The value is read from and the
+     * result written to the frame body without boxing.
+     *
+     * @param method  the method name
+     * @param handler the handler
+     * @throws IllegalArgumentException if the method already has a raw handler
+     */
+    public final void registerDouble(String method, DoubleUnaryOperator handler) {
+        router.addRaw(Objects.requireNonNull(method), Primitives.ofDouble(Objects.requireNonNull(handler)));
+    }
+
+    /**
+     * Routes raw requests of a single long, as sent by
+     * {@link Client#requestLong(String, long)}, to a handler instead of
+     * {@link #handleBytes(String, ByteBuffer)}
+     *
+     * @param method  the method name
+     * @param handler the handler
+     * @throws IllegalArgumentException if the method already has a raw handler
+     * @see #registerDouble(String, DoubleUnaryOperator)
+     */
+    public final void registerLong(String method, LongUnaryOperator handler) {
+        router.addRaw(Objects.requireNonNull(method), Primitives.ofLong(Objects.requireNonNull(handler)));
+    }
+
+    /**
+     * Routes raw requests of a single int, as sent by
+     * {@link Client#requestInt(String, int)}, to a handler instead of
+     * {@link #handleBytes(String, ByteBuffer)}
+     *
+     * @param method  the method name
+     * @param handler the handler
+     * @throws IllegalArgumentException if the method already has a raw handler
+     * @see #registerDouble(String, DoubleUnaryOperator)
+     */
+    public final void registerInt(String method, IntUnaryOperator handler) {
+        router.addRaw(Objects.requireNonNull(method), Primitives.ofInt(Objects.requireNonNull(handler)));
+    }
+
+    /**
+     * Routes raw requests of a double array, as sent by
+     * {@link Client#requestDoubles(String, double[])}, to a handler instead of
+     * {@link #handleBytes(String, ByteBuffer)}
+     *
+     * @param method  the method name
+     * @param handler the handler
+     * @throws IllegalArgumentException if the method already has a raw handler
+     * @see #registerDouble(String, DoubleUnaryOperator)
+     */
+    public final void registerDoubles(String method, UnaryOperator<double[]> handler) {
+        router.addRaw(Objects.requireNonNull(method), Primitives.ofDoubles(Objects.requireNonNull(handler)));
+    }
+
+    /**
+     * Routes raw requests of a long array, as sent by
+     * {@link Client#requestLongs(String, long[])}, to a handler instead of
+     * {@link #handleBytes(String, ByteBuffer)}
+     *
+     * @param method  the method name
+     * @param handler the handler
+     * @throws IllegalArgumentException if the method already has a raw handler
+     * @see #registerDouble(String, DoubleUnaryOperator)
+     */
+    public final void registerLongs(String method, UnaryOperator<long[]> handler) {
+        router.addRaw(Objects.requireNonNull(method), Primitives.ofLongs(Objects.requireNonNull(handler)));
+    }
+
+    /**
+     * Get the names of the routed methods
+     *
+     * @return the method names, the index is the method id
+     */
+    public final List<String> getRoutes() {
+        return router.names();
+    }
+
+    /**
+     * Handles requests to methods that are not routed, only needed if the Server
+     * does not route all its methods with {@link Handler} or
+     * {@link #register(String, Class, Function)}
+     *
+     * @param method  the requested method
+     * @param payload the requested payload
+     * @return the response payload
+     * @throws IllegalArgumentException always
+     */
+    @Override
+    public Object handleRequest(String method, Object payload) {
+        throw new IllegalArgumentException("Unknown method: " + method);
+    }
+
+    /**
+     * Handles a raw request with its primitive handler or
+     * {@link #handleBytes(String, ByteBuffer)}
+     *
+     * @param method  the requested method
+     * @param payload the raw payload
+     * @return the response payload
+     */
+    ByteBuffer dispatchBytes(String method, ByteBuffer payload) {
+        Function<ByteBuffer, ByteBuffer> handler = router.getRaw(method);
+        return handler != null ? handler.apply(payload) : handleBytes(method, payload);
+    }
+
+    /**
+     * Handles a request with its route or {@link #handleRequest(String, Object)}
+     *
+     * @param req the request, not raw
+     * @return the response payload
+     * @throws Exception if handling fails
+     */
+    Object dispatch(Request req) throws Exception {
+        Router.Route route;
+        if (req.getMethodId() >= 0) {
+            route = router.get(req.getMethodId());
+            if (route == null) {
+                throw new IllegalArgumentException("Unknown method id: " + req.getMethodId());
+            }
+        } else if (ROUTES_METHOD.equals(req.getMethod())) {
+            return router.names();
+        } else {
+            route = router.get(req.getMethod());
+            if (route == null) {
+                return handleRequest(req.getMethod(), req.getPayload());
+            }
+        }
+        return route.invoke(req.getPayload());
     }
 
     /**
      * Get the port
      *
-     * @return the port
+     * @return the bound port while listening to a port created with port 0,
+     *         the port otherwise, -1 if not listening to a port
      */
     public final int getPort() {
-        return port;
+        int localPort = this.localPort;
+        return localPort > 0 ? localPort : port;
+    }
+
+    /**
+     * Get the path of the Unix domain socket
+     *
+     * @return the socket path, null if not listening to a Unix domain socket
+     */
+    public final Path getSocketPath() {
+        return socketPath;
     }
 
     /**
@@ -67,9 +435,143 @@ public abstract class Server implements IDelegate {
         return started;
     }
 
+    /**
+     * Return if the Server serves requests over the standard input and output
+     *
+     * @return if the Server uses the STDIO Transport
+     */
+    public final boolean isStdio() {
+        return stdio;
+    }
+
+    /**
+     * Return if connections are read by a selector instead of a thread each
+     *
+     * @return if the Server is non-blocking
+     */
+    public final synchronized boolean isNonBlocking() {
+        return nonBlocking;
+    }
+
+    /**
+     * Set if connections are read by a selector instead of a thread each. Has no
+     * effect when serving the standard input and output.
+     *
+     * @param nonBlocking if the Server is non-blocking
+     * @throws IllegalStateException if the Server is already running
+     */
+    public final synchronized void setNonBlocking(boolean nonBlocking) {
+        if (started) {
+            throw new IllegalStateException("Server already started");
+        }
+        this.nonBlocking = nonBlocking;
+    }
+
+    /**
+     * Get the number of threads handling requests in non-blocking mode
+     *
+     * @return the number of worker threads
+     */
+    public final synchronized int getWorkerThreads() {
+        return workerThreads;
+    }
+
+    /**
+     * Set the number of threads handling requests in non-blocking mode
+     *
+     * @param workerThreads the number of worker threads, the number of available
+     *                      processors by default
+     * @throws IllegalStateException if the Server is already running
+     */
+    public final synchronized void setWorkerThreads(int workerThreads) {
+        if (started) {
+            throw new IllegalStateException("Server already started");
+        }
+        if (workerThreads < 1) {
+            throw new IllegalArgumentException("Invalid number of worker threads: " + workerThreads);
+        }
+        this.workerThreads = workerThreads;
+    }
+
+    /**
+     * Set the factory creating the executor that handles connections and
+     * requests when the Server starts. The executor is shut down when the Server
+     * stops.
+     *
+     * @param executorFactory the factory, null for a cached thread pool or a pool
+     *                        of {@link #getWorkerThreads()} threads in
+     *                        non-blocking mode
+     * @throws IllegalStateException if the Server is already running
+     */
+    public final synchronized void setExecutorFactory(Supplier<? extends ExecutorService> executorFactory) {
+        if (started) {
+            throw new IllegalStateException("Server already started");
+        }
+        this.executorFactory = executorFactory;
+    }
+
+    /**
+     * Return if the items of a batch request are handled concurrently
+     *
+     * @return if batches are parallel
+     */
+    public final boolean isParallelBatches() {
+        return parallelBatches;
+    }
+
+    /**
+     * Set if the items of a batch request are handled concurrently by the
+     * executor instead of one after another on the thread handling the batch.
+     * The handler must be thread-safe in either case since requests are handled
+     * concurrently.
+     *
+     * @param parallelBatches if batches are parallel, false by default
+     */
+    public final void setParallelBatches(boolean parallelBatches) {
+        this.parallelBatches = parallelBatches;
+    }
+
+    /**
+     * Get the minimum size of encoded response bodies to compress
+     *
+     * @return the threshold in bytes, -1 if disabled
+     */
+    public final int getCompressionThreshold() {
+        return compressionThreshold;
+    }
+
+    /**
+     * Set the minimum size of encoded response bodies to compress. Bodies that
+     * do not get smaller are sent uncompressed, raw payloads are never
+     * compressed. Compressed requests are accepted regardless of this setting.
+     *
+     * @param compressionThreshold the threshold in bytes, -1 to disable (the
+     *                             default)
+     */
+    public final void setCompressionThreshold(int compressionThreshold) {
+        if (compressionThreshold < -1) {
+            throw new IllegalArgumentException("Invalid threshold: " + compressionThreshold);
+        }
+        this.compressionThreshold = compressionThreshold;
+    }
+
+    /**
+     * Handle connections and requests in a new virtual thread each
+     *
+     * @throws UnsupportedOperationException if the runtime does not support
+     *                                       virtual threads
+     * @throws IllegalStateException         if the Server is already running
+     */
+    public final void useVirtualThreads() {
+        if (!VirtualThreads.isSupported()) {
+            throw new UnsupportedOperationException("Virtual threads require Java 21 or later");
+        }
+        setExecutorFactory(VirtualThreads::newVirtualThreadPerTaskExecutor);
+    }
+
     /**
      * Creates a new Executor and opens a socket to accept requests until
-     * interrupted
+     * interrupted, or serves the standard input and output until it is closed
      *
      * @throws IllegalStateException if the Server is already running
      */
@@ -78,21 +580,103 @@ public abstract class Server implements IDelegate {
             throw new IllegalStateException("Server already started");
         }
 
-        final ServerSocket serverSocket;
-        try {
-            serverSocket = new ServerSocket(this.port);
-        } catch (IOException e) {
-            throw new ServerException(e);
+        final ExecutorService executor;
+        if (executorFactory != null) {
+            executor = executorFactory.get();
+        } else if (nonBlocking && !stdio) {
+            executor = Executors.newFixedThreadPool(workerThreads);
+        } else {
+            executor = Executors.newCachedThreadPool();
+        }
+        if (stdio) {
+            OutputStream out = new FileOutputStream(FileDescriptor.out);
+            // keep the protocol stream clean from anything else printed
+            System.setOut(System.err);
+            Duplex duplex = Duplex.of(new FileInputStream(FileDescriptor.in), out, "stdio");
+            Connection conn = new Connection(this, duplex, executor);
+            platformThread("procbridge-stdio", () -> {
+                conn.run();
+                synchronized (Server.this) {
+                    if (started) {
+                        stop(); // the Client is gone
+                    }
+                }
+            });
+        } else if (nonBlocking || socketPath != null) {
+            final ServerSocketChannel channel;
+            final SelectorListener listener;
+            try {
+                channel = openChannel();
+                listener = nonBlocking ? new SelectorListener(this, channel, executor, name()) : null;
+            } catch (IOException e) {
+                executor.shutdown();
+                closeChannel();
+                throw new ServerException(e);
+            }
+            if (listener != null) {
+                this.selectorListener = listener;
+                platformThread("procbridge-selector-" + name().replace(' ', '-'), listener);
+            } else {
+                String name = name();
+                listen(executor, () -> new Connection(this, Duplex.of(channel.accept(), name), executor));
+            }
+        } else {
+            final ServerSocket serverSocket;
+            try {
+                serverSocket = new ServerSocket(this.port);
+            } catch (IOException e) {
+                executor.shutdown();
+                throw new ServerException(e);
+            }
+            this.serverSocket = serverSocket;
+            this.localPort = serverSocket.getLocalPort();
+            listen(executor, () -> new Connection(this, Duplex.of(serverSocket.accept()), executor));
         }
-        this.serverSocket = serverSocket;
-
-        final ExecutorService executor = Executors.newCachedThreadPool();
         this.executor = executor;
-        executor.execute(() -> {
+
+        started = true;
+        if (!stdio && Boolean.getBoolean(READY_PROPERTY)) {
+            System.out.println(getPort() >= 0 ? READY_MESSAGE + " " + getPort() : READY_MESSAGE);
+            System.out.flush();
+        }
+    }
+
+    private ServerSocketChannel openChannel() throws IOException {
+        serverChannel = socketPath != null ? ServerSocketChannel.open(StandardProtocolFamily.UNIX)
+                : ServerSocketChannel.open();
+        serverChannel.bind(socketPath != null ? UnixDomainSocketAddress.of(socketPath) : new InetSocketAddress(port));
+        if (socketPath == null) {
+            localPort = ((InetSocketAddress) serverChannel.getLocalAddress()).getPort();
+        }
+        return serverChannel;
+    }
+
+    private void closeChannel() {
+        if (serverChannel != null) {
+            try {
+                serverChannel.close();
+                if (socketPath != null) {
+                    Files.deleteIfExists(socketPath);
+                }
+            } catch (IOException ignored) {
+            }
+            serverChannel = null;
+        }
+    }
+
+    private String name() {
+        return socketPath != null ? "socket " + socketPath.getFileName() : "port " + getPort();
+    }
+
+    private static void platformThread(String name, Runnable task) {
+        new Thread(task, name).start();
+    }
+
+    private void listen(ExecutorService executor, Acceptor acceptor) {
+        platformThread("procbridge-listener-" + name().replace(' ', '-'), () -> {
             while (!Thread.currentThread().isInterrupted()) {
                 try {
-                    Socket socket = serverSocket.accept();
-                    Connection conn = new Connection(this, socket);
+                    Connection conn = acceptor.accept();
                     synchronized (Server.this) {
                         if (!started) {
                             return; // finish listener
@@ -104,8 +688,6 @@ public abstract class Server implements IDelegate {
                 }
             }
         });
-
-        started = true;
     }
 
     /**
@@ -122,11 +704,24 @@ public abstract class Server implements IDelegate {
         executor = null;
 
         try {
-            serverSocket.close();
+            if (serverSocket != null) {
+                serverSocket.close();
+            }
+            if (selectorListener != null) {
+                selectorListener.close();
+            }
         } catch (IOException ignored) {
         }
+        closeChannel();
         serverSocket = null;
+        selectorListener = null;
+        localPort = -1;
 
         started = false;
     }
+
+    @FunctionalInterface
+    private interface Acceptor {
+        Connection accept() throws IOException;
+    }
 }
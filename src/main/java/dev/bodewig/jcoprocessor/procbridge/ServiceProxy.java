@@ -0,0 +1,136 @@
+package dev.bodewig.jcoprocessor.procbridge;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Proxy;
+import java.lang.reflect.Type;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Sends the calls of a service interface proxy as requests to the Server that
+ * exported the interface
+ * <p>
+ * The method name and the conversion of the response are resolved once per
+ * interface method when the proxy is created, a call only builds the payload
+ * and looks up its stub.
+ *
+ * @author Lars Bodewig
+ * @see Server#export(Class, Object)
+ */
+final class ServiceProxy implements InvocationHandler {
+
+    private static final MethodType CONVERTER_TYPE = MethodType.methodType(Object.class, Object.class);
+
+    private final Client client;
+    private final Class<?> service;
+    private final Map<Method, Stub> stubs = new HashMap<>();
+
+    /**
+     * A precomputed request of one interface method
+     */
+    private static final class Stub {
+        private final String name;
+        private final int arity;
+        private final boolean async;
+        private final boolean nullable;
+        private final MethodHandle converter;
+
+        private Stub(Method method) {
+            name = Router.name(method);
+            arity = method.getParameterCount();
+            async = method.getReturnType() == CompletableFuture.class;
+            Class<?> type = async ? futureType(method) : method.getReturnType();
+            nullable = !type.isPrimitive();
+            converter = type == void.class ? null : Conversions.converter(type).asType(CONVERTER_TYPE);
+        }
+
+        private static Class<?> futureType(Method method) {
+            Type type = method.getGenericReturnType();
+            if (type instanceof ParameterizedType parameterized) {
+                Type argument = parameterized.getActualTypeArguments()[0];
+                if (argument instanceof Class<?> klass) {
+                    return klass;
+                } else if (argument instanceof ParameterizedType raw) {
+                    return (Class<?>) raw.getRawType();
+                }
+            }
+            return Object.class;
+        }
+
+        private Object payload(Object[] args) {
+            return switch (arity) {
+                case 0 -> null;
+                case 1 -> args[0];
+                default -> Arrays.asList(args);
+            };
+        }
+
+        private Object convert(Object response) {
+            if (converter == null || response == null && nullable) {
+                return null;
+            }
+            try {
+                return (Object) converter.invokeExact(response);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable t) {
+                throw new IllegalStateException(t);
+            }
+        }
+    }
+
+    private ServiceProxy(Client client, Class<?> service) {
+        this.client = client;
+        this.service = service;
+        for (Method method : service.getMethods()) {
+            if (Modifier.isAbstract(method.getModifiers())) {
+                stubs.put(method, new Stub(method));
+            }
+        }
+    }
+
+    /**
+     * Creates a proxy of a service interface sending its calls with the given
+     * Client
+     *
+     * @param <T>     the service type
+     * @param client  the Client
+     * @param service the service interface
+     * @return the proxy
+     * @throws IllegalArgumentException if the service is not an interface
+     */
+    static <T> T create(Client client, Class<T> service) {
+        if (!service.isInterface()) {
+            throw new IllegalArgumentException("Not an interface: " + service.getName());
+        }
+        return service.cast(Proxy.newProxyInstance(service.getClassLoader(), new Class<?>[]{service},
+                new ServiceProxy(client, service)));
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        Stub stub = stubs.get(method);
+        if (stub != null) {
+            Object payload = stub.payload(args);
+            if (stub.async) {
+                return client.requestAsync(stub.name, payload).thenApply(stub::convert);
+            }
+            return stub.convert(client.request(stub.name, payload));
+        } else if (method.isDefault()) {
+            return InvocationHandler.invokeDefault(proxy, method, args);
+        }
+        return switch (method.getName()) {
+            case "equals" -> proxy == args[0];
+            case "hashCode" -> System.identityHashCode(proxy);
+            case "toString" -> "Proxy of " + service.getName();
+            default -> throw new UnsupportedOperationException(method.toString());
+        };
+    }
+}
@@ -0,0 +1,148 @@
+package dev.bodewig.jcoprocessor.procbridge;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import static dev.bodewig.jcoprocessor.procbridge.ProtocolException.*;
+
+/**
+ * Transfers raw payloads through memory-mapped files shared by both processes
+ * <p>
+ * The sender copies the payload into a new file and only sends a descriptor of
+ * path, offset and length. The receiver maps the region and deletes the file,
+ * the mapping stays valid until the buffer is garbage collected.
+ *
+ * @author Lars Bodewig
+ */
+final class SharedMemory {
+
+    private static final String PREFIX = "procbridge-";
+    private static final String SUFFIX = ".shm";
+
+    /**
+     * The directory to create the files in, /dev/shm if available to keep them in
+     * memory
+     */
+    static final Path DIRECTORY = directory();
+
+    private static Path directory() {
+        Path shm = Paths.get("/dev/shm");
+        if (Files.isDirectory(shm) && Files.isWritable(shm)) {
+            return shm;
+        }
+        return Paths.get(System.getProperty("java.io.tmpdir"));
+    }
+
+    /**
+     * Copies the payload into a new shared file
+     *
+     * @param payload the payload from its position to its limit, the position is
+     *                not modified
+     * @return the descriptor to send instead of the payload
+     * @throws IOException if creating the file fails
+     */
+    static byte[] write(ByteBuffer payload) throws IOException {
+        Path file = Files.createTempFile(DIRECTORY, PREFIX, SUFFIX);
+        int length = payload.remaining();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            // writing through the channel avoids faulting in every page of a new mapping
+            ByteBuffer buf = payload.duplicate();
+            while (buf.hasRemaining()) {
+                channel.write(buf);
+            }
+        } catch (IOException | RuntimeException ex) {
+            Files.deleteIfExists(file);
+            throw ex;
+        }
+
+        byte[] path = file.toAbsolutePath().toString().getBytes(StandardCharsets.UTF_8);
+        return ByteBuffer.allocate(4 + path.length + 8 + 4).order(ByteOrder.LITTLE_ENDIAN)
+                .putInt(path.length).put(path).putLong(0).putInt(length).array();
+    }
+
+    /**
+     * Deletes the file of a descriptor that could not be sent
+     *
+     * @param descriptor the descriptor returned by {@link #write(ByteBuffer)}
+     */
+    static void delete(byte[] descriptor) {
+        try {
+            Files.deleteIfExists(path(ByteBuffer.wrap(descriptor).order(ByteOrder.LITTLE_ENDIAN)));
+        } catch (IOException | RuntimeException ignored) {
+        }
+    }
+
+    /**
+     * Reads a descriptor and maps the referenced region before deleting the file
+     *
+     * @param stream the stream to read from
+     * @param length the length of the descriptor
+     * @return the mapped region, private to this process
+     * @throws IOException if reading the descriptor or mapping the file fails
+     */
+    static ByteBuffer read(InputStream stream, int length) throws IOException {
+        byte[] descriptor = stream.readNBytes(length);
+        if (descriptor.length != length) {
+            throw new ProtocolException(INCOMPLETE_DATA);
+        }
+        return map(descriptor);
+    }
+
+    /**
+     * Maps the region referenced by a descriptor before deleting the file
+     *
+     * @param descriptor the descriptor
+     * @return the mapped region, private to this process
+     * @throws IOException if mapping the file fails
+     */
+    static ByteBuffer map(byte[] descriptor) throws IOException {
+        ByteBuffer buf = ByteBuffer.wrap(descriptor).order(ByteOrder.LITTLE_ENDIAN);
+        Path file;
+        long offset;
+        int size;
+        try {
+            file = path(buf);
+            offset = buf.getLong();
+            size = buf.getInt();
+        } catch (RuntimeException ex) {
+            throw new ProtocolException(INVALID_BODY);
+        }
+        if (offset < 0 || size < 0) {
+            throw new ProtocolException(INVALID_BODY);
+        }
+
+        // PRIVATE requires a writable channel but never writes through to the file
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            if (size == 0) {
+                return ByteBuffer.allocate(0);
+            }
+            return channel.map(FileChannel.MapMode.PRIVATE, offset, size);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static Path path(ByteBuffer descriptor) throws ProtocolException {
+        byte[] path = new byte[descriptor.getInt()];
+        descriptor.get(path);
+        Path file = Paths.get(new String(path, StandardCharsets.UTF_8));
+        // never touch files that were not created by write
+        String name = file.getFileName().toString();
+        if (!DIRECTORY.toAbsolutePath().equals(file.getParent()) || !name.startsWith(PREFIX)
+                || !name.endsWith(SUFFIX)) {
+            throw new ProtocolException(INVALID_BODY);
+        }
+        return file;
+    }
+
+    private SharedMemory() {
+    }
+}
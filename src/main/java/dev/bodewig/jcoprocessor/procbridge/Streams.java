@@ -0,0 +1,167 @@
+package dev.bodewig.jcoprocessor.procbridge;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The open streams of a connection, the items the Client has requested from
+ * each of them and the data of open uploads
+ * <p>
+ * Demands and chunks are applied by the thread reading the connection while
+ * items are sent by the thread handling the stream request, which waits while
+ * no items are requested, and chunks are read by the thread handling the upload
+ * request.
+ *
+ * @author Lars Bodewig
+ */
+final class Streams {
+
+    private final Map<Integer, Credit> credits = new ConcurrentHashMap<>();
+    private final Map<Integer, UploadInput> uploads = new ConcurrentHashMap<>();
+
+    /**
+     * Registers a stream request or applies a demand, must be called by the
+     * thread reading the connection before the request is handled
+     *
+     * @param req the request read
+     * @return if the request was a demand or chunk and needs no further handling
+     */
+    boolean route(Request req) {
+        if (req.isDemand()) {
+            Credit credit = credits.get(req.getId());
+            if (credit != null) {
+                credit.grant((Integer) req.getPayload());
+            }
+            UploadInput upload = uploads.get(req.getId());
+            if (upload != null && req.isEnd()) {
+                upload.abort();
+            }
+            return true;
+        } else if (req.isChunk()) {
+            UploadInput upload = uploads.get(req.getId());
+            if (upload != null) {
+                upload.offer((ByteBuffer) req.getPayload(), req.isEnd());
+            }
+            return true;
+        }
+        if (req.isStream()) {
+            credits.put(req.getId(), new Credit());
+        } else if (req.isUpload()) {
+            uploads.put(req.getId(), new UploadInput());
+        }
+        return false;
+    }
+
+    /**
+     * Get the credit of a stream
+     *
+     * @param id the id of the stream request
+     * @return the credit, a cancelled one if the stream is unknown
+     */
+    Credit get(int id) {
+        Credit credit = credits.get(id);
+        if (credit == null) {
+            credit = new Credit();
+            credit.grant(0);
+        }
+        return credit;
+    }
+
+    /**
+     * Get the data of an upload
+     *
+     * @param id the id of the upload request
+     * @return the data, an aborted one if the upload is unknown
+     */
+    UploadInput getUpload(int id) {
+        UploadInput upload = uploads.get(id);
+        if (upload == null) {
+            upload = new UploadInput();
+            upload.abort();
+        }
+        return upload;
+    }
+
+    /**
+     * Forgets a stream or upload that has ended
+     *
+     * @param id the id of the stream or upload request
+     */
+    void remove(int id) {
+        credits.remove(id);
+        uploads.remove(id);
+    }
+
+    /**
+     * Cancels all streams and aborts all uploads, e.g. when the connection is
+     * closed
+     */
+    void cancelAll() {
+        credits.values().forEach(credit -> credit.grant(0));
+        credits.clear();
+        uploads.values().forEach(UploadInput::abort);
+        uploads.clear();
+    }
+
+    /**
+     * The number of items a stream may still send
+     */
+    static final class Credit {
+        private long available;
+        private boolean cancelled;
+
+        /**
+         * Adds to the available items
+         *
+         * @param n the number of items, 0 to cancel the stream
+         */
+        synchronized void grant(int n) {
+            if (n == 0) {
+                cancelled = true;
+            } else {
+                available += n;
+            }
+            notifyAll();
+        }
+
+        /**
+         * Waits until an item may be sent and takes it from the available items
+         *
+         * @return false if the stream was cancelled
+         * @throws InterruptedException if interrupted while waiting
+         */
+        synchronized boolean acquire() throws InterruptedException {
+            return acquire(0);
+        }
+
+        /**
+         * Waits until an item may be sent and takes it from the available items
+         *
+         * @param timeout the maximum time to wait in milliseconds, 0 for forever
+         * @return false if the stream was cancelled
+         * @throws InterruptedException if interrupted while waiting
+         * @throws TimeoutException     if nothing was granted within the timeout
+         */
+        synchronized boolean acquire(long timeout) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+            while (available == 0 && !cancelled) {
+                if (timeout <= 0) {
+                    wait();
+                } else {
+                    long millis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                    if (millis <= 0) {
+                        throw new TimeoutException();
+                    }
+                    wait(millis);
+                }
+            }
+            if (cancelled) {
+                return false;
+            }
+            available--;
+            return true;
+        }
+    }
+}
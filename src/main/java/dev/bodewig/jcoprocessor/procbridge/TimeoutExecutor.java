@@ -1,18 +1,34 @@
 package dev.bodewig.jcoprocessor.procbridge;
 
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
-import java.util.concurrent.Semaphore;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Executor implementation that stops a task after reaching a timeout
+ * <p>
+ * All instances share a single daemon scheduler thread for timeouts and, if no
+ * base executor is given, a virtual thread per task where supported or a cached
+ * pool of daemon workers otherwise.
  *
  * @author Gong Zhang
  * @author Lars Bodewig
  */
 public final class TimeoutExecutor implements Executor {
 
+    private static final ScheduledThreadPoolExecutor SCHEDULER = createScheduler();
+
+    private static final ExecutorService WORKERS = VirtualThreads.isSupported()
+            ? VirtualThreads.newVirtualThreadPerTaskExecutor()
+            : Executors.newCachedThreadPool(daemon("procbridge-worker"));
+
     /**
      * The base executor
      */
@@ -28,48 +44,44 @@ public final class TimeoutExecutor implements Executor {
      * reached
      *
      * @param timeout the time before the executor ends the task
-     * @param base    the base executor
+     * @param base    the base executor, null for a shared pool
      */
     public TimeoutExecutor(long timeout, Executor base) {
         this.timeout = timeout;
         this.base = base;
     }
 
+    /**
+     * Runs the task and waits for it to finish. If the timeout is reached first
+     * the task is interrupted.
+     *
+     * @param task the task to run
+     * @throws TimeoutException if the task did not finish within the timeout
+     */
     @Override
     public void execute(Runnable task) throws TimeoutException {
-        final Semaphore semaphore = new Semaphore(0);
-        final boolean[] isTimeout = {false};
-
-        Timer timer = new Timer();
-        timer.schedule(new TimerTask() {
-            @Override
-            public void run() {
-                isTimeout[0] = true;
-                semaphore.release();
-            }
-        }, timeout);
-
-        Runnable runnable = () -> {
-            try {
-                task.run();
-            } finally {
-                semaphore.release();
-            }
-        };
+        FutureTask<Void> future = new FutureTask<>(task, null);
         if (base != null) {
-            base.execute(runnable);
+            base.execute(future);
         } else {
-            new Thread(runnable).start();
+            WORKERS.execute(future);
         }
 
         try {
-            semaphore.acquire();
-            if (isTimeout[0]) {
-                throw new TimeoutException();
+            future.get(timeout, TimeUnit.MILLISECONDS);
+        } catch (java.util.concurrent.TimeoutException ex) {
+            future.cancel(true);
+            throw new TimeoutException();
+        } catch (InterruptedException ex) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException re) {
+                throw re;
+            } else if (ex.getCause() instanceof Error e) {
+                throw e;
             }
-        } catch (InterruptedException ignored) {
-        } finally {
-            timer.cancel();
+            throw new RuntimeException(ex.getCause());
         }
     }
 
@@ -90,4 +102,48 @@ public final class TimeoutExecutor implements Executor {
     public long getTimeout() {
         return timeout;
     }
+
+    /**
+     * Get the shared pool running tasks without a base executor
+     *
+     * @return the shared pool
+     */
+    static Executor workers() {
+        return WORKERS;
+    }
+
+    /**
+     * Completes the future exceptionally with a TimeoutException if it is not
+     * completed within the timeout
+     * <p>
+     * The scheduled timeout is removed from the shared scheduler as soon as the
+     * future completes.
+     *
+     * @param <T>     the result type
+     * @param future  the future to guard
+     * @param timeout the timeout in milliseconds, 0 for forever
+     * @return the given future
+     */
+    static <T> CompletableFuture<T> orTimeout(CompletableFuture<T> future, long timeout) {
+        if (timeout > 0 && !future.isDone()) {
+            ScheduledFuture<?> timer = SCHEDULER.schedule(() -> future.completeExceptionally(new TimeoutException()),
+                    timeout, TimeUnit.MILLISECONDS);
+            future.whenComplete((result, ex) -> timer.cancel(false));
+        }
+        return future;
+    }
+
+    private static ScheduledThreadPoolExecutor createScheduler() {
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, daemon("procbridge-timeout"));
+        scheduler.setRemoveOnCancelPolicy(true);
+        return scheduler;
+    }
+
+    private static ThreadFactory daemon(String name) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
 }
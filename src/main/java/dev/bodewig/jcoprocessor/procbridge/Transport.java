@@ -0,0 +1,27 @@
+package dev.bodewig.jcoprocessor.procbridge;
+
+/**
+ * The transports a Client can use to connect to a Server
+ *
+ * @author Lars Bodewig
+ */
+public enum Transport {
+
+    /**
+     * A TCP socket on the loopback interface identified by a port
+     */
+    TCP,
+
+    /**
+     * A Unix domain socket identified by a file path, avoiding the TCP stack and
+     * the allocation of a free port
+     */
+    UNIX,
+
+    /**
+     * The standard input and output of the Server process, needing neither a
+     * socket nor a listener. Anything the Server prints to System.out is
+     * redirected to System.err.
+     */
+    STDIO
+}
@@ -0,0 +1,147 @@
+package dev.bodewig.jcoprocessor.procbridge;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * The data of an upload request as the handler reads it
+ * <p>
+ * Chunks are added by the thread reading the connection without blocking. The
+ * Client may only send the chunks granted by this stream, which grants more as
+ * the handler consumes them, so at most {@link #WINDOW} chunks are buffered.
+ *
+ * @author Lars Bodewig
+ */
+final class UploadInput extends InputStream {
+
+    /**
+     * The maximum number of chunks granted but not yet consumed
+     */
+    static final int WINDOW = 16;
+
+    /**
+     * Grants the Client to send more chunks
+     */
+    @FunctionalInterface
+    interface Demand {
+        void grant(int n) throws IOException;
+    }
+
+    private final Deque<ByteBuffer> chunks = new ArrayDeque<>();
+    private Demand demand;
+    private ByteBuffer current;
+    private int consumed;
+    private boolean finished;
+    private boolean aborted;
+    private boolean closed;
+
+    /**
+     * Grants the first chunks, must be called before the handler reads
+     *
+     * @param demand writes the demands to the Client
+     * @throws IOException if writing the demand fails
+     */
+    void start(Demand demand) throws IOException {
+        synchronized (this) {
+            this.demand = demand;
+        }
+        demand.grant(WINDOW);
+    }
+
+    /**
+     * Adds a chunk, called by the thread reading the connection
+     *
+     * @param chunk the data
+     * @param last  if this is the last chunk
+     */
+    synchronized void offer(ByteBuffer chunk, boolean last) {
+        if (closed || aborted) {
+            return;
+        }
+        if (chunk.hasRemaining()) {
+            chunks.add(chunk);
+        }
+        finished |= last;
+        notifyAll();
+    }
+
+    /**
+     * Aborts the upload, the handler fails reading with an IOException
+     */
+    synchronized void abort() {
+        aborted = true;
+        chunks.clear();
+        notifyAll();
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        int grant = 0;
+        synchronized (this) {
+            if (current != null && !current.hasRemaining()) {
+                current = null;
+                // top up the window once half of it is consumed
+                if (++consumed >= WINDOW / 2 && !finished) {
+                    grant = consumed;
+                    consumed = 0;
+                }
+            }
+        }
+        if (grant > 0) {
+            demand.grant(grant); // before waiting for the next chunk
+        }
+        synchronized (this) {
+            while (current == null) {
+                if (closed) {
+                    throw new IOException("Stream closed");
+                } else if (aborted) {
+                    throw new IOException("Upload aborted");
+                }
+                current = chunks.poll();
+                if (current == null) {
+                    if (finished) {
+                        return -1;
+                    }
+                    try {
+                        wait();
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException(ex);
+                    }
+                }
+            }
+            int n = Math.min(len, current.remaining());
+            current.get(b, off, n);
+            return n;
+        }
+    }
+
+    @Override
+    public synchronized int available() {
+        int available = current != null ? current.remaining() : 0;
+        for (ByteBuffer chunk : chunks) {
+            available += chunk.remaining();
+        }
+        return available;
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        chunks.clear();
+        current = null;
+        notifyAll();
+    }
+}
@@ -10,10 +10,15 @@ public final class Versions {
 
     private static final byte[] V2_0 = {2, 0};
 
+    /**
+     * Adds a 4-byte request id after the reserved bytes to correlate responses
+     */
+    private static final byte[] V2_1 = {2, 1};
+
     /**
      * The current protocol version
      */
-    public static final byte[] CURRENT = V2_0;
+    public static final byte[] CURRENT = V2_1;
 
     private Versions() {
     }
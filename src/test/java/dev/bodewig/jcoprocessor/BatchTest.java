@@ -0,0 +1,119 @@
+package dev.bodewig.jcoprocessor;
+
+import dev.bodewig.jcoprocessor.procbridge.Batch;
+import dev.bodewig.jcoprocessor.procbridge.Client;
+import dev.bodewig.jcoprocessor.procbridge.Codec;
+import dev.bodewig.jcoprocessor.procbridge.Server;
+import dev.bodewig.jcoprocessor.procbridge.ServerException;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BatchTest {
+
+    static class BatchServer extends Server {
+
+        public BatchServer(int port) {
+            super(port);
+        }
+
+        @Override
+        public Object handleRequest(String method, Object payload) {
+            switch (method) {
+                case "echo":
+                    return payload;
+                case "sleep":
+                    try {
+                        Thread.sleep(((Number) payload).longValue());
+                    } catch (InterruptedException e) {
+                        throw new IllegalStateException(e);
+                    }
+                    return payload;
+                default:
+                    throw new IllegalArgumentException("Unexpected method: " + method);
+            }
+        }
+
+        public static void main(String[] args) {
+            if (args.length == 0) {
+                throw new IllegalArgumentException("Missing argument: port");
+            }
+            int port = Integer.parseInt(args[0]);
+            BatchServer server = new BatchServer(port);
+            server.setParallelBatches(true);
+            server.start();
+        }
+    }
+
+    static JCoprocess process;
+
+    @BeforeAll
+    static void setup() throws IOException {
+        JCoprocessManager.terminateOnShutdown();
+        process = JCoprocessManager.spawn(BatchServer.class);
+    }
+
+    @Test
+    void test_batch() {
+        List<Batch.Result> results = process.batch()
+                .add("echo", 1)
+                .add("echo")
+                .add("unknown", 2)
+                .add("echo", "Hello")
+                .send();
+        assertEquals(4, results.size());
+        assertEquals(1, (Integer) results.get(0).get());
+        assertNull(results.get(1).get());
+        assertFalse(results.get(2).isSuccess());
+        assertTrue(results.get(2).getException().getMessage().contains("Unexpected method: unknown"));
+        assertThrows(ServerException.class, () -> results.get(2).get());
+        assertEquals("Hello", results.get(3).get());
+    }
+
+    @Test
+    void test_batch_binary() throws IOException {
+        try (Client client = new Client(null, process.client.getPort())) {
+            client.setCodec(Codec.BINARY);
+            Batch batch = client.batch();
+            for (int i = 0; i < 1000; i++) {
+                batch.add("echo", new double[] {i, -i});
+            }
+            List<Batch.Result> results = batch.send();
+            for (int i = 0; i < 1000; i++) {
+                assertArrayEquals(new double[] {i, -i}, results.get(i).get());
+            }
+        }
+    }
+
+    @Test
+    void test_parallel() {
+        Batch batch = process.batch();
+        for (int i = 0; i < 8; i++) {
+            batch.add("sleep", 250);
+        }
+        long start = System.nanoTime();
+        batch.send().forEach(result -> assertEquals(250, (Integer) result.get()));
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        assertTrue(millis < 8 * 250, "Expected items to be handled in parallel: " + millis + " ms");
+    }
+
+    @Test
+    void test_empty() {
+        assertEquals(List.of(), process.batch().send());
+    }
+
+    @AfterAll
+    static void tearDown() {
+        JCoprocessManager.kill(process);
+    }
+}
@@ -0,0 +1,166 @@
+package dev.bodewig.jcoprocessor;
+
+import dev.bodewig.jcoprocessor.procbridge.Client;
+import dev.bodewig.jcoprocessor.procbridge.Server;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static dev.bodewig.jcoprocessor.JCoprocessPoolTest.await;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ClassDataSharingTest {
+
+    static class JvmServer extends Server {
+
+        public JvmServer(int port) {
+            super(port);
+        }
+
+        @Override
+        public Object handleRequest(String method, Object payload) {
+            return switch (method) {
+                case "arguments" -> new JSONArray(ManagementFactory.getRuntimeMXBean().getInputArguments());
+                case "classpath" -> System.getProperty("java.class.path");
+                default -> throw new IllegalArgumentException("Unexpected method: " + method);
+            };
+        }
+
+        public static void main(String[] args) {
+            if (args.length == 0) {
+                throw new IllegalArgumentException("Missing argument: port");
+            }
+            int port = Integer.parseInt(args[0]);
+            JvmServer server = new JvmServer(port);
+            server.start();
+        }
+    }
+
+    @BeforeAll
+    static void setup() {
+        JCoprocessManager.terminateOnShutdown();
+    }
+
+    @Test
+    void test_archive(@TempDir Path dir) throws IOException {
+        Path archive = dir.resolve("server.jsa");
+        JCoprocess process = new JCoprocess(JvmServer.class);
+        // only classes from jars can be archived
+        String classpath = Stream.of(JvmServer.class, Server.class).map(k -> jar(k, dir).toString())
+                .collect(Collectors.joining(File.pathSeparator));
+        process.setClasspath(classpath + File.pathSeparator + JCoprocess.classpathOf(JSONObject.class));
+        process.setClassDataSharing(true);
+        process.setClassDataArchive(archive);
+
+        process.start(Client.FOREVER);
+        JSONArray arguments = process.request("arguments");
+        assertTrue(arguments.toList().stream().anyMatch(a -> a.toString().startsWith("-XX:ArchiveClassesAtExit=")),
+                arguments.toString());
+        process.stop();
+        assertTrue(await(() -> Files.isRegularFile(archive)));
+
+        process.start(Client.FOREVER);
+        arguments = process.request("arguments");
+        assertTrue(arguments.toList().contains("-XX:SharedArchiveFile=" + archive), arguments.toString());
+        process.stop();
+        try (Stream<Path> files = Files.list(dir)) {
+            assertEquals(List.of(archive), files.filter(f -> f.toString().endsWith(".jsa")).toList());
+        }
+        try (Stream<Path> files = Files.list(dir)) {
+            assertTrue(files.noneMatch(f -> f.toString().endsWith(".tmp"))); // no dump left behind
+        }
+    }
+
+    @Test
+    void test_directory(@TempDir Path dir) throws IOException {
+        JCoprocess process = new JCoprocess(JvmServer.class);
+        process.setClassDataSharing(true);
+        process.setClassDataArchive(dir.resolve("server.jsa"));
+        process.start(Client.FOREVER);
+        try {
+            JSONArray arguments = process.request("arguments");
+            assertTrue(arguments.toList().stream().noneMatch(a -> a.toString().startsWith("-XX:")),
+                    arguments.toString());
+        } finally {
+            process.stop();
+        }
+    }
+
+    @Test
+    void test_defaultArchive() {
+        JCoprocess process = new JCoprocess(JvmServer.class);
+        Path archive = process.getClassDataArchive();
+        assertTrue(archive.getFileName().toString().startsWith(JvmServer.class.getName() + "-"));
+        process.addJvmOption("-Xmx64m");
+        assertNotEquals(archive, process.getClassDataArchive());
+        assertEquals(List.of("-Xmx64m"), process.getJvmOptions());
+    }
+
+    @Test
+    void test_jvmOptionOrder() throws IOException {
+        JCoprocess process = new JCoprocess(JvmServer.class);
+        List<String> options = List.of("-XX:+UnlockExperimentalVMOptions", "-Djcoprocess.order=1",
+                "-Djcoprocess.order=2");
+        options.forEach(process::addJvmOption);
+        assertEquals(options, process.getJvmOptions());
+        process.start(Client.FOREVER);
+        try {
+            JSONArray arguments = process.request("arguments");
+            List<Object> passed = arguments.toList().stream().filter(options::contains).collect(Collectors.toList());
+            assertEquals(options, passed);
+        } finally {
+            process.stop();
+        }
+    }
+
+    @Test
+    void test_classpath() throws IOException {
+        String classpath = JCoprocess.classpathOf(JvmServer.class, Server.class, JSONObject.class);
+        assertEquals(3, classpath.split(File.pathSeparator).length);
+        JCoprocess process = new JCoprocess(JvmServer.class);
+        process.setClasspath(classpath);
+        assertEquals(classpath, process.getClasspath());
+        process.start(Client.FOREVER);
+        try {
+            assertEquals(classpath, process.request("classpath"));
+        } finally {
+            process.stop();
+        }
+    }
+
+    /**
+     * Packs the classpath directory of a class into a jar
+     */
+    static Path jar(Class<?> klass, Path dir) {
+        Path classes = Paths.get(JCoprocess.classpathOf(klass));
+        Path jar = dir.resolve(classes.getFileName() + ".jar");
+        try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar));
+                Stream<Path> files = Files.walk(classes)) {
+            for (Path file : (Iterable<Path>) files.filter(Files::isRegularFile)::iterator) {
+                out.putNextEntry(new JarEntry(classes.relativize(file).toString().replace(File.separatorChar, '/')));
+                Files.copy(file, out);
+                out.closeEntry();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return jar;
+    }
+}
@@ -0,0 +1,123 @@
+package dev.bodewig.jcoprocessor;
+
+import dev.bodewig.jcoprocessor.procbridge.Codec;
+import dev.bodewig.jcoprocessor.procbridge.Protocol;
+import dev.bodewig.jcoprocessor.procbridge.Request;
+import dev.bodewig.jcoprocessor.procbridge.Server;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class CodecTest {
+
+    static class EchoServer extends Server {
+
+        public EchoServer(int port) {
+            super(port);
+        }
+
+        @Override
+        public Object handleRequest(String method, Object payload) {
+            return switch (method) {
+                case "echo" -> payload;
+                case "sum" -> {
+                    double sum = 0;
+                    for (double value : (double[]) payload) {
+                        sum += value;
+                    }
+                    yield sum;
+                }
+                default -> throw new IllegalArgumentException("Unexpected method: " + method);
+            };
+        }
+
+        @Override
+        public ByteBuffer handleBytes(String method, ByteBuffer payload) {
+            if (!"reverse".equals(method)) {
+                throw new IllegalArgumentException("Unexpected method: " + method);
+            }
+            ByteBuffer result = ByteBuffer.allocateDirect(payload.remaining());
+            for (int i = payload.limit() - 1; i >= payload.position(); i--) {
+                result.put(payload.get(i));
+            }
+            return result.flip();
+        }
+
+        public static void main(String[] args) {
+            if (args.length == 0) {
+                throw new IllegalArgumentException("Missing argument: port");
+            }
+            int port = Integer.parseInt(args[0]);
+            EchoServer server = new EchoServer(port);
+            server.start();
+        }
+    }
+
+    static JCoprocess process;
+
+    @BeforeAll
+    static void setup() throws IOException {
+        JCoprocessManager.terminateOnShutdown();
+        process = JCoprocessManager.spawn(EchoServer.class);
+        process.setCodec(Codec.BINARY);
+    }
+
+    @Test
+    void test_roundtrip() throws IOException {
+        JSONObject payload = new JSONObject().put("values", new JSONArray().put(3).put(2.5).put("x").put(true))
+                .put("nested", Map.of("list", List.of(1L, JSONObject.NULL)));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Protocol.writeRequest(out, Codec.BINARY, 7, "echo", payload);
+        Request request = Protocol.readRequest(new ByteArrayInputStream(out.toByteArray())).orElseThrow();
+        assertEquals(Codec.BINARY, request.getCodec());
+        assertEquals(7, request.getId());
+        assertEquals("echo", request.getMethod());
+        assertEquals(payload.toString(), request.getPayload().toString());
+    }
+
+    @Test
+    void test_double_array() {
+        double[] values = {1.5, 2.5, 3.0};
+        assertArrayEquals(values, process.<double[]>request("echo", values));
+        assertEquals(7.0, process.request("sum", values, Double.class));
+    }
+
+    @Test
+    void test_json_object() {
+        JSONObject payload = new JSONObject().put("values", new JSONArray().put(3).put(2));
+        JSONObject actual = process.request("echo", payload);
+        assertInstanceOf(JSONObject.class, actual);
+        assertEquals(payload.toString(), actual.toString());
+    }
+
+    @Test
+    void test_raw_bytes() {
+        ByteBuffer payload = ByteBuffer.wrap(new byte[] {1, 2, 3, 4});
+        ByteBuffer actual = process.requestBytes("reverse", payload);
+        assertEquals(ByteBuffer.wrap(new byte[] {4, 3, 2, 1}), actual);
+        assertEquals(0, payload.position());
+
+        ByteBuffer into = ByteBuffer.allocate(16);
+        assertSame(into, process.requestBytes("reverse", payload, into));
+        assertEquals(ByteBuffer.wrap(new byte[] {4, 3, 2, 1}), into);
+    }
+
+    @AfterAll
+    static void tearDown() {
+        JCoprocessManager.kill(process);
+    }
+}
@@ -0,0 +1,126 @@
+package dev.bodewig.jcoprocessor;
+
+import dev.bodewig.jcoprocessor.procbridge.Client;
+import dev.bodewig.jcoprocessor.procbridge.Codec;
+import dev.bodewig.jcoprocessor.procbridge.Protocol;
+import dev.bodewig.jcoprocessor.procbridge.Request;
+import dev.bodewig.jcoprocessor.procbridge.Server;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CompressionTest {
+
+    static class EchoServer extends Server {
+
+        public EchoServer(int port) {
+            super(port);
+        }
+
+        @Override
+        public Object handleRequest(String method, Object payload) {
+            return switch (method) {
+                case "echo" -> payload;
+                case "threshold" -> getCompressionThreshold();
+                default -> throw new IllegalArgumentException("Unexpected method: " + method);
+            };
+        }
+
+        @Override
+        public Iterator<?> handleStream(String method, Object payload) {
+            return Stream.generate(() -> payload).limit(10).iterator();
+        }
+
+        public static void main(String[] args) {
+            if (args.length == 0) {
+                throw new IllegalArgumentException("Missing argument: port");
+            }
+            int port = Integer.parseInt(args[0]);
+            EchoServer server = new EchoServer(port);
+            server.start();
+        }
+    }
+
+    static JCoprocess process;
+
+    @BeforeAll
+    static void setup() throws IOException {
+        JCoprocessManager.terminateOnShutdown();
+        process = new JCoprocess(EchoServer.class);
+        process.setCompressionThreshold(256);
+        process.start(Client.FOREVER);
+    }
+
+    static JSONArray rows(int n) {
+        JSONArray rows = new JSONArray();
+        for (int i = 0; i < n; i++) {
+            rows.put(new JSONObject().put("id", i).put("name", "user" + i).put("active", i % 2 == 0));
+        }
+        return rows;
+    }
+
+    @Test
+    void test_frame() throws IOException {
+        for (Codec codec : Codec.values()) {
+            JSONArray rows = rows(1000);
+            ByteArrayOutputStream plain = new ByteArrayOutputStream();
+            Protocol.writeRequest(plain, codec, 1, "echo", rows);
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            Protocol.writeRequest(compressed, codec, 1, "echo", rows, 0);
+            assertEquals(0, plain.toByteArray()[6] & 0x80);
+            assertEquals(0x80, compressed.toByteArray()[6] & 0x80);
+            assertTrue(compressed.size() < plain.size() / 4, compressed.size() + " of " + plain.size());
+
+            Request req = Protocol.readRequest(new ByteArrayInputStream(compressed.toByteArray())).orElseThrow();
+            assertEquals("echo", req.getMethod());
+            assertEquals(rows.toString(), req.getPayload().toString());
+        }
+    }
+
+    @Test
+    void test_incompressible() throws IOException {
+        long[] payload = new Random(42).longs(512).toArray();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Protocol.writeRequest(out, Codec.BINARY, 1, "echo", payload, 0);
+        assertEquals(0, out.toByteArray()[6] & 0x80); // sent as is
+        assertArrayEquals(payload, (long[]) Protocol.readRequest(new ByteArrayInputStream(out.toByteArray()))
+                .orElseThrow().getPayload());
+    }
+
+    @Test
+    void test_roundtrip() {
+        assertEquals(256, (Integer) process.request("threshold"));
+        for (Codec codec : Codec.values()) {
+            process.setCodec(codec);
+            JSONArray rows = rows(2000);
+            assertEquals(rows.toString(), process.request("echo", rows).toString());
+            assertEquals("small", process.request("echo", "small"));
+            assertEquals(List.of(rows.toString(), rows.toString()), process.batch().add("echo", rows)
+                    .add("echo", rows).send().stream().map(r -> r.get().toString()).collect(Collectors.toList()));
+            try (Stream<JSONArray> items = process.requestStream("items", rows)) {
+                assertEquals(10, items.filter(item -> item.toString().equals(rows.toString())).count());
+            }
+        }
+        process.setCodec(Codec.JSON);
+    }
+
+    @AfterAll
+    static void tearDown() {
+        process.stop();
+    }
+}
@@ -0,0 +1,80 @@
+package dev.bodewig.jcoprocessor;
+
+import dev.bodewig.jcoprocessor.procbridge.Server;
+import dev.bodewig.jcoprocessor.procbridge.VirtualThreads;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ExecutorTest {
+
+    static class ThreadServer extends Server {
+
+        public ThreadServer(int port) {
+            super(port);
+        }
+
+        @Override
+        public Object handleRequest(String method, Object payload) {
+            return Thread.currentThread().toString();
+        }
+
+        public static void main(String[] args) {
+            if (args.length == 0) {
+                throw new IllegalArgumentException("Missing argument: port");
+            }
+            int port = Integer.parseInt(args[0]);
+            ThreadServer server = new ThreadServer(port);
+            server.start();
+        }
+    }
+
+    static JCoprocess process;
+    static ExecutorService reader;
+
+    @BeforeAll
+    static void setup() throws IOException {
+        JCoprocessManager.terminateOnShutdown();
+        process = new JCoprocess(ThreadServer.class);
+        process.addJvmOption("-D" + Server.VIRTUAL_THREADS_PROPERTY + "=true");
+        reader = Executors.newSingleThreadExecutor();
+        process.setExecutor(reader);
+        process.start(0);
+    }
+
+    @Test
+    void test_virtual_threads() {
+        String thread = process.request("thread");
+        // falls back to platform threads before Java 21
+        assertEquals(VirtualThreads.isSupported(), thread.startsWith("VirtualThread"), thread);
+    }
+
+    @Test
+    void test_executor_factory() {
+        Server server = new ThreadServer(0);
+        if (VirtualThreads.isSupported()) {
+            server.useVirtualThreads();
+        } else {
+            assertThrows(UnsupportedOperationException.class, server::useVirtualThreads);
+        }
+        server.setExecutorFactory(Executors::newSingleThreadExecutor);
+        server.start();
+        assertTrue(server.isStarted());
+        assertThrows(IllegalStateException.class, () -> server.setExecutorFactory(null));
+        server.stop();
+    }
+
+    @AfterAll
+    static void tearDown() {
+        process.stop();
+        reader.shutdown();
+    }
+}
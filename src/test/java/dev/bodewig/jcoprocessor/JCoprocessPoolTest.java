@@ -0,0 +1,128 @@
+package dev.bodewig.jcoprocessor;
+
+import dev.bodewig.jcoprocessor.procbridge.Client;
+import dev.bodewig.jcoprocessor.procbridge.Server;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JCoprocessPoolTest {
+
+    static class PidServer extends Server {
+
+        public PidServer(int port) {
+            super(port);
+        }
+
+        @Override
+        public Object handleRequest(String method, Object payload) {
+            if (!"pid".equals(method)) {
+                throw new IllegalArgumentException("Unexpected method: " + method);
+            }
+            try {
+                Thread.sleep(((Number) payload).longValue());
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            return ProcessHandle.current().pid();
+        }
+
+        public static void main(String[] args) {
+            if (args.length == 0) {
+                throw new IllegalArgumentException("Missing argument: port");
+            }
+            int port = Integer.parseInt(args[0]);
+            PidServer server = new PidServer(port);
+            server.start();
+        }
+    }
+
+    @BeforeAll
+    static void setup() {
+        JCoprocessManager.terminateOnShutdown();
+    }
+
+    @Test
+    void test_balancing() throws IOException {
+        JCoprocessPool pool = new JCoprocessPool(PidServer.class, 2, 2, JCoprocessPool.Balancing.LEAST_OUTSTANDING);
+        pool.start(Client.FOREVER);
+        try {
+            List<CompletableFuture<Number>> results = IntStream.range(0, 4)
+                    .mapToObj(i -> pool.<Number>requestAsync("pid", 500)).toList();
+            Set<Long> pids = results.stream().map(f -> f.join().longValue()).collect(Collectors.toSet());
+            assertEquals(2, pids.size());
+        } finally {
+            pool.stop();
+        }
+    }
+
+    @Test
+    void test_grow_and_shrink() throws IOException {
+        JCoprocessPool pool = new JCoprocessPool(PidServer.class, 1, 2, JCoprocessPool.Balancing.POWER_OF_TWO_CHOICES);
+        pool.setGrowThreshold(1);
+        pool.setKeepAliveMillis(500);
+        pool.start(Client.FOREVER);
+        try {
+            List<CompletableFuture<Number>> results = IntStream.range(0, 2)
+                    .mapToObj(i -> pool.<Number>requestAsync("pid", 2000)).toList();
+            assertTrue(await(() -> pool.size() == 2));
+            results.forEach(CompletableFuture::join);
+            assertTrue(await(() -> pool.size() == 1));
+        } finally {
+            pool.stop();
+        }
+    }
+
+    @Test
+    void test_dead_worker() throws IOException {
+        JCoprocessPool pool = new JCoprocessPool(PidServer.class, 2, 2, JCoprocessPool.Balancing.LEAST_OUTSTANDING);
+        pool.start(Client.FOREVER);
+        try {
+            long dead = pool.<Number>request("pid", 0).longValue();
+            ProcessHandle.of(dead).ifPresent(ProcessHandle::destroyForcibly);
+            assertTrue(await(() -> ProcessHandle.of(dead).map(p -> !p.isAlive()).orElse(true)));
+            for (int i = 0; i < 10; i++) {
+                assertNotEquals(dead, pool.<Number>request("pid", 0).longValue());
+            }
+            assertTrue(await(() -> pool.size() == 2)); // replaced
+        } finally {
+            pool.stop();
+        }
+    }
+
+    @Test
+    void test_stop_after_terminate() throws IOException {
+        JCoprocessPool pool = new JCoprocessPool(PidServer.class, 1, 1, JCoprocessPool.Balancing.LEAST_OUTSTANDING);
+        pool.start(Client.FOREVER);
+        JCoprocessManager.terminate();
+        assertDoesNotThrow(pool::stop);
+        assertDoesNotThrow(pool::stop);
+    }
+
+    static boolean await(BooleanSupplier condition) {
+        long until = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > until) {
+                return false;
+            }
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -1,6 +1,8 @@
 package dev.bodewig.jcoprocessor;
 
 import dev.bodewig.jcoprocessor.procbridge.Server;
+import dev.bodewig.jcoprocessor.procbridge.ServerException;
+import dev.bodewig.jcoprocessor.procbridge.Transport;
 import org.json.JSONArray;
 import org.json.JSONObject;
 import org.junit.jupiter.api.AfterAll;
@@ -8,11 +10,20 @@ import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.DoubleStream;
 
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class JCoprocessTest {
 
@@ -91,6 +102,68 @@ class JCoprocessTest {
         assertDoesNotThrow(() -> result.get());
     }
 
+    @Test
+    void test_async() {
+        JSONObject expected = new JSONObject().put("result", 5);
+        CompletableFuture<JSONObject> actual = process.requestAsync("addition",
+                new JSONObject().put("values", new JSONArray().put(3).put(2)));
+        assertEquals(expected.toString(), actual.join().toString());
+    }
+
+    @Test
+    void test_async_exception() {
+        CompletableFuture<JSONObject> actual = process.requestAsync("modulo",
+                new JSONObject().put("values", new JSONArray().put(3).put(2)));
+        ExecutionException e = assertThrows(ExecutionException.class, actual::get);
+        assertInstanceOf(ServerException.class, e.getCause());
+    }
+
+    @Test
+    void test_async_continuation() {
+        JSONObject sum = new JSONObject().put("values", new JSONArray().put(3).put(2));
+        // a blocking request in the continuation must not stall the response reader
+        CompletableFuture<JSONObject> product = process.<JSONObject>requestAsync("addition", sum)
+                .thenApply(result -> process.request("multiplication",
+                        new JSONObject().put("values", new JSONArray().put(result.get("result")).put(2))));
+        assertEquals(10.0, product.orTimeout(10, TimeUnit.SECONDS).join().getDouble("result"));
+    }
+
+    @Test
+    void test_completionExecutor() {
+        ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "completion"));
+        process.setCompletionExecutor(executor);
+        try {
+            String thread = process.requestAsync("addition",
+                    new JSONObject().put("values", new JSONArray().put(3).put(2)))
+                    .thenApply(result -> Thread.currentThread().getName()).join();
+            assertEquals("completion", thread);
+        } finally {
+            process.setCompletionExecutor(null);
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void test_spawnAll() throws IOException {
+        List<JCoprocess> processes = JCoprocessManager.spawnAll(CalculatorServer.class, 3);
+        try {
+            assertEquals(3, processes.stream().mapToInt(p -> p.client.getPort()).distinct().count());
+            for (JCoprocess p : processes) {
+                JSONObject actual = p.request("addition", new JSONObject().put("values", new JSONArray().put(3).put(2)));
+                assertEquals(5, actual.getInt("result"));
+            }
+        } finally {
+            processes.forEach(JCoprocessManager::kill);
+        }
+        assertTrue(JCoprocessManager.spawnAll(CalculatorServer.class, 0).isEmpty());
+    }
+
+    @Test
+    void test_spawnAll_failure() {
+        assertThrows(IOException.class, () -> JCoprocessManager.spawnAll(ReadySignalTest.CrashingServer.class,
+                Transport.TCP, 2, 5000));
+    }
+
     @AfterAll
     static void tearDown() {
         JCoprocessManager.kill(process);
@@ -0,0 +1,102 @@
+package dev.bodewig.jcoprocessor;
+
+import dev.bodewig.jcoprocessor.procbridge.Client;
+import dev.bodewig.jcoprocessor.procbridge.Server;
+import dev.bodewig.jcoprocessor.procbridge.Transport;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static dev.bodewig.jcoprocessor.JCoprocessPoolTest.await;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JCoprocessWarmPoolTest {
+
+    static class CountingServer extends Server {
+
+        private final AtomicInteger requests = new AtomicInteger();
+
+        public CountingServer(int port) {
+            super(port);
+        }
+
+        @Override
+        public Object handleRequest(String method, Object payload) {
+            if (!"count".equals(method)) {
+                throw new IllegalArgumentException("Unexpected method: " + method);
+            }
+            return requests.incrementAndGet();
+        }
+
+        public static void main(String[] args) {
+            if (args.length == 0) {
+                throw new IllegalArgumentException("Missing argument: port");
+            }
+            int port = Integer.parseInt(args[0]);
+            CountingServer server = new CountingServer(port);
+            server.start();
+        }
+    }
+
+    @BeforeAll
+    static void setup() {
+        JCoprocessManager.terminateOnShutdown();
+    }
+
+    @Test
+    void test_take() throws IOException {
+        AtomicInteger warmedUp = new AtomicInteger();
+        JCoprocessWarmPool pool = JCoprocessManager.prewarm(CountingServer.class, Transport.TCP, 2,
+                Client.FOREVER, p -> {
+                    for (int i = 0; i < 100; i++) {
+                        p.request("count");
+                    }
+                    warmedUp.incrementAndGet();
+                });
+        try {
+            assertTrue(await(() -> pool.idle() == 2));
+
+            long start = System.nanoTime();
+            JCoprocess first = JCoprocessManager.spawn(CountingServer.class);
+            JCoprocess second = JCoprocessManager.spawn(CountingServer.class);
+            long millis = (System.nanoTime() - start) / 1_000_000;
+            assertTrue(millis < 200, "Expected warm JCoprocesses but took " + millis + " ms");
+            // the warm-up requests were handled before
+            assertEquals(101, (Integer) first.request("count"));
+            assertEquals(101, (Integer) second.request("count"));
+
+            assertTrue(await(() -> pool.idle() == 2));
+            assertEquals(4, warmedUp.get());
+            JCoprocessManager.kill(first);
+            JCoprocessManager.kill(second);
+        } finally {
+            JCoprocessManager.cool(CountingServer.class);
+        }
+        assertEquals(0, pool.idle());
+    }
+
+    @Test
+    void test_cold() throws IOException {
+        JCoprocessWarmPool pool = new JCoprocessWarmPool(CountingServer.class, Transport.TCP, 1, Client.FOREVER,
+                null);
+        // not started, every JCoprocess is started on demand
+        JCoprocess cold = pool.take();
+        assertEquals(1, (Integer) cold.request("count"));
+        JCoprocessManager.kill(cold);
+        assertTrue(await(() -> !cold.isAlive()));
+
+        pool.start();
+        try {
+            assertTrue(await(() -> pool.idle() == 1));
+            List<JCoprocess> taken = List.of(pool.take(), pool.take()); // the second one is cold
+            assertTrue(taken.stream().allMatch(JCoprocess::isAlive));
+            taken.forEach(JCoprocessManager::kill);
+        } finally {
+            pool.stop();
+        }
+    }
+}
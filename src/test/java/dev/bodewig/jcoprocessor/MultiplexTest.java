@@ -0,0 +1,98 @@
+package dev.bodewig.jcoprocessor;
+
+import dev.bodewig.jcoprocessor.procbridge.Server;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MultiplexTest {
+
+    static final int PARALLEL = 4;
+
+    static class LatchServer extends Server {
+
+        private final CountDownLatch latch = new CountDownLatch(PARALLEL);
+
+        public LatchServer(int port) {
+            super(port);
+        }
+
+        @Override
+        public Object handleRequest(String method, Object payload) {
+            return switch (method) {
+                case "await" -> {
+                    latch.countDown();
+                    try {
+                        yield latch.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+                case "echo" -> payload;
+                default -> throw new IllegalArgumentException("Unexpected method: " + method);
+            };
+        }
+
+        public static void main(String[] args) {
+            if (args.length == 0) {
+                throw new IllegalArgumentException("Missing argument: port");
+            }
+            int port = Integer.parseInt(args[0]);
+            LatchServer server = new LatchServer(port);
+            server.start();
+        }
+    }
+
+    static JCoprocess process;
+
+    @BeforeAll
+    static void setup() throws IOException {
+        JCoprocessManager.terminateOnShutdown();
+        process = JCoprocessManager.spawn(LatchServer.class);
+    }
+
+    @Test
+    void test_concurrent() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(PARALLEL);
+        try {
+            List<Future<Boolean>> results = IntStream.range(0, PARALLEL)
+                    .mapToObj(i -> executor.submit(() -> process.<Boolean>request("await"))).toList();
+            for (Future<Boolean> result : results) {
+                assertTrue(result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void test_correlation() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(PARALLEL);
+        try {
+            List<Future<Integer>> results = IntStream.range(0, 100)
+                    .mapToObj(i -> executor.submit(() -> process.<Integer>request("echo", i))).toList();
+            for (int i = 0; i < results.size(); i++) {
+                assertEquals(i, results.get(i).get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @AfterAll
+    static void tearDown() {
+        JCoprocessManager.kill(process);
+    }
+}
@@ -0,0 +1,220 @@
+package dev.bodewig.jcoprocessor;
+
+import dev.bodewig.jcoprocessor.procbridge.Client;
+import dev.bodewig.jcoprocessor.procbridge.Protocol;
+import dev.bodewig.jcoprocessor.procbridge.Response;
+import dev.bodewig.jcoprocessor.procbridge.Server;
+import dev.bodewig.jcoprocessor.procbridge.ServerException;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class NonBlockingTest {
+
+    static class SelectorServer extends Server {
+
+        public SelectorServer(int port) {
+            super(port);
+        }
+
+        @Override
+        public Object handleRequest(String method, Object payload) {
+            return switch (method) {
+                case "echo" -> payload;
+                case "threads" -> Thread.activeCount();
+                default -> throw new IllegalArgumentException("Unexpected method: " + method);
+            };
+        }
+
+        @Override
+        public ByteBuffer handleBytes(String method, ByteBuffer payload) {
+            return payload;
+        }
+
+        @Override
+        public Iterator<?> handleStream(String method, Object payload) {
+            if (!"count".equals(method)) {
+                throw new IllegalArgumentException("Unexpected method: " + method);
+            }
+            return IntStream.iterate(0, i -> i + 1).iterator();
+        }
+
+        @Override
+        public Object handleUpload(String method, Object payload, InputStream data) {
+            if (!"drain".equals(method)) {
+                throw new IllegalArgumentException("Unexpected method: " + method);
+            }
+            try {
+                return data.transferTo(OutputStream.nullOutputStream());
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+
+        public static void main(String[] args) {
+            if (args.length == 0) {
+                throw new IllegalArgumentException("Missing argument: port");
+            }
+            int port = Integer.parseInt(args[0]);
+            SelectorServer server = new SelectorServer(port);
+            server.setNonBlocking(true);
+            server.setWorkerThreads(2);
+            server.start();
+        }
+    }
+
+    static JCoprocess process;
+
+    @BeforeAll
+    static void setup() throws IOException {
+        JCoprocessManager.terminateOnShutdown();
+        process = JCoprocessManager.spawn(SelectorServer.class);
+    }
+
+    @Test
+    void test_request() {
+        assertEquals("Hello", process.request("echo", "Hello"));
+        assertThrows(ServerException.class, () -> process.request("unknown"));
+
+        // larger than the read buffer and the socket buffers
+        ByteBuffer payload = ByteBuffer.allocate(4 * 1024 * 1024);
+        for (int i = 0; i < payload.capacity(); i++) {
+            payload.put(i, (byte) i);
+        }
+        assertEquals(payload, process.requestBytes("echo", payload));
+    }
+
+    @Test
+    void test_many_connections() throws IOException {
+        List<Client> clients = new ArrayList<>();
+        try {
+            for (int i = 0; i < 16; i++) {
+                clients.add(new Client(null, process.client.getPort()));
+            }
+            List<CompletableFuture<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 16 * 8; i++) {
+                int expected = i;
+                futures.add(clients.get(i % clients.size()).requestAsync("echo", i)
+                        .thenAccept(actual -> assertEquals(expected, (Integer) actual)));
+            }
+            CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
+
+            int threads = process.request("threads");
+            assertTrue(threads < clients.size(), "Expected less than one thread per connection: " + threads);
+        } finally {
+            for (Client client : clients) {
+                client.close();
+            }
+        }
+    }
+
+    @Test
+    void test_open_streams() {
+        List<Stream<Integer>> streams = new ArrayList<>();
+        try {
+            // as many as the Server has worker threads, none of them consumed
+            for (int i = 0; i < 2; i++) {
+                streams.add(process.requestStream("count"));
+            }
+            assertTimeoutPreemptively(Duration.ofSeconds(10),
+                    () -> assertEquals("Hello", process.request("echo", "Hello")));
+        } finally {
+            streams.forEach(Stream::close);
+        }
+    }
+
+    @Test
+    void test_stalled_uploads() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        InputStream stalled = new InputStream() {
+            @Override
+            public int read() throws IOException {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                }
+                return -1;
+            }
+        };
+        List<CompletableFuture<Number>> uploads = new ArrayList<>();
+        try {
+            // as many as the Server has worker threads, each waiting for its first chunk
+            for (int i = 0; i < 2; i++) {
+                uploads.add(CompletableFuture.supplyAsync(() -> process.upload("drain", stalled)));
+            }
+            Thread.sleep(500);
+            assertTimeoutPreemptively(Duration.ofSeconds(10),
+                    () -> assertEquals("Hello", process.request("echo", "Hello")));
+        } finally {
+            release.countDown();
+        }
+        for (CompletableFuture<Number> upload : uploads) {
+            assertEquals(0, upload.get(10, TimeUnit.SECONDS).longValue());
+        }
+    }
+
+    @Test
+    void test_backpressure() throws Exception {
+        int requests = 1024;
+        ByteBuffer payload = ByteBuffer.allocate(64 * 1024);
+        try (Socket socket = new Socket("localhost", process.client.getPort())) {
+            OutputStream os = new BufferedOutputStream(socket.getOutputStream());
+            InputStream is = new BufferedInputStream(socket.getInputStream());
+            CompletableFuture<Void> writer = CompletableFuture.runAsync(() -> {
+                try {
+                    for (int i = 0; i < requests; i++) {
+                        Protocol.writeRawRequest(os, i, "echo", payload);
+                    }
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+
+            // far more than the socket buffers, the Server stops reading instead of queueing all responses
+            Thread.sleep(2000);
+            assertFalse(writer.isDone());
+
+            Set<Integer> ids = new HashSet<>();
+            for (int i = 0; i < requests; i++) {
+                Response response = Protocol.readResponse(is).orElseThrow();
+                assertEquals(payload, response.getPayload());
+                ids.add(response.getId());
+            }
+            writer.get(10, TimeUnit.SECONDS);
+            assertEquals(requests, ids.size());
+        }
+    }
+
+    @AfterAll
+    static void tearDown() {
+        JCoprocessManager.kill(process);
+    }
+}
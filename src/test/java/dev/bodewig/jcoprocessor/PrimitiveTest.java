@@ -0,0 +1,98 @@
+package dev.bodewig.jcoprocessor;
+
+import dev.bodewig.jcoprocessor.procbridge.Server;
+import dev.bodewig.jcoprocessor.procbridge.ServerException;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.stream.DoubleStream;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class PrimitiveTest {
+
+    static class PrimitiveServer extends Server {
+
+        public PrimitiveServer(int port) {
+            super(port);
+            registerDouble("score", value -> value * 0.5 + 1);
+            registerLong("next", value -> value + 1);
+            registerInt("negate", value -> -value);
+            registerDoubles("normalize", values -> {
+                double sum = DoubleStream.of(values).sum();
+                return DoubleStream.of(values).map(v -> v / sum).toArray();
+            });
+            registerLongs("prefixSum", values -> {
+                Arrays.parallelPrefix(values, Long::sum);
+                return values;
+            });
+        }
+
+        @Override
+        public Object handleRequest(String method, Object payload) {
+            return payload;
+        }
+
+        public static void main(String[] args) {
+            if (args.length == 0) {
+                throw new IllegalArgumentException("Missing argument: port");
+            }
+            int port = Integer.parseInt(args[0]);
+            PrimitiveServer server = new PrimitiveServer(port);
+            server.start();
+        }
+    }
+
+    static JCoprocess process;
+
+    @BeforeAll
+    static void setup() throws IOException {
+        JCoprocessManager.terminateOnShutdown();
+        process = JCoprocessManager.spawn(PrimitiveServer.class);
+    }
+
+    @Test
+    void test_values() {
+        assertEquals(2.0, process.requestDouble("score", 2.0));
+        assertEquals(Long.MIN_VALUE, process.requestLong("next", Long.MAX_VALUE));
+        assertEquals(-42, process.requestInt("negate", 42));
+    }
+
+    @Test
+    void test_arrays() {
+        assertArrayEquals(new double[]{0.25, 0.75}, process.requestDoubles("normalize", new double[]{1, 3}));
+        assertArrayEquals(new long[]{1, 3, 6}, process.requestLongs("prefixSum", new long[]{1, 2, 3}));
+        assertArrayEquals(new long[0], process.requestLongs("prefixSum", new long[0]));
+    }
+
+    @Test
+    void test_shared() {
+        int threshold = process.client.getSharedMemoryThreshold();
+        process.client.setSharedMemoryThreshold(1024);
+        try {
+            long[] values = LongStream.range(0, 10_000).toArray();
+            long[] sums = process.requestLongs("prefixSum", values);
+            assertEquals(10_000 * 9_999 / 2, sums[sums.length - 1]);
+        } finally {
+            process.client.setSharedMemoryThreshold(threshold);
+        }
+    }
+
+    @Test
+    void test_invalid() {
+        assertThrows(ServerException.class, () -> process.requestInt("score", 1)); // 4 instead of 8 bytes
+        assertThrows(ServerException.class, () -> process.requestDouble("unknown", 1));
+        assertEquals(1.5, ((Number) process.request("score", 1.5)).doubleValue()); // not routed
+    }
+
+    @AfterAll
+    static void tearDown() {
+        JCoprocessManager.kill(process);
+    }
+}
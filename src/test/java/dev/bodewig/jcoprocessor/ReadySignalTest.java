@@ -0,0 +1,115 @@
+package dev.bodewig.jcoprocessor;
+
+import dev.bodewig.jcoprocessor.procbridge.Client;
+import dev.bodewig.jcoprocessor.procbridge.ClientException;
+import dev.bodewig.jcoprocessor.procbridge.Server;
+import dev.bodewig.jcoprocessor.procbridge.Transport;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+
+import static dev.bodewig.jcoprocessor.JCoprocessPoolTest.await;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ReadySignalTest {
+
+    static class PrintingServer extends Server {
+
+        public PrintingServer(int port) {
+            super(port);
+        }
+
+        @Override
+        public Object handleRequest(String method, Object payload) {
+            if (!"echo".equals(method)) {
+                throw new IllegalArgumentException("Unexpected method: " + method);
+            }
+            System.out.println("Handling echo");
+            return payload;
+        }
+
+        public static void main(String[] args) {
+            if (args.length == 0) {
+                throw new IllegalArgumentException("Missing argument: port");
+            }
+            int port = Integer.parseInt(args[0]);
+            System.out.println("Starting on port " + port);
+            PrintingServer server = new PrintingServer(port);
+            server.start();
+        }
+    }
+
+    static class CrashingServer extends Server {
+
+        public CrashingServer(int port) {
+            super(port);
+        }
+
+        @Override
+        public Object handleRequest(String method, Object payload) {
+            return null;
+        }
+
+        public static void main(String[] args) {
+            throw new IllegalStateException("Crashed on startup");
+        }
+    }
+
+    static class HangingServer extends Server {
+
+        public HangingServer(int port) {
+            super(port);
+        }
+
+        @Override
+        public Object handleRequest(String method, Object payload) {
+            return null;
+        }
+
+        public static void main(String[] args) throws InterruptedException {
+            Thread.sleep(60_000); // never listens
+        }
+    }
+
+    @BeforeAll
+    static void setup() {
+        JCoprocessManager.terminateOnShutdown();
+    }
+
+    @Test
+    void test_ready() throws IOException {
+        for (Transport transport : List.of(Transport.TCP, Transport.UNIX)) {
+            JCoprocess process = new JCoprocess(PrintingServer.class, transport);
+            process.start(Client.FOREVER);
+            try {
+                assertEquals("hello", process.request("echo", "hello"));
+            } finally {
+                process.stop();
+            }
+        }
+    }
+
+    @Test
+    void test_crash() {
+        for (Transport transport : List.of(Transport.TCP, Transport.UNIX)) {
+            JCoprocess process = new JCoprocess(CrashingServer.class, transport);
+            long start = System.nanoTime();
+            IOException ex = assertThrows(IOException.class, () -> process.start(Client.FOREVER));
+            long millis = (System.nanoTime() - start) / 1_000_000;
+            assertTrue(ex.getMessage().contains("before it was ready"), ex.getMessage());
+            assertTrue(millis < 10_000, "Expected to fail fast but took " + millis + " ms");
+            assertTrue(await(() -> !process.isAlive()));
+        }
+    }
+
+    @Test
+    void test_timeout() {
+        JCoprocess process = new JCoprocess(HangingServer.class);
+        assertThrows(ClientException.class, () -> process.start(1000));
+        assertTrue(await(() -> !process.isAlive()));
+    }
+}
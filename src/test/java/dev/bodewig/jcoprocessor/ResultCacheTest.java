@@ -0,0 +1,166 @@
+package dev.bodewig.jcoprocessor;
+
+import dev.bodewig.jcoprocessor.procbridge.Client;
+import dev.bodewig.jcoprocessor.procbridge.ResultCache;
+import dev.bodewig.jcoprocessor.procbridge.Server;
+import dev.bodewig.jcoprocessor.procbridge.ServerException;
+import dev.bodewig.jcoprocessor.util.Numeric;
+import org.json.JSONObject;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ResultCacheTest {
+
+    static class CountingServer extends Server {
+
+        private final AtomicInteger calls = new AtomicInteger();
+
+        public CountingServer(int port) {
+            super(port);
+        }
+
+        @Override
+        public Object handleRequest(String method, Object payload) {
+            return switch (method) {
+                case "calls" -> calls.get();
+                case "square" -> {
+                    calls.incrementAndGet();
+                    double value = Numeric.doubleValue(((JSONObject) payload).get("value"));
+                    yield value * value;
+                }
+                case "slow" -> {
+                    calls.incrementAndGet();
+                    try {
+                        Thread.sleep(200);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    yield payload;
+                }
+                case "fail" -> {
+                    calls.incrementAndGet();
+                    throw new IllegalStateException("Failed");
+                }
+                default -> throw new IllegalArgumentException("Unexpected method: " + method);
+            };
+        }
+
+        public static void main(String[] args) {
+            if (args.length == 0) {
+                throw new IllegalArgumentException("Missing argument: port");
+            }
+            int port = Integer.parseInt(args[0]);
+            CountingServer server = new CountingServer(port);
+            server.start();
+        }
+    }
+
+    static JCoprocess process;
+
+    @BeforeAll
+    static void setup() throws IOException {
+        JCoprocessManager.terminateOnShutdown();
+        process = JCoprocessManager.spawn(CountingServer.class);
+    }
+
+    static int calls() {
+        return process.request("calls");
+    }
+
+    static ResultCache cache(int maximumSize, long timeToLive, String... methods) {
+        ResultCache cache = new ResultCache(maximumSize, timeToLive);
+        for (String method : methods) {
+            cache.enable(method);
+        }
+        process.setResultCache(cache);
+        return cache;
+    }
+
+    @Test
+    void test_hit() {
+        ResultCache cache = cache(16, Client.FOREVER, "square");
+        int before = calls();
+        assertEquals(4.0, process.request("square", new JSONObject().put("value", 2), Double.class));
+        assertEquals(4.0, process.request("square", new JSONObject().put("value", 2), Double.class));
+        assertEquals(9.0, process.request("square", new JSONObject().put("value", 3), Double.class));
+        assertEquals(before + 2, calls());
+        assertEquals(1, cache.getHits());
+        assertEquals(2, cache.getMisses());
+        assertEquals(2, cache.size());
+
+        cache.disable("square");
+        assertEquals(0, cache.size());
+        process.request("square", new JSONObject().put("value", 2));
+        assertEquals(before + 3, calls());
+    }
+
+    @Test
+    void test_singleFlight() {
+        ResultCache cache = cache(16, Client.FOREVER, "slow");
+        int before = calls();
+        List<CompletableFuture<Object>> futures = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            futures.add(process.requestAsync("slow", "same"));
+        }
+        futures.forEach(future -> assertEquals("same", future.join()));
+        assertEquals(before + 1, calls());
+        assertEquals(9, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    void test_expiry() throws InterruptedException {
+        ResultCache cache = cache(16, 50, "square");
+        int before = calls();
+        process.request("square", new JSONObject().put("value", 2));
+        Thread.sleep(100);
+        process.request("square", new JSONObject().put("value", 2));
+        assertEquals(before + 2, calls());
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    void test_eviction() {
+        ResultCache cache = cache(2, Client.FOREVER, "square");
+        for (int i = 0; i < 3; i++) {
+            process.request("square", new JSONObject().put("value", i));
+        }
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictions());
+        int before = calls();
+        process.request("square", new JSONObject().put("value", 0)); // evicted
+        process.request("square", new JSONObject().put("value", 2));
+        assertEquals(before + 1, calls());
+    }
+
+    @Test
+    void test_failure() {
+        ResultCache cache = cache(16, Client.FOREVER, "fail");
+        int before = calls();
+        assertThrows(ServerException.class, () -> process.request("fail", 1));
+        assertThrows(ServerException.class, () -> process.request("fail", 1));
+        assertEquals(before + 2, calls());
+        assertEquals(0, cache.size());
+    }
+
+    @AfterEach
+    void disableCache() {
+        process.setResultCache(null);
+    }
+
+    @AfterAll
+    static void tearDown() {
+        JCoprocessManager.kill(process);
+    }
+}
@@ -0,0 +1,152 @@
+package dev.bodewig.jcoprocessor;
+
+import dev.bodewig.jcoprocessor.procbridge.Batch;
+import dev.bodewig.jcoprocessor.procbridge.Codec;
+import dev.bodewig.jcoprocessor.procbridge.Handler;
+import dev.bodewig.jcoprocessor.procbridge.Protocol;
+import dev.bodewig.jcoprocessor.procbridge.Request;
+import dev.bodewig.jcoprocessor.procbridge.Server;
+import dev.bodewig.jcoprocessor.procbridge.ServerException;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import static dev.bodewig.jcoprocessor.JCoprocessPoolTest.await;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RouterTest {
+
+    static class RoutedServer extends Server {
+
+        private final AtomicLong total = new AtomicLong();
+
+        public RoutedServer(int port) {
+            super(port);
+            register("negate", Integer.class, value -> -value);
+        }
+
+        @Handler
+        public double square(double value) {
+            return value * value;
+        }
+
+        @Handler("sum")
+        long add(JSONArray values) {
+            return values.toList().stream().mapToLong(v -> ((Number) v).longValue()).sum();
+        }
+
+        @Handler
+        void accumulate(long value) {
+            total.addAndGet(value);
+        }
+
+        @Handler
+        long total() {
+            return total.get();
+        }
+
+        @Override
+        public Object handleRequest(String method, Object payload) {
+            if (!"echo".equals(method)) {
+                throw new IllegalArgumentException("Unexpected method: " + method);
+            }
+            return payload;
+        }
+
+        public static void main(String[] args) {
+            if (args.length == 0) {
+                throw new IllegalArgumentException("Missing argument: port");
+            }
+            int port = Integer.parseInt(args[0]);
+            RoutedServer server = new RoutedServer(port);
+            server.start();
+        }
+    }
+
+    static JCoprocess process;
+
+    @BeforeAll
+    static void setup() throws IOException {
+        JCoprocessManager.terminateOnShutdown();
+        process = JCoprocessManager.spawn(RoutedServer.class);
+    }
+
+    @Test
+    void test_routes() {
+        RoutedServer server = new RoutedServer(-1);
+        // annotated methods ordered by their Java name, then registered ones
+        assertEquals(List.of("accumulate", "sum", "square", "total", "negate"), server.getRoutes());
+        assertThrows(IllegalArgumentException.class, () -> server.register("sum", Object.class, p -> p));
+        assertThrows(IllegalArgumentException.class,
+                () -> server.register(Server.ROUTES_METHOD, Object.class, p -> p));
+    }
+
+    @Test
+    void test_request() {
+        assertTrue(await(() -> !process.getMethodIds().isEmpty()));
+        assertEquals(5, process.getMethodIds().size());
+        for (Codec codec : Codec.values()) {
+            process.setCodec(codec);
+            assertEquals(6.25, ((Number) process.request("square", 2.5)).doubleValue());
+            assertEquals(9.0, ((Number) process.request("square", 3)).doubleValue()); // Integer to double
+            assertEquals(-7, (Integer) process.request("negate", 7));
+            assertEquals(6L, ((Number) process.request("sum", new JSONArray().put(1).put(2L).put(3))).longValue());
+            assertEquals("unrouted", process.request("echo", "unrouted"));
+            assertThrows(ServerException.class, () -> process.request("unknown"));
+            assertThrows(ServerException.class, () -> process.request("negate", "not a number"));
+        }
+        process.setCodec(Codec.JSON);
+    }
+
+    @Test
+    void test_void() {
+        long before = ((Number) process.request("total")).longValue();
+        assertNull(process.request("accumulate", 40));
+        assertNull(process.request("accumulate", 2L));
+        assertEquals(before + 42, ((Number) process.request("total")).longValue());
+    }
+
+    @Test
+    void test_batch() {
+        assertTrue(await(() -> !process.getMethodIds().isEmpty()));
+        List<Object> results = process.batch().add("negate", 1).add("echo", "mixed").add("square", 4)
+                .send().stream().map(Batch.Result::get).collect(Collectors.toList());
+        assertEquals(List.of(-1, "mixed"), results.subList(0, 2));
+        assertEquals(16.0, ((Number) results.get(2)).doubleValue());
+    }
+
+    @Test
+    void test_frame() throws IOException {
+        for (Codec codec : Codec.values()) {
+            ByteArrayOutputStream byName = new ByteArrayOutputStream();
+            Protocol.writeRequest(byName, codec, 1, "negate", new JSONObject(), -1);
+            ByteArrayOutputStream byId = new ByteArrayOutputStream();
+            Protocol.writeRequest(byId, codec, 1, 4, new JSONObject(), -1);
+            assertTrue(byId.size() < byName.size());
+
+            Request req = Protocol.readRequest(new ByteArrayInputStream(byId.toByteArray())).orElseThrow();
+            assertEquals(4, req.getMethodId());
+            assertEquals("", req.getMethod());
+            req = Protocol.readRequest(new ByteArrayInputStream(byName.toByteArray())).orElseThrow();
+            assertEquals(-1, req.getMethodId());
+            assertEquals("negate", req.getMethod());
+        }
+    }
+
+    @AfterAll
+    static void tearDown() {
+        JCoprocessManager.kill(process);
+    }
+}
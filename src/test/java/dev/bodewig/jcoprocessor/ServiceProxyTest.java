@@ -0,0 +1,177 @@
+package dev.bodewig.jcoprocessor;
+
+import dev.bodewig.jcoprocessor.procbridge.Codec;
+import dev.bodewig.jcoprocessor.procbridge.Handler;
+import dev.bodewig.jcoprocessor.procbridge.Server;
+import dev.bodewig.jcoprocessor.procbridge.ServerException;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.DoubleStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ServiceProxyTest {
+
+    public interface CalculatorService {
+
+        double square(double value);
+
+        long add(long a, long b);
+
+        double[] scale(double[] values, double factor);
+
+        @Handler("concat")
+        String join(List<String> parts, String separator);
+
+        Map<String, Object> describe(String name);
+
+        void accumulate(long value);
+
+        long total();
+
+        CompletableFuture<Integer> negate(int value);
+
+        Integer nothing();
+
+        default double hypot(double a, double b) {
+            return Math.sqrt(square(a) + square(b));
+        }
+    }
+
+    static class CalculatorServer extends Server implements CalculatorService {
+
+        private final AtomicLong total = new AtomicLong();
+
+        public CalculatorServer(int port) {
+            super(port);
+            export(CalculatorService.class, this);
+        }
+
+        @Override
+        public double square(double value) {
+            return value * value;
+        }
+
+        @Override
+        public long add(long a, long b) {
+            return a + b;
+        }
+
+        @Override
+        public double[] scale(double[] values, double factor) {
+            return DoubleStream.of(values).map(v -> v * factor).toArray();
+        }
+
+        @Override
+        public String join(List<String> parts, String separator) {
+            return String.join(separator, parts);
+        }
+
+        @Override
+        public Map<String, Object> describe(String name) {
+            return Map.of("name", name, "length", name.length());
+        }
+
+        @Override
+        public void accumulate(long value) {
+            total.addAndGet(value);
+        }
+
+        @Override
+        public long total() {
+            return total.get();
+        }
+
+        @Override
+        public CompletableFuture<Integer> negate(int value) {
+            return CompletableFuture.supplyAsync(() -> -value);
+        }
+
+        @Override
+        public Integer nothing() {
+            return null;
+        }
+
+        public static void main(String[] args) {
+            if (args.length == 0) {
+                throw new IllegalArgumentException("Missing argument: port");
+            }
+            int port = Integer.parseInt(args[0]);
+            CalculatorServer server = new CalculatorServer(port);
+            server.start();
+        }
+    }
+
+    static JCoprocess process;
+
+    @BeforeAll
+    static void setup() throws IOException {
+        JCoprocessManager.terminateOnShutdown();
+        process = JCoprocessManager.spawn(CalculatorServer.class);
+    }
+
+    @Test
+    void test_export() {
+        CalculatorServer server = new CalculatorServer(-1);
+        // abstract methods ordered by their Java name, default methods are not exported
+        assertEquals(List.of("accumulate", "add", "describe", "concat", "negate", "nothing", "scale", "square",
+                "total"), server.getRoutes());
+        assertThrows(IllegalArgumentException.class, () -> server.export(CalculatorService.class, server));
+        assertThrows(IllegalArgumentException.class, () -> process.proxy(CalculatorServer.class));
+    }
+
+    @Test
+    void test_proxy() {
+        CalculatorService calculator = process.proxy(CalculatorService.class);
+        for (Codec codec : Codec.values()) {
+            process.setCodec(codec);
+            assertEquals(6.25, calculator.square(2.5));
+            assertEquals(5.0, calculator.hypot(3, 4));
+            assertEquals(Long.MAX_VALUE, calculator.add(Long.MAX_VALUE - 1, 1));
+            assertArrayEquals(new double[]{0.5, 1.5}, calculator.scale(new double[]{1, 3}, 0.5));
+            assertEquals("a-b-c", calculator.join(List.of("a", "b", "c"), "-"));
+            assertEquals(Map.of("name", "abc", "length", 3), calculator.describe("abc"));
+            assertEquals(-7, calculator.negate(7).join());
+            assertNull(calculator.nothing());
+        }
+        process.setCodec(Codec.JSON);
+    }
+
+    @Test
+    void test_void() {
+        CalculatorService calculator = process.proxy(CalculatorService.class);
+        long before = calculator.total();
+        calculator.accumulate(40);
+        calculator.accumulate(2);
+        assertEquals(before + 42, calculator.total());
+    }
+
+    @Test
+    void test_arity() {
+        assertThrows(ServerException.class, () -> process.request("add", List.of(1)));
+        assertEquals(3L, ((Number) process.request("add", List.of(1, 2))).longValue());
+    }
+
+    @Test
+    void test_object() {
+        CalculatorService calculator = process.proxy(CalculatorService.class);
+        assertEquals(calculator, calculator);
+        assertEquals(System.identityHashCode(calculator), calculator.hashCode());
+        assertEquals("Proxy of " + CalculatorService.class.getName(), calculator.toString());
+    }
+
+    @AfterAll
+    static void tearDown() {
+        JCoprocessManager.kill(process);
+    }
+}
@@ -0,0 +1,86 @@
+package dev.bodewig.jcoprocessor;
+
+import dev.bodewig.jcoprocessor.procbridge.Server;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class SharedMemoryTest {
+
+    static class IncrementServer extends Server {
+
+        public IncrementServer(int port) {
+            super(port);
+        }
+
+        @Override
+        public Object handleRequest(String method, Object payload) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ByteBuffer handleBytes(String method, ByteBuffer payload) {
+            // mapped payloads are private copies and may be modified in place
+            for (int i = payload.position(); i < payload.limit(); i++) {
+                payload.put(i, (byte) (payload.get(i) + 1));
+            }
+            return payload;
+        }
+
+        public static void main(String[] args) {
+            if (args.length == 0) {
+                throw new IllegalArgumentException("Missing argument: port");
+            }
+            int port = Integer.parseInt(args[0]);
+            IncrementServer server = new IncrementServer(port);
+            server.start();
+        }
+    }
+
+    static JCoprocess process;
+
+    @BeforeAll
+    static void setup() throws IOException {
+        JCoprocessManager.terminateOnShutdown();
+        process = JCoprocessManager.spawn(IncrementServer.class);
+        process.setSharedMemoryThreshold(1024);
+    }
+
+    @Test
+    void test_shared() {
+        ByteBuffer payload = ByteBuffer.allocateDirect(4 * 1024 * 1024);
+        for (int i = 0; i < payload.capacity(); i++) {
+            payload.put(i, (byte) i);
+        }
+        ByteBuffer actual = process.requestBytes("increment", payload);
+        assertInstanceOf(MappedByteBuffer.class, actual);
+        assertEquals(payload.capacity(), actual.remaining());
+        for (int i = 0; i < payload.capacity(); i++) {
+            assertEquals((byte) (i + 1), actual.get(i));
+        }
+        assertEquals((byte) 0, payload.get(0));
+    }
+
+    @Test
+    void test_below_threshold() {
+        ByteBuffer into = ByteBuffer.allocate(16);
+        ByteBuffer actual = process.requestBytes("increment", ByteBuffer.wrap(new byte[] {1, 2, 3}), into);
+        assertSame(into, actual);
+        assertFalse(actual.isDirect());
+        assertEquals(ByteBuffer.wrap(new byte[] {2, 3, 4}), actual);
+    }
+
+    @AfterAll
+    static void tearDown() {
+        JCoprocessManager.kill(process);
+    }
+}
@@ -0,0 +1,69 @@
+package dev.bodewig.jcoprocessor;
+
+import dev.bodewig.jcoprocessor.procbridge.Client;
+import dev.bodewig.jcoprocessor.procbridge.Server;
+import dev.bodewig.jcoprocessor.procbridge.Transport;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class StdioTest {
+
+    static class NoisyServer extends Server {
+
+        public NoisyServer(int port) {
+            super(port);
+        }
+
+        @Override
+        public Object handleRequest(String method, Object payload) {
+            // must not end up in the protocol stream
+            System.out.println("Handling " + method);
+            return payload;
+        }
+
+        public static void main(String[] args) {
+            if (args.length == 0) {
+                throw new IllegalArgumentException("Missing argument: port");
+            }
+            int port = Integer.parseInt(args[0]);
+            NoisyServer server = new NoisyServer(port);
+            server.start();
+        }
+    }
+
+    static JCoprocess process;
+
+    @BeforeAll
+    static void setup() throws IOException {
+        JCoprocessManager.terminateOnShutdown();
+        process = JCoprocessManager.spawn(NoisyServer.class, Transport.STDIO, Client.FOREVER);
+    }
+
+    @Test
+    void test_request() {
+        assertEquals("Hello", process.request("echo", "Hello"));
+        assertEquals(42, (Integer) process.request("echo", 42));
+    }
+
+    @Test
+    void test_concurrent() {
+        CompletableFuture<?>[] futures = new CompletableFuture[32];
+        for (int i = 0; i < futures.length; i++) {
+            int expected = i;
+            futures[i] = process.requestAsync("echo", i)
+                    .thenAccept(actual -> assertEquals(expected, (Integer) actual));
+        }
+        CompletableFuture.allOf(futures).join();
+    }
+
+    @AfterAll
+    static void tearDown() {
+        JCoprocessManager.kill(process);
+    }
+}
@@ -0,0 +1,186 @@
+package dev.bodewig.jcoprocessor;
+
+import dev.bodewig.jcoprocessor.procbridge.Client;
+import dev.bodewig.jcoprocessor.procbridge.Connection;
+import dev.bodewig.jcoprocessor.procbridge.Server;
+import dev.bodewig.jcoprocessor.procbridge.ServerException;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StreamTest {
+
+    static class StreamServer extends Server {
+
+        static final AtomicInteger produced = new AtomicInteger();
+        static final AtomicBoolean closed = new AtomicBoolean();
+
+        public StreamServer(int port) {
+            super(port);
+        }
+
+        @Override
+        public Object handleRequest(String method, Object payload) {
+            return switch (method) {
+                case "produced" -> produced.get();
+                case "closed" -> closed.get();
+                default -> throw new IllegalArgumentException("Unexpected method: " + method);
+            };
+        }
+
+        @Override
+        public Iterator<?> handleStream(String method, Object payload) {
+            return switch (method) {
+                case "range" -> IntStream.range(0, (Integer) payload).iterator();
+                case "counter" -> new Counter();
+                case "fail" -> IntStream.range(0, 10).map(i -> 10 / (5 - i)).iterator();
+                default -> throw new IllegalArgumentException("Unexpected method: " + method);
+            };
+        }
+
+        static class Counter implements Iterator<Integer>, AutoCloseable {
+
+            Counter() {
+                produced.set(0);
+                closed.set(false);
+            }
+
+            @Override
+            public boolean hasNext() {
+                return true;
+            }
+
+            @Override
+            public Integer next() {
+                return produced.incrementAndGet();
+            }
+
+            @Override
+            public void close() {
+                closed.set(true);
+            }
+        }
+
+        public static void main(String[] args) {
+            if (args.length == 0) {
+                throw new IllegalArgumentException("Missing argument: port");
+            }
+            int port = Integer.parseInt(args[0]);
+            StreamServer server = new StreamServer(port);
+            server.start();
+        }
+    }
+
+    static JCoprocess process;
+    static JCoprocess nonBlocking;
+
+    @BeforeAll
+    static void setup() throws IOException {
+        JCoprocessManager.terminateOnShutdown();
+        process = JCoprocessManager.spawn(StreamServer.class);
+        nonBlocking = new JCoprocess(StreamServer.class);
+        nonBlocking.addJvmOption("-D" + Server.NON_BLOCKING_PROPERTY + "=true");
+        nonBlocking.start(Client.FOREVER);
+    }
+
+    @Test
+    void test_stream() {
+        for (JCoprocess p : List.of(process, nonBlocking)) {
+            try (Stream<Integer> items = p.requestStream("range", 100_000)) {
+                assertEquals(100_000L * 99_999 / 2, items.mapToLong(Integer::longValue).sum());
+            }
+            try (Stream<Integer> items = p.requestStream("range", 0)) {
+                assertEquals(0, items.count());
+            }
+        }
+    }
+
+    @Test
+    void test_backpressure() throws InterruptedException {
+        process.setStreamWindow(4);
+        try (Stream<Integer> items = process.requestStream("counter")) {
+            assertEquals(List.of(1, 2, 3), items.limit(3).collect(Collectors.toList()));
+            Thread.sleep(200);
+            // the consumed items, the window and the item the Server looked ahead
+            int produced = process.request("produced");
+            assertTrue(produced <= 3 + 4 + 1, "Expected the Server to wait for demand: " + produced);
+        } finally {
+            process.setStreamWindow(Client.DEFAULT_STREAM_WINDOW);
+        }
+    }
+
+    @Test
+    void test_cancel() throws InterruptedException {
+        try (Stream<Integer> items = process.requestStream("counter")) {
+            assertEquals(1, items.findFirst().orElseThrow());
+        }
+        for (int i = 0; i < 50 && !(Boolean) process.request("closed"); i++) {
+            Thread.sleep(20);
+        }
+        assertTrue((Boolean) process.request("closed"));
+    }
+
+    @Test
+    void test_error() {
+        for (JCoprocess p : List.of(process, nonBlocking)) {
+            try (Stream<Integer> items = p.requestStream("fail")) {
+                Iterator<Integer> iterator = items.iterator();
+                for (int i = 0; i < 5; i++) {
+                    iterator.next();
+                }
+                assertThrows(ServerException.class, iterator::next);
+            }
+            try (Stream<Object> items = p.requestStream("unknown")) {
+                assertThrows(ServerException.class, items::count);
+            }
+        }
+    }
+
+    @Test
+    void test_sequentialConnection() throws IOException {
+        try (ServerSocket serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            Thread accept = new Thread(() -> {
+                try {
+                    // handles requests on the reading thread
+                    new Connection(new StreamServer(-1), serverSocket.accept()).run();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            accept.setDaemon(true);
+            accept.start();
+            try (Client client = new Client(null, serverSocket.getLocalPort(), 10_000, null)) {
+                client.setStreamWindow(4);
+                assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+                    try (Stream<Integer> items = client.requestStream("range", 100)) {
+                        assertEquals(99 * 100 / 2, items.mapToInt(Integer::intValue).sum());
+                    }
+                });
+            }
+        }
+    }
+
+    @AfterAll
+    static void tearDown() {
+        JCoprocessManager.kill(process);
+        nonBlocking.stop();
+    }
+}
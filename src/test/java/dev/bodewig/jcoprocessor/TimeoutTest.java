@@ -0,0 +1,66 @@
+package dev.bodewig.jcoprocessor;
+
+import dev.bodewig.jcoprocessor.procbridge.Server;
+import dev.bodewig.jcoprocessor.procbridge.TimeoutException;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class TimeoutTest {
+
+    static class SleepServer extends Server {
+
+        public SleepServer(int port) {
+            super(port);
+        }
+
+        @Override
+        public Object handleRequest(String method, Object payload) {
+            return switch (method) {
+                case "sleep" -> {
+                    try {
+                        Thread.sleep(((Number) payload).longValue());
+                    } catch (InterruptedException e) {
+                        throw new IllegalStateException(e);
+                    }
+                    yield payload;
+                }
+                case "echo" -> payload;
+                default -> throw new IllegalArgumentException("Unexpected method: " + method);
+            };
+        }
+
+        public static void main(String[] args) {
+            if (args.length == 0) {
+                throw new IllegalArgumentException("Missing argument: port");
+            }
+            int port = Integer.parseInt(args[0]);
+            SleepServer server = new SleepServer(port);
+            server.start();
+        }
+    }
+
+    static JCoprocess process;
+
+    @BeforeAll
+    static void setup() throws IOException {
+        JCoprocessManager.terminateOnShutdown();
+        process = JCoprocessManager.spawn(SleepServer.class, 3_000);
+    }
+
+    @Test
+    void test_timeout() {
+        assertThrows(TimeoutException.class, () -> process.request("sleep", 6_000));
+        assertEquals("still in sync", process.request("echo", "still in sync"));
+    }
+
+    @AfterAll
+    static void tearDown() {
+        JCoprocessManager.kill(process);
+    }
+}
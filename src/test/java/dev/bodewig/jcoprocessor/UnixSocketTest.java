@@ -0,0 +1,94 @@
+package dev.bodewig.jcoprocessor;
+
+import dev.bodewig.jcoprocessor.procbridge.Client;
+import dev.bodewig.jcoprocessor.procbridge.Server;
+import dev.bodewig.jcoprocessor.procbridge.ServerException;
+import dev.bodewig.jcoprocessor.procbridge.Transport;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UnixSocketTest {
+
+    static class EchoServer extends Server {
+
+        public EchoServer(int port) {
+            super(port);
+        }
+
+        @Override
+        public Object handleRequest(String method, Object payload) {
+            if (!"echo".equals(method)) {
+                throw new IllegalArgumentException("Unexpected method: " + method);
+            }
+            return payload;
+        }
+
+        @Override
+        public ByteBuffer handleBytes(String method, ByteBuffer payload) {
+            return payload;
+        }
+
+        public static void main(String[] args) {
+            if (args.length == 0) {
+                throw new IllegalArgumentException("Missing argument: port");
+            }
+            int port = Integer.parseInt(args[0]);
+            EchoServer server = new EchoServer(port);
+            server.start();
+        }
+    }
+
+    static JCoprocess process;
+
+    @BeforeAll
+    static void setup() throws IOException {
+        JCoprocessManager.terminateOnShutdown();
+        process = JCoprocessManager.spawn(EchoServer.class, Transport.UNIX, Client.FOREVER);
+    }
+
+    @Test
+    void test_request() {
+        assertEquals(Transport.UNIX, process.getTransport());
+        assertEquals("Hello", process.request("echo", "Hello"));
+        assertEquals(ByteBuffer.wrap(new byte[] {1, 2, 3}),
+                process.requestBytes("echo", ByteBuffer.wrap(new byte[] {1, 2, 3})));
+        assertThrows(ServerException.class, () -> process.request("unknown"));
+    }
+
+    @Test
+    void test_concurrent() {
+        CompletableFuture<?>[] futures = new CompletableFuture[32];
+        for (int i = 0; i < futures.length; i++) {
+            int expected = i;
+            futures[i] = process.requestAsync("echo", i)
+                    .thenAccept(actual -> assertEquals(expected, (Integer) actual));
+        }
+        CompletableFuture.allOf(futures).join();
+    }
+
+    @Test
+    void test_socket_path_removed() throws IOException {
+        JCoprocess other = JCoprocessManager.spawn(EchoServer.class, Transport.UNIX, Client.FOREVER);
+        Path socketPath = other.socketPath;
+        assertTrue(Files.exists(socketPath));
+        JCoprocessManager.kill(other);
+        assertFalse(Files.exists(socketPath));
+    }
+
+    @AfterAll
+    static void tearDown() {
+        JCoprocessManager.kill(process);
+    }
+}
@@ -0,0 +1,225 @@
+package dev.bodewig.jcoprocessor;
+
+import dev.bodewig.jcoprocessor.procbridge.Client;
+import dev.bodewig.jcoprocessor.procbridge.ClientException;
+import dev.bodewig.jcoprocessor.procbridge.Connection;
+import dev.bodewig.jcoprocessor.procbridge.Server;
+import dev.bodewig.jcoprocessor.procbridge.ServerException;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UploadTest {
+
+    static class UploadServer extends Server {
+
+        static final AtomicBoolean aborted = new AtomicBoolean();
+
+        public UploadServer(int port) {
+            super(port);
+        }
+
+        @Override
+        public Object handleRequest(String method, Object payload) {
+            if (!"aborted".equals(method)) {
+                throw new IllegalArgumentException("Unexpected method: " + method);
+            }
+            return aborted.get();
+        }
+
+        @Override
+        public Object handleUpload(String method, Object payload, InputStream data) {
+            try {
+                return switch (method) {
+                    case "crc" -> {
+                        CheckedInputStream checked = new CheckedInputStream(data, new CRC32());
+                        long size = checked.transferTo(OutputStream.nullOutputStream());
+                        yield payload + ":" + size + ":" + checked.getChecksum().getValue();
+                    }
+                    case "slow" -> {
+                        int n = data.readNBytes(10).length;
+                        Thread.sleep(500);
+                        yield n;
+                    }
+                    case "fail" -> {
+                        data.readNBytes(1000);
+                        throw new IllegalStateException("Failed after reading");
+                    }
+                    case "abort" -> {
+                        aborted.set(false);
+                        try {
+                            data.transferTo(OutputStream.nullOutputStream());
+                        } catch (IOException ex) {
+                            aborted.set(true);
+                            throw ex;
+                        }
+                        yield null;
+                    }
+                    default -> throw new IllegalArgumentException("Unexpected method: " + method);
+                };
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(ex);
+            }
+        }
+
+        public static void main(String[] args) {
+            if (args.length == 0) {
+                throw new IllegalArgumentException("Missing argument: port");
+            }
+            int port = Integer.parseInt(args[0]);
+            UploadServer server = new UploadServer(port);
+            server.start();
+        }
+    }
+
+    /**
+     * Generates pseudo random data and counts how much was read
+     */
+    static class Generated extends InputStream {
+        final long size;
+        final long failAt;
+        long read;
+
+        Generated(long size, long failAt) {
+            this.size = size;
+            this.failAt = failAt;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (read == failAt) {
+                throw new IOException("Failed reading");
+            } else if (read == size) {
+                return -1;
+            }
+            return (int) (read++ * 31 % 251);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            int n = 0;
+            int value;
+            while (n < len && (value = read()) != -1) {
+                b[off + n++] = (byte) value;
+            }
+            return n == 0 ? -1 : n;
+        }
+    }
+
+    static JCoprocess process;
+    static JCoprocess nonBlocking;
+
+    @BeforeAll
+    static void setup() throws IOException {
+        JCoprocessManager.terminateOnShutdown();
+        process = JCoprocessManager.spawn(UploadServer.class);
+        nonBlocking = new JCoprocess(UploadServer.class);
+        nonBlocking.addJvmOption("-D" + Server.NON_BLOCKING_PROPERTY + "=true");
+        nonBlocking.start(Client.FOREVER);
+    }
+
+    @Test
+    void test_upload() throws IOException {
+        for (JCoprocess p : List.of(process, nonBlocking)) {
+            for (long size : new long[] {0, 1, 64 * 1024, 20_000_000}) {
+                CheckedInputStream expected = new CheckedInputStream(new Generated(size, -1), new CRC32());
+                expected.transferTo(OutputStream.nullOutputStream());
+                String result = p.upload("crc", "data", new Generated(size, -1));
+                assertEquals("data:" + size + ":" + expected.getChecksum().getValue(), result);
+            }
+            assertEquals("null:3:" + crc(new byte[] {1, 2, 3}),
+                    p.upload("crc", new ByteArrayInputStream(new byte[] {1, 2, 3})));
+        }
+    }
+
+    @Test
+    void test_backpressure() {
+        for (JCoprocess p : List.of(process, nonBlocking)) {
+            Generated data = new Generated(Long.MAX_VALUE, -1);
+            assertEquals(10, (Integer) p.upload("slow", data));
+            // the window of 16 chunks granted by the Server and the chunk waiting for
+            // a grant
+            assertTrue(data.read <= 17 * 64 * 1024, "Expected the Client to wait for demand: " + data.read);
+        }
+    }
+
+    @Test
+    void test_error() {
+        for (JCoprocess p : List.of(process, nonBlocking)) {
+            assertThrows(ServerException.class, () -> p.upload("fail", new Generated(10_000_000, -1)));
+            assertThrows(ServerException.class, () -> p.upload("unknown", new Generated(100, -1)));
+        }
+    }
+
+    @Test
+    void test_abort() throws InterruptedException {
+        for (JCoprocess p : List.of(process, nonBlocking)) {
+            assertThrows(ClientException.class, () -> p.upload("abort", new Generated(10_000_000, 1_000_000)));
+            for (int i = 0; i < 50 && !(Boolean) p.request("aborted"); i++) {
+                Thread.sleep(20);
+            }
+            assertTrue((Boolean) p.request("aborted"));
+            assertEquals("null:1:" + crc(new byte[] {0}), p.upload("crc", new Generated(1, -1)));
+        }
+    }
+
+    @Test
+    void test_sequentialConnection() throws IOException {
+        try (ServerSocket serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            Thread accept = new Thread(() -> {
+                try {
+                    // handles requests on the reading thread
+                    new Connection(new UploadServer(-1), serverSocket.accept()).run();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            accept.setDaemon(true);
+            accept.start();
+            try (Client client = new Client(null, serverSocket.getLocalPort(), 10_000, null)) {
+                long size = 1_000_000;
+                CheckedInputStream expected = new CheckedInputStream(new Generated(size, -1), new CRC32());
+                expected.transferTo(OutputStream.nullOutputStream());
+                String result = assertTimeoutPreemptively(Duration.ofSeconds(10),
+                        () -> client.upload("crc", "data", new Generated(size, -1)));
+                assertEquals("data:" + size + ":" + expected.getChecksum().getValue(), result);
+            }
+        }
+    }
+
+    static long crc(byte[] data) {
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        return crc.getValue();
+    }
+
+    @AfterAll
+    static void tearDown() {
+        JCoprocessManager.kill(process);
+        nonBlocking.stop();
+    }
+}